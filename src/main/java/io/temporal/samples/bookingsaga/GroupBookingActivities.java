@@ -0,0 +1,106 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.bookingsaga;
+
+import io.temporal.activity.ActivityInterface;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reserves for a whole group with one call per provider. A provider can reject some of the
+ * customers and accept the others, so each call returns the reservations it made by customer. A
+ * call that fails may still have reserved for some of the customers, whose reservations are then
+ * cancelled by customer name.
+ */
+@ActivityInterface
+public interface GroupBookingActivities {
+
+  /**
+   * Request car rental reservations.
+   *
+   * @param names customer names
+   * @return reservationID by customer name, for the customers whose car was reserved
+   */
+  Map<String, String> reserveCars(List<String> names);
+
+  /**
+   * Request flight reservations.
+   *
+   * @param names customer names
+   * @return reservationID by customer name, for the customers whose flight was booked
+   */
+  Map<String, String> bookFlights(List<String> names);
+
+  /**
+   * Request hotel reservations.
+   *
+   * @param names customer names
+   * @return reservationID by customer name, for the customers whose hotel was booked
+   */
+  Map<String, String> bookHotels(List<String> names);
+
+  /**
+   * Cancel flight reservations.
+   *
+   * @param reservationIDs ids returned by bookFlights by customer name
+   * @return cancellationConfirmationID by customer name
+   */
+  Map<String, String> cancelFlights(Map<String, String> reservationIDs);
+
+  /**
+   * Cancel hotel reservations.
+   *
+   * @param reservationIDs ids returned by bookHotels by customer name
+   * @return cancellationConfirmationID by customer name
+   */
+  Map<String, String> cancelHotels(Map<String, String> reservationIDs);
+
+  /**
+   * Cancel car rental reservations.
+   *
+   * @param reservationIDs ids returned by reserveCars by customer name
+   * @return cancellationConfirmationID by customer name
+   */
+  Map<String, String> cancelCars(Map<String, String> reservationIDs);
+
+  /**
+   * Cancel the flight reservations of customers, whichever were booked.
+   *
+   * @param names customer names passed to a bookFlights call whose outcome is unknown
+   * @return cancellationConfirmationID by customer name, for the customers that had a reservation
+   */
+  Map<String, String> cancelFlightsOf(List<String> names);
+
+  /**
+   * Cancel the hotel reservations of customers, whichever were booked.
+   *
+   * @param names customer names passed to a bookHotels call whose outcome is unknown
+   * @return cancellationConfirmationID by customer name, for the customers that had a reservation
+   */
+  Map<String, String> cancelHotelsOf(List<String> names);
+
+  /**
+   * Cancel the car rental reservations of customers, whichever were reserved.
+   *
+   * @param names customer names passed to a reserveCars call whose outcome is unknown
+   * @return cancellationConfirmationID by customer name, for the customers that had a reservation
+   */
+  Map<String, String> cancelCarsOf(List<String> names);
+}
@@ -0,0 +1,91 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.bookingsaga;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class GroupBookingActivitiesImpl implements GroupBookingActivities {
+  @Override
+  public Map<String, String> reserveCars(List<String> names) {
+    System.out.println("reserve cars for " + names);
+    return reserve(names);
+  }
+
+  @Override
+  public Map<String, String> bookFlights(List<String> names) {
+    // The last customer of the group doesn't get a seat.
+    List<String> seated = names.subList(0, Math.max(names.size() - 1, 0));
+    System.out.println("booking flights for " + seated + ", failing for the others of " + names);
+    return reserve(seated);
+  }
+
+  @Override
+  public Map<String, String> bookHotels(List<String> names) {
+    System.out.println("booking hotels for " + names);
+    return reserve(names);
+  }
+
+  @Override
+  public Map<String, String> cancelFlights(Map<String, String> reservationIDs) {
+    System.out.println("cancelling flight reservations " + reservationIDs);
+    return reserve(reservationIDs.keySet());
+  }
+
+  @Override
+  public Map<String, String> cancelHotels(Map<String, String> reservationIDs) {
+    System.out.println("cancelling hotel reservations " + reservationIDs);
+    return reserve(reservationIDs.keySet());
+  }
+
+  @Override
+  public Map<String, String> cancelCars(Map<String, String> reservationIDs) {
+    System.out.println("cancelling car reservations " + reservationIDs);
+    return reserve(reservationIDs.keySet());
+  }
+
+  @Override
+  public Map<String, String> cancelFlightsOf(List<String> names) {
+    System.out.println("cancelling flight reservations of " + names);
+    return reserve(names);
+  }
+
+  @Override
+  public Map<String, String> cancelHotelsOf(List<String> names) {
+    System.out.println("cancelling hotel reservations of " + names);
+    return reserve(names);
+  }
+
+  @Override
+  public Map<String, String> cancelCarsOf(List<String> names) {
+    System.out.println("cancelling car reservations of " + names);
+    return reserve(names);
+  }
+
+  private static Map<String, String> reserve(Iterable<String> names) {
+    Map<String, String> ids = new LinkedHashMap<>();
+    for (String name : names) {
+      ids.put(name, UUID.randomUUID().toString());
+    }
+    return ids;
+  }
+}
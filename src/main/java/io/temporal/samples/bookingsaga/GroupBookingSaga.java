@@ -0,0 +1,62 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.bookingsaga;
+
+import static io.temporal.samples.bookingsaga.TripBookingSaga.TASK_QUEUE;
+
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.serviceclient.WorkflowServiceStubs;
+import io.temporal.worker.Worker;
+import io.temporal.worker.WorkerFactory;
+import java.util.Arrays;
+import java.util.List;
+
+/** Books a trip for a group of customers given as arguments. */
+public class GroupBookingSaga {
+
+  public static void main(String[] args) {
+    // gRPC stubs wrapper that talks to the local docker instance of temporal service.
+    WorkflowServiceStubs service = WorkflowServiceStubs.newInstance();
+    // client that can be used to start and signal workflows
+    WorkflowClient client = WorkflowClient.newInstance(service);
+
+    // worker factory that can be used to create workers for specific task queues
+    WorkerFactory factory = WorkerFactory.newInstance(client);
+
+    // Worker that listens on a task queue and hosts both workflow and activity implementations.
+    Worker worker = factory.newWorker(TASK_QUEUE);
+    worker.registerWorkflowImplementationTypes(GroupBookingWorkflowImpl.class);
+    worker.registerActivitiesImplementations(new GroupBookingActivitiesImpl());
+
+    // Start all workers created by this factory.
+    factory.start();
+    System.out.println("Worker started for task queue: " + TASK_QUEUE);
+
+    List<String> names =
+        args.length > 0 ? Arrays.asList(args) : Arrays.asList("alice", "bob", "carol", "dave");
+    WorkflowOptions options = WorkflowOptions.newBuilder().setTaskQueue(TASK_QUEUE).build();
+    GroupBookingWorkflow group = client.newWorkflowStub(GroupBookingWorkflow.class, options);
+    List<String> booked = group.bookGroupTrip(names);
+    System.out.println("Booked trips for " + booked + " of " + names);
+
+    System.exit(0);
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.bookingsaga;
+
+import io.temporal.activity.ActivityOptions;
+import io.temporal.common.RetryOptions;
+import io.temporal.failure.ActivityFailure;
+import io.temporal.workflow.Async;
+import io.temporal.workflow.Promise;
+import io.temporal.workflow.Saga;
+import io.temporal.workflow.Workflow;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Requests the reservations of the whole group with one activity per provider, all three at the
+ * same time, instead of three activities per customer. The compensation is tracked per customer:
+ * only the customers missing one of their reservations have the others cancelled, with one bulk
+ * cancellation per provider. A provider call that fails may have reserved for part of the group
+ * before failing, so the reservations of the whole group at that provider are cancelled by
+ * customer name.
+ */
+public class GroupBookingWorkflowImpl implements GroupBookingWorkflow {
+
+  private final ActivityOptions options =
+      ActivityOptions.newBuilder()
+          .setScheduleToCloseTimeout(Duration.ofHours(1))
+          // disable retries for example to run faster
+          .setRetryOptions(RetryOptions.newBuilder().setMaximumAttempts(1).build())
+          .build();
+  private final GroupBookingActivities activities =
+      Workflow.newActivityStub(GroupBookingActivities.class, options);
+
+  @Override
+  public List<String> bookGroupTrip(List<String> names) {
+    Promise<Map<String, String>> cars = Async.function(activities::reserveCars, names);
+    Promise<Map<String, String>> hotels = Async.function(activities::bookHotels, names);
+    Promise<Map<String, String>> flights = Async.function(activities::bookFlights, names);
+    Map<String, String> carReservationIDs = reservations(cars);
+    Map<String, String> hotelReservationIDs = reservations(hotels);
+    Map<String, String> flightReservationIDs = reservations(flights);
+
+    List<String> booked = new ArrayList<>();
+    Map<String, String> carsToCancel = new LinkedHashMap<>();
+    Map<String, String> hotelsToCancel = new LinkedHashMap<>();
+    Map<String, String> flightsToCancel = new LinkedHashMap<>();
+    for (String name : names) {
+      if (carReservationIDs != null
+          && carReservationIDs.containsKey(name)
+          && hotelReservationIDs != null
+          && hotelReservationIDs.containsKey(name)
+          && flightReservationIDs != null
+          && flightReservationIDs.containsKey(name)) {
+        booked.add(name);
+      } else {
+        copyReservation(name, carReservationIDs, carsToCancel);
+        copyReservation(name, hotelReservationIDs, hotelsToCancel);
+        copyReservation(name, flightReservationIDs, flightsToCancel);
+      }
+    }
+
+    // Configure SAGA to run compensation activities in parallel
+    Saga.Options sagaOptions = new Saga.Options.Builder().setParallelCompensation(true).build();
+    Saga saga = new Saga(sagaOptions);
+    if (carReservationIDs == null) {
+      saga.addCompensation(activities::cancelCarsOf, names);
+    } else if (!carsToCancel.isEmpty()) {
+      saga.addCompensation(activities::cancelCars, carsToCancel);
+    }
+    if (hotelReservationIDs == null) {
+      saga.addCompensation(activities::cancelHotelsOf, names);
+    } else if (!hotelsToCancel.isEmpty()) {
+      saga.addCompensation(activities::cancelHotels, hotelsToCancel);
+    }
+    if (flightReservationIDs == null) {
+      saga.addCompensation(activities::cancelFlightsOf, names);
+    } else if (!flightsToCancel.isEmpty()) {
+      saga.addCompensation(activities::cancelFlights, flightsToCancel);
+    }
+    saga.compensate();
+    return booked;
+  }
+
+  /**
+   * @return null if the call failed, as it may have timed out or failed after reserving for some
+   *     of the customers
+   */
+  private static Map<String, String> reservations(Promise<Map<String, String>> promise) {
+    try {
+      return promise.get();
+    } catch (ActivityFailure e) {
+      return null;
+    }
+  }
+
+  private static void copyReservation(
+      String name, Map<String, String> from, Map<String, String> to) {
+    String reservationID = from == null ? null : from.get(name);
+    if (reservationID != null) {
+      to.put(name, reservationID);
+    }
+  }
+}
@@ -43,8 +43,14 @@ public class TripBookingSaga {
     // Worker that listens on a task queue and hosts both workflow and activity implementations.
     Worker worker = factory.newWorker(TASK_QUEUE);
 
-    // Workflows are stateful. So you need a type to create instances.
-    worker.registerWorkflowImplementationTypes(TripBookingWorkflowImpl.class);
+    if (args.length > 0 && args[0].equals("parallel")) {
+      // Reservations are requested at the same time, so a factory passes the mode.
+      worker.addWorkflowImplementationFactory(
+          TripBookingWorkflow.class, () -> new TripBookingWorkflowImpl(true));
+    } else {
+      // Workflows are stateful. So you need a type to create instances.
+      worker.registerWorkflowImplementationTypes(TripBookingWorkflowImpl.class);
+    }
 
     // Activities are stateless and thread safe. So a shared instance is used.
     TripBookingActivities tripBookingActivities = new TripBookingActivitiesImpl();
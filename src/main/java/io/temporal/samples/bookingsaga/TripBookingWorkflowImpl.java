@@ -22,12 +22,23 @@ package io.temporal.samples.bookingsaga;
 import io.temporal.activity.ActivityOptions;
 import io.temporal.common.RetryOptions;
 import io.temporal.failure.ActivityFailure;
-import io.temporal.workflow.Saga;
+import io.temporal.samples.common.CompensationRunner;
+import io.temporal.workflow.Async;
+import io.temporal.workflow.Functions;
+import io.temporal.workflow.Promise;
 import io.temporal.workflow.Workflow;
 import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class TripBookingWorkflowImpl implements TripBookingWorkflow {
 
+  // Bounds the cancellations sent to the providers at the same time.
+  private static final int MAX_CONCURRENT_CANCELLATIONS = 2;
+  // Long enough for a reservation still in flight to complete and then be cancelled.
+  private static final Duration CANCELLATION_TIMEOUT = Duration.ofHours(2);
+
   private final ActivityOptions options =
       ActivityOptions.newBuilder()
           .setScheduleToCloseTimeout(Duration.ofHours(1))
@@ -36,12 +47,37 @@ public class TripBookingWorkflowImpl implements TripBookingWorkflow {
           .build();
   private final TripBookingActivities activities =
       Workflow.newActivityStub(TripBookingActivities.class, options);
+  private final boolean parallelReservations;
+
+  public TripBookingWorkflowImpl() {
+    this(false);
+  }
+
+  /**
+   * @param parallelReservations request the car, hotel and flight at the same time, so the trip
+   *     takes as long as the slowest of them instead of their sum.
+   */
+  public TripBookingWorkflowImpl(boolean parallelReservations) {
+    this.parallelReservations = parallelReservations;
+  }
 
   @Override
   public void bookTrip(String name) {
-    // Configure SAGA to run compensation activities in parallel
-    Saga.Options sagaOptions = new Saga.Options.Builder().setParallelCompensation(true).build();
-    Saga saga = new Saga(sagaOptions);
+    // Configure SAGA to run compensation activities in parallel, a few at a time
+    CompensationRunner.Options sagaOptions =
+        new CompensationRunner.Options.Builder()
+            .setMaxConcurrency(MAX_CONCURRENT_CANCELLATIONS)
+            .setStepTimeout(CANCELLATION_TIMEOUT)
+            .build();
+    CompensationRunner saga = new CompensationRunner(sagaOptions);
+    if (parallelReservations) {
+      reserveInParallel(name, saga);
+    } else {
+      reserveInSequence(name, saga);
+    }
+  }
+
+  private void reserveInSequence(String name, CompensationRunner saga) {
     try {
       String carReservationID = activities.reserveCar(name);
       saga.addCompensation(activities::cancelCar, carReservationID, name);
@@ -56,4 +92,55 @@ public class TripBookingWorkflowImpl implements TripBookingWorkflow {
       throw e;
     }
   }
+
+  /**
+   * Adds a compensation for each reservation as it succeeds. The first failure compensates right
+   * away, without waiting for the reservations still in flight, which are cancelled only if they
+   * succeed.
+   */
+  private void reserveInParallel(String name, CompensationRunner saga) {
+    // Reservations in flight and their cancellations, in a deterministic order.
+    Map<Promise<String>, Functions.Func2<String, String, String>> pending = new LinkedHashMap<>();
+    pending.put(Async.function(activities::reserveCar, name), activities::cancelCar);
+    pending.put(Async.function(activities::bookHotel, name), activities::cancelHotel);
+    pending.put(Async.function(activities::bookFlight, name), activities::cancelFlight);
+    while (!pending.isEmpty()) {
+      Workflow.await(() -> pending.keySet().stream().anyMatch(Promise::isCompleted));
+      RuntimeException failure = null;
+      Iterator<Map.Entry<Promise<String>, Functions.Func2<String, String, String>>> entries =
+          pending.entrySet().iterator();
+      while (entries.hasNext()) {
+        Map.Entry<Promise<String>, Functions.Func2<String, String, String>> entry = entries.next();
+        Promise<String> reservation = entry.getKey();
+        if (!reservation.isCompleted()) {
+          continue;
+        }
+        entries.remove();
+        if (reservation.getFailure() == null) {
+          saga.addCompensation(entry.getValue(), reservation.get(), name);
+        } else if (failure == null) {
+          failure = reservation.getFailure();
+        }
+      }
+      if (failure != null) {
+        for (Map.Entry<Promise<String>, Functions.Func2<String, String, String>> entry :
+            pending.entrySet()) {
+          saga.addCompensation(() -> cancelIfReserved(entry.getKey(), entry.getValue(), name));
+        }
+        saga.compensate();
+        throw failure;
+      }
+    }
+  }
+
+  private static void cancelIfReserved(
+      Promise<String> reservation, Functions.Func2<String, String, String> cancel, String name) {
+    String reservationID;
+    try {
+      reservationID = reservation.get();
+    } catch (ActivityFailure e) {
+      return;
+    }
+    cancel.apply(reservationID, name);
+  }
 }
@@ -0,0 +1,201 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.common;
+
+import io.temporal.workflow.Async;
+import io.temporal.workflow.CancellationScope;
+import io.temporal.workflow.Functions;
+import io.temporal.workflow.Promise;
+import io.temporal.workflow.Saga;
+import io.temporal.workflow.Workflow;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the compensations of a saga with at most a given number at the same time and a timeout for
+ * each of them. {@link Saga} runs them either all at once, which floods the services being
+ * compensated when there are many, or one after another, which takes as long as their sum.
+ *
+ * <p>Compensations are added to ordering groups. The groups are compensated in the reverse order
+ * of their creation, each one after the previous one completed, and the compensations of a group
+ * run in parallel, started in the reverse order of their addition. With a single group and a
+ * concurrency of one, this is the sequential compensation of {@link Saga}.
+ *
+ * <p>Must be used from workflow code only.
+ */
+public final class CompensationRunner {
+
+  public static final class Options {
+    private final int maxConcurrency;
+    private final Duration stepTimeout;
+    private final boolean continueWithError;
+
+    private Options(int maxConcurrency, Duration stepTimeout, boolean continueWithError) {
+      this.maxConcurrency = maxConcurrency;
+      this.stepTimeout = stepTimeout;
+      this.continueWithError = continueWithError;
+    }
+
+    public static final class Builder {
+      private int maxConcurrency = Integer.MAX_VALUE;
+      private Duration stepTimeout;
+      private boolean continueWithError;
+
+      /** Maximum number of compensations running at the same time. Unlimited by default. */
+      public Builder setMaxConcurrency(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+          throw new IllegalArgumentException("maxConcurrency: " + maxConcurrency);
+        }
+        this.maxConcurrency = maxConcurrency;
+        return this;
+      }
+
+      /**
+       * Time after which a compensation is cancelled and counted as failed. It covers all the
+       * attempts of the activities it calls. No timeout by default.
+       */
+      public Builder setStepTimeout(Duration stepTimeout) {
+        this.stepTimeout = stepTimeout;
+        return this;
+      }
+
+      /**
+       * Whether the earlier groups are still compensated after a compensation of a group failed.
+       * The other compensations of the failed group always complete.
+       */
+      public Builder setContinueWithError(boolean continueWithError) {
+        this.continueWithError = continueWithError;
+        return this;
+      }
+
+      public Options build() {
+        return new Options(maxConcurrency, stepTimeout, continueWithError);
+      }
+    }
+  }
+
+  /** Thrown with the first compensation failure as the cause and the others suppressed. */
+  public static class CompensationException extends RuntimeException {
+    public CompensationException(Throwable cause) {
+      super(cause);
+    }
+  }
+
+  private final Options options;
+  private final List<List<Functions.Proc>> groups = new ArrayList<>();
+
+  public CompensationRunner(Options options) {
+    this.options = options;
+    groups.add(new ArrayList<>());
+  }
+
+  /**
+   * Starts a new ordering group. Its compensations all complete before those added until now
+   * start.
+   */
+  public void startGroup() {
+    if (!currentGroup().isEmpty()) {
+      groups.add(new ArrayList<>());
+    }
+  }
+
+  public void addCompensation(Functions.Proc operation) {
+    currentGroup().add(operation);
+  }
+
+  public <A1> void addCompensation(Functions.Proc1<A1> operation, A1 arg1) {
+    addCompensation(() -> operation.apply(arg1));
+  }
+
+  public <A1, A2> void addCompensation(Functions.Proc2<A1, A2> operation, A1 arg1, A2 arg2) {
+    addCompensation(() -> operation.apply(arg1, arg2));
+  }
+
+  public <A1, R> void addCompensation(Functions.Func1<A1, R> operation, A1 arg1) {
+    addCompensation(() -> operation.apply(arg1));
+  }
+
+  public <A1, A2, R> void addCompensation(Functions.Func2<A1, A2, R> operation, A1 arg1, A2 arg2) {
+    addCompensation(() -> operation.apply(arg1, arg2));
+  }
+
+  /**
+   * Runs the compensations added so far and returns once they completed.
+   *
+   * @throws CompensationException if a compensation failed or timed out
+   */
+  public void compensate() {
+    List<Throwable> failures = new ArrayList<>();
+    for (int i = groups.size() - 1; i >= 0; i--) {
+      List<Functions.Proc> group = groups.get(i);
+      List<Promise<Void>> steps = new ArrayList<>();
+      for (int j = group.size() - 1; j >= 0; j--) {
+        Workflow.await(() -> running(steps) < options.maxConcurrency);
+        steps.add(Async.procedure(this::runStep, group.get(j), failures));
+      }
+      Workflow.await(() -> running(steps) == 0);
+      if (!failures.isEmpty() && !options.continueWithError) {
+        break;
+      }
+    }
+    if (!failures.isEmpty()) {
+      CompensationException e = new CompensationException(failures.get(0));
+      for (Throwable failure : failures.subList(1, failures.size())) {
+        e.addSuppressed(failure);
+      }
+      throw e;
+    }
+  }
+
+  private void runStep(Functions.Proc step, List<Throwable> failures) {
+    List<Promise<Void>> result = new ArrayList<>(1);
+    CancellationScope scope =
+        Workflow.newCancellationScope(() -> result.add(Async.procedure(step)));
+    scope.run();
+    Promise<Void> completion = result.get(0);
+    if (options.stepTimeout == null) {
+      Workflow.await(completion::isCompleted);
+    } else if (!Workflow.await(options.stepTimeout, completion::isCompleted)) {
+      scope.cancel("compensation timed out");
+      failures.add(
+          new TimeoutException("compensation didn't complete within " + options.stepTimeout));
+      return;
+    }
+    if (completion.getFailure() != null) {
+      failures.add(completion.getFailure());
+    }
+  }
+
+  private List<Functions.Proc> currentGroup() {
+    return groups.get(groups.size() - 1);
+  }
+
+  private static int running(List<Promise<Void>> steps) {
+    int running = 0;
+    for (Promise<Void> step : steps) {
+      if (!step.isCompleted()) {
+        running++;
+      }
+    }
+    return running;
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import io.temporal.activity.Activity;
+import io.temporal.activity.ActivityExecutionContext;
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowFailedException;
+import io.temporal.client.WorkflowStub;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class BatchActivitiesImpl implements BatchActivities {
+
+  /** Must be shorter than the heartbeat timeout of the awaitFile activity. */
+  static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(10);
+
+  private final WorkflowClient client;
+
+  public BatchActivitiesImpl(WorkflowClient client) {
+    this.client = client;
+  }
+
+  @Override
+  public String awaitFile(String workflowId) {
+    ActivityExecutionContext context = Activity.getExecutionContext();
+    WorkflowStub file =
+        client.newUntypedWorkflowStub(workflowId, Optional.empty(), Optional.empty());
+    while (true) {
+      try {
+        file.getResult(HEARTBEAT_INTERVAL.toMillis(), TimeUnit.MILLISECONDS, Void.class);
+        return null;
+      } catch (TimeoutException e) {
+        context.heartbeat(null);
+      } catch (WorkflowFailedException e) {
+        // Reported like the failures of the files whose child the workflow awaits itself.
+        Throwable cause = e;
+        while (cause.getCause() != null) {
+          cause = cause.getCause();
+        }
+        return cause.getMessage();
+      }
+    }
+  }
+}
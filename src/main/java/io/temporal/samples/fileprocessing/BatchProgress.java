@@ -0,0 +1,115 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Progress of a {@link FileProcessingBatchWorkflow} over all its runs. Also the state it carries
+ * over when it continues as new.
+ */
+public final class BatchProgress {
+  private long startedAtMillis;
+  private long elapsedMillis;
+  private long total;
+  private long started;
+  private long succeeded;
+  private long failed;
+  private int inFlight;
+  private double filesPerSecond;
+  private List<String> failures;
+
+  BatchProgress(
+      long startedAtMillis,
+      long elapsedMillis,
+      long total,
+      long started,
+      long succeeded,
+      long failed,
+      int inFlight,
+      List<String> failures) {
+    this.startedAtMillis = startedAtMillis;
+    this.elapsedMillis = elapsedMillis;
+    this.total = total;
+    this.started = started;
+    this.succeeded = succeeded;
+    this.failed = failed;
+    this.inFlight = inFlight;
+    this.filesPerSecond = elapsedMillis == 0 ? 0 : (succeeded + failed) * 1000.0 / elapsedMillis;
+    this.failures = failures;
+  }
+
+  /** Jackson needs it */
+  public BatchProgress() {}
+
+  /** @return workflow time at which the first run started */
+  public long getStartedAtMillis() {
+    return startedAtMillis;
+  }
+
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  /** @return number of files in the batch, -1 until the end of a manifest is reached */
+  public long getTotal() {
+    return total;
+  }
+
+  /** @return number of files whose processing started, including those in flight */
+  public long getStarted() {
+    return started;
+  }
+
+  public long getSucceeded() {
+    return succeeded;
+  }
+
+  public long getFailed() {
+    return failed;
+  }
+
+  public int getInFlight() {
+    return inFlight;
+  }
+
+  /** @return files completed per second since the batch started */
+  public double getFilesPerSecond() {
+    return filesPerSecond;
+  }
+
+  /** @return the first failed files with their failure messages */
+  public List<String> getFailures() {
+    return failures == null ? new ArrayList<>() : failures;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%d/%s files started, %d succeeded, %d failed, %d in flight, %.2f files/s",
+        started,
+        total < 0 ? "?" : Long.toString(total),
+        succeeded,
+        failed,
+        inFlight,
+        filesPerSecond);
+  }
+}
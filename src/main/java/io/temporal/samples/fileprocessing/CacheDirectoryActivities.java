@@ -0,0 +1,46 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import io.temporal.activity.ActivityInterface;
+import java.net.URL;
+
+/** Lets {@link FileProcessingWorkflowImpl} use the {@link CacheDirectoryWorkflow}. */
+@ActivityInterface
+public interface CacheDirectoryActivities {
+
+  /**
+   * Chooses the host to download a file on, which is also where it is processed and uploaded from.
+   * The least loaded of the hosts that have the file cached is preferred. Otherwise the less loaded
+   * of two hosts picked at random among those that accept downloads is chosen, so that the
+   * workflows started between two load reports don't all go to the same host.
+   *
+   * @param url remote file location
+   * @return task queue of the chosen host, null if no host reported its load recently
+   */
+  String selectDownloadHost(URL url);
+
+  /**
+   * Removes a host whose task queue nobody polls from the directory.
+   *
+   * @param hostTaskQueue task queue of the host
+   */
+  void removeHost(String hostTaskQueue);
+}
@@ -0,0 +1,99 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowNotFoundException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class CacheDirectoryActivitiesImpl implements CacheDirectoryActivities {
+
+  /** A host that didn't report its load for this long is presumed gone. */
+  static final Duration LOAD_EXPIRATION = HostLoadReporter.INTERVAL.multipliedBy(3);
+
+  private final WorkflowClient client;
+
+  public CacheDirectoryActivitiesImpl(WorkflowClient client) {
+    this.client = client;
+  }
+
+  @Override
+  public String selectDownloadHost(URL url) {
+    CacheDirectoryWorkflow directory =
+        client.newWorkflowStub(CacheDirectoryWorkflow.class, CacheDirectoryWorkflow.WORKFLOW_ID);
+    List<String> caching;
+    List<HostLoad> loads;
+    try {
+      caching = directory.getHosts(url.toString());
+      loads = directory.getLoads();
+    } catch (WorkflowNotFoundException e) {
+      // No host reported anything yet.
+      return null;
+    }
+    String host = select(caching, loads, System.currentTimeMillis(), ThreadLocalRandom.current());
+    System.out.println("selectDownloadHost activity: " + host + " for " + url);
+    return host;
+  }
+
+  static String select(List<String> caching, List<HostLoad> loads, long nowMillis, Random random) {
+    List<HostLoad> live = new ArrayList<>();
+    for (HostLoad load : loads) {
+      if (nowMillis - load.getReportedAtMillis() <= LOAD_EXPIRATION.toMillis()) {
+        live.add(load);
+      }
+    }
+    // A cache hit takes no disk space, so a caching host is fine even when it refuses downloads.
+    Set<String> cachingHosts = new TreeSet<>(caching);
+    Optional<HostLoad> leastLoadedCaching =
+        live.stream()
+            .filter(load -> cachingHosts.contains(load.getHostTaskQueue()))
+            .min(HostLoad.LEAST_LOADED_FIRST);
+    if (leastLoadedCaching.isPresent()) {
+      return leastLoadedCaching.get().getHostTaskQueue();
+    }
+    List<HostLoad> accepting = new ArrayList<>();
+    for (HostLoad load : live) {
+      if (load.isAcceptingDownloads()) {
+        accepting.add(load);
+      }
+    }
+    if (accepting.isEmpty()) {
+      return null;
+    }
+    HostLoad first = accepting.get(random.nextInt(accepting.size()));
+    HostLoad second = accepting.get(random.nextInt(accepting.size()));
+    return HostLoad.LEAST_LOADED_FIRST.compare(first, second) <= 0
+        ? first.getHostTaskQueue()
+        : second.getHostTaskQueue();
+  }
+
+  @Override
+  public void removeHost(String hostTaskQueue) {
+    CacheDirectoryPublisher.signal(client, d -> d.hostUnavailable(hostTaskQueue));
+  }
+}
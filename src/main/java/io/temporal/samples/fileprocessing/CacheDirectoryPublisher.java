@@ -0,0 +1,74 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import io.temporal.client.BatchRequest;
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.workflow.Functions;
+
+/**
+ * Reports the files added to and evicted from the cache of a host to the {@link
+ * CacheDirectoryWorkflow}. The directory is only a hint for routing, so a report that fails is
+ * logged and dropped instead of failing the download.
+ */
+public class CacheDirectoryPublisher implements ContentCache.Listener {
+
+  private final WorkflowClient client;
+  private final String hostTaskQueue;
+
+  public CacheDirectoryPublisher(WorkflowClient client, String hostTaskQueue) {
+    this.client = client;
+    this.hostTaskQueue = hostTaskQueue;
+  }
+
+  @Override
+  public void added(String url) {
+    publish(d -> d.cached(hostTaskQueue, url));
+  }
+
+  @Override
+  public void removed(String url) {
+    publish(d -> d.evicted(hostTaskQueue, url));
+  }
+
+  private void publish(Functions.Proc1<CacheDirectoryWorkflow> signal) {
+    try {
+      signal(client, signal);
+    } catch (RuntimeException e) {
+      System.err.println("Failed to update the cache directory: " + e);
+    }
+  }
+
+  /** Signals the directory, starting it if it is not running. */
+  static void signal(WorkflowClient client, Functions.Proc1<CacheDirectoryWorkflow> signal) {
+    CacheDirectoryWorkflow directory =
+        client.newWorkflowStub(
+            CacheDirectoryWorkflow.class,
+            WorkflowOptions.newBuilder()
+                .setWorkflowId(CacheDirectoryWorkflow.WORKFLOW_ID)
+                .setTaskQueue(FileProcessingWorker.TASK_QUEUE)
+                .build());
+    BatchRequest request = client.newSignalWithStartRequest();
+    request.add(directory::run, null, null);
+    request.add(() -> signal.apply(directory));
+    client.signalWithStart(request);
+  }
+}
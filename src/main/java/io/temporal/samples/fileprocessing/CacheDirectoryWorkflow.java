@@ -0,0 +1,72 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import io.temporal.workflow.QueryMethod;
+import io.temporal.workflow.SignalMethod;
+import io.temporal.workflow.WorkflowInterface;
+import io.temporal.workflow.WorkflowMethod;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Directory of the files held by the host caches of the workers and of the load of the hosts. The
+ * workers signal the files they cache and evict and report their load periodically, and {@link
+ * FileProcessingWorkflowImpl} asks it where to download its source through {@link
+ * CacheDirectoryActivities}. A single instance runs with {@link #WORKFLOW_ID}.
+ */
+@WorkflowInterface
+public interface CacheDirectoryWorkflow {
+
+  String WORKFLOW_ID = "FileProcessingCacheDirectory";
+
+  /**
+   * Keeps track of the cached files. Never completes.
+   *
+   * @param hostsByUrl host task queues by cached URL carried over from a previous run, null when
+   *     starting
+   * @param loads last load reported by each host carried over from a previous run, null when
+   *     starting
+   */
+  @WorkflowMethod
+  void run(Map<String, List<String>> hostsByUrl, List<HostLoad> loads);
+
+  @SignalMethod
+  void cached(String hostTaskQueue, String url);
+
+  @SignalMethod
+  void evicted(String hostTaskQueue, String url);
+
+  /** Replaces the last load reported by the host. */
+  @SignalMethod
+  void reportLoad(HostLoad load);
+
+  /** Forgets all the files and the load of a host that stopped polling its task queue. */
+  @SignalMethod
+  void hostUnavailable(String hostTaskQueue);
+
+  /** @return task queues of the hosts that have url in their cache */
+  @QueryMethod
+  List<String> getHosts(String url);
+
+  /** @return last load reported by each host */
+  @QueryMethod
+  List<HostLoad> getLoads();
+}
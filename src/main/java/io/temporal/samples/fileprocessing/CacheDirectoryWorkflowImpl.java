@@ -0,0 +1,109 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import io.temporal.workflow.Workflow;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+public class CacheDirectoryWorkflowImpl implements CacheDirectoryWorkflow {
+
+  /** Keeps the history short, the whole directory is carried over to the next run. */
+  static final int MAX_SIGNALS_PER_RUN = 1000;
+
+  private final CacheDirectoryWorkflow continueAsNew =
+      Workflow.newContinueAsNewStub(CacheDirectoryWorkflow.class);
+
+  private final Map<String, Set<String>> hostsByUrl = new TreeMap<>();
+
+  private final Map<String, HostLoad> loadsByHost = new TreeMap<>();
+
+  private int signals;
+
+  @Override
+  public void run(Map<String, List<String>> carriedOver, List<HostLoad> loads) {
+    // Signals received before this point are already applied, the carried over state is added.
+    if (carriedOver != null) {
+      carriedOver.forEach((url, hosts) -> hosts(url).addAll(hosts));
+    }
+    if (loads != null) {
+      loads.forEach(load -> loadsByHost.putIfAbsent(load.getHostTaskQueue(), load));
+    }
+    Workflow.await(() -> signals >= MAX_SIGNALS_PER_RUN);
+    Map<String, List<String>> next = new TreeMap<>();
+    hostsByUrl.forEach((url, hosts) -> next.put(url, new ArrayList<>(hosts)));
+    continueAsNew.run(next, getLoads());
+  }
+
+  @Override
+  public void cached(String hostTaskQueue, String url) {
+    hosts(url).add(hostTaskQueue);
+    signals++;
+  }
+
+  @Override
+  public void evicted(String hostTaskQueue, String url) {
+    Set<String> hosts = hostsByUrl.get(url);
+    if (hosts != null && hosts.remove(hostTaskQueue) && hosts.isEmpty()) {
+      hostsByUrl.remove(url);
+    }
+    signals++;
+  }
+
+  @Override
+  public void reportLoad(HostLoad load) {
+    load.setReportedAtMillis(Workflow.currentTimeMillis());
+    loadsByHost.put(load.getHostTaskQueue(), load);
+    signals++;
+  }
+
+  @Override
+  public void hostUnavailable(String hostTaskQueue) {
+    loadsByHost.remove(hostTaskQueue);
+    Iterator<Set<String>> iterator = hostsByUrl.values().iterator();
+    while (iterator.hasNext()) {
+      Set<String> hosts = iterator.next();
+      if (hosts.remove(hostTaskQueue) && hosts.isEmpty()) {
+        iterator.remove();
+      }
+    }
+    signals++;
+  }
+
+  @Override
+  public List<String> getHosts(String url) {
+    Set<String> hosts = hostsByUrl.get(url);
+    return hosts == null ? new ArrayList<>() : new ArrayList<>(hosts);
+  }
+
+  @Override
+  public List<HostLoad> getLoads() {
+    return new ArrayList<>(loadsByHost.values());
+  }
+
+  private Set<String> hosts(String url) {
+    return hostsByUrl.computeIfAbsent(url, k -> new TreeSet<>());
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of downloaded files on the local disk of a host. An entry is found by the URL of the file
+ * and a validator of its content, the ETag or else the last modified time and length that the
+ * server reports, so a file that changed at its source is downloaded again.
+ *
+ * <p>The cached files together stay within a disk budget, the least recently used ones are evicted
+ * first. A hit hard links the cached file to the destination, which takes no time whatever the file
+ * size and keeps the content readable even if the entry is evicted afterwards. The index is kept
+ * in memory only, so files left in the directory by a previous process are deleted on startup.
+ */
+public final class ContentCache {
+
+  /** Notified of the URLs added to and evicted from the cache, outside of its lock. */
+  public interface Listener {
+    default void added(String url) {}
+
+    default void removed(String url) {}
+  }
+
+  private static final class Entry {
+    private final String validator;
+    private final Path file;
+    private final long size;
+
+    private Entry(String validator, Path file, long size) {
+      this.validator = validator;
+      this.file = file;
+      this.size = size;
+    }
+  }
+
+  private final Path directory;
+  private final long budgetBytes;
+  private final Listener listener;
+
+  /** Entries by URL in least recently used first order. */
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long sizeBytes;
+  private long sequence;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  public ContentCache(Path directory, long budgetBytes) throws IOException {
+    this(directory, budgetBytes, new Listener() {});
+  }
+
+  public ContentCache(Path directory, long budgetBytes, Listener listener) throws IOException {
+    this.directory = Files.createDirectories(directory);
+    this.budgetBytes = budgetBytes;
+    this.listener = listener;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  /**
+   * Asks the source for the validator of its current content without downloading it.
+   *
+   * @return validator or null if the source reports none
+   */
+  public static String validator(URL url) throws IOException {
+    URLConnection connection = url.openConnection();
+    if (connection instanceof HttpURLConnection) {
+      HttpURLConnection http = (HttpURLConnection) connection;
+      http.setRequestMethod("HEAD");
+      try {
+        return http.getResponseCode() == HttpURLConnection.HTTP_OK ? validator(http) : null;
+      } finally {
+        http.disconnect();
+      }
+    }
+    try {
+      return validator(connection);
+    } finally {
+      connection.getInputStream().close();
+    }
+  }
+
+  /** @return validator of the content the connection received or null if there is none */
+  public static String validator(URLConnection connection) {
+    String etag = connection.getHeaderField("ETag");
+    if (etag != null) {
+      return "etag:" + etag;
+    }
+    long lastModified = connection.getLastModified();
+    if (lastModified == 0) {
+      return null;
+    }
+    return "modified:" + lastModified + ":" + connection.getContentLengthLong();
+  }
+
+  /**
+   * Links the cached content of url to destination if it was cached with the same validator.
+   *
+   * @param validator validator of the current content or null if it has none
+   * @return true on a hit
+   */
+  public boolean get(String url, String validator, Path destination) throws IOException {
+    Entry entry;
+    synchronized (this) {
+      entry = validator == null ? null : entries.get(url);
+    }
+    boolean hit = false;
+    if (entry != null && entry.validator.equals(validator)) {
+      try {
+        linkOrCopy(entry.file, destination);
+        hit = true;
+      } catch (NoSuchFileException e) {
+        // Evicted since it was looked up.
+      }
+    }
+    synchronized (this) {
+      if (hit) {
+        hits++;
+      } else {
+        misses++;
+      }
+    }
+    return hit;
+  }
+
+  /**
+   * Adds the downloaded content of url to the cache, replacing an older version of it, and evicts
+   * the least recently used entries that no longer fit in the budget.
+   *
+   * @param validator validator of the downloaded content, nothing is cached if it is null
+   */
+  public void put(String url, String validator, Path file) throws IOException {
+    long size = Files.size(file);
+    if (validator == null || size > budgetBytes) {
+      return;
+    }
+    Path cached;
+    synchronized (this) {
+      cached = directory.resolve(String.format("%016x", sequence++));
+    }
+    linkOrCopy(file, cached);
+    List<String> evicted = new ArrayList<>();
+    synchronized (this) {
+      Entry replaced = entries.put(url, new Entry(validator, cached, size));
+      sizeBytes += size;
+      if (replaced != null) {
+        remove(replaced);
+      }
+      Iterator<Map.Entry<String, Entry>> leastRecentlyUsed = entries.entrySet().iterator();
+      while (sizeBytes > budgetBytes) {
+        Map.Entry<String, Entry> entry = leastRecentlyUsed.next();
+        leastRecentlyUsed.remove();
+        remove(entry.getValue());
+        evicted.add(entry.getKey());
+        evictions++;
+      }
+    }
+    listener.added(url);
+    for (String evictedUrl : evicted) {
+      listener.removed(evictedUrl);
+    }
+  }
+
+  private void remove(Entry entry) throws IOException {
+    sizeBytes -= entry.size;
+    Files.deleteIfExists(entry.file);
+  }
+
+  private static void linkOrCopy(Path source, Path target) throws IOException {
+    try {
+      Files.createLink(target, source);
+    } catch (NoSuchFileException e) {
+      throw e;
+    } catch (UnsupportedOperationException | FileSystemException e) {
+      // Another file system, or one without hard links.
+      Files.copy(source, target);
+    }
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /** Total size of the cached files. */
+  public synchronized long getSizeBytes() {
+    return sizeBytes;
+  }
+
+  public synchronized int getEntries() {
+    return entries.size();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        "hits=%d misses=%d evictions=%d entries=%d bytes=%d/%d",
+        hits, misses, evictions, entries.size(), sizeBytes, budgetBytes);
+  }
+}
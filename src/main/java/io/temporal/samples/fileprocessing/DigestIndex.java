@@ -0,0 +1,192 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Persistent index of the file contents uploaded from a host, by the SHA-256 digest of the
+ * downloaded file and the destination. A file whose digest was already uploaded to the same
+ * destination doesn't need to be processed and uploaded again.
+ *
+ * <p>The index is an append-only file with a {@code <digest> <destination>} line per upload,
+ * loaded in memory on startup and forced to disk on each addition. A line cut short by a crash is
+ * dropped. The processes that share the file lock it to append, and see each other's additions
+ * when they start. Entries are never removed, as the uploaded files are expected to stay at their
+ * destination.
+ */
+public final class DigestIndex {
+
+  private static final int DIGEST_HEX_LENGTH = 64;
+
+  private final Path file;
+  private final Set<String> entries = new HashSet<>();
+  private final FileChannel out;
+  private long hits;
+
+  public DigestIndex(Path file) throws IOException {
+    this.file = file;
+    Files.createDirectories(file.toAbsolutePath().getParent());
+    out =
+        FileChannel.open(
+            file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try (FileLock lock = out.lock()) {
+      long complete = completeLength(out);
+      boolean torn = complete < out.size();
+      try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+        String previous = null;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+          load(previous);
+          previous = line;
+        }
+        if (!torn) {
+          load(previous);
+        }
+      }
+      // Drops the cut line, which could otherwise be taken for a complete one later.
+      out.truncate(complete);
+    }
+  }
+
+  /** Returns a new SHA-256 digest, the algorithm of the index. */
+  public static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Returns the digest of the whole content of file. */
+  public static String digest(Path file) throws IOException {
+    MessageDigest digest = newDigest();
+    try (InputStream in = Files.newInputStream(file)) {
+      byte[] buffer = new byte[StoreActivitiesImpl.DOWNLOAD_BUFFER_BYTES];
+      for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    return toHex(digest.digest());
+  }
+
+  public static String toHex(byte[] digest) {
+    StringBuilder hex = new StringBuilder(digest.length * 2);
+    for (byte b : digest) {
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return hex.toString();
+  }
+
+  /** Returns true if the content with this digest was uploaded to destination. */
+  public synchronized boolean contains(String digest, URL destination) {
+    boolean found = entries.contains(entry(digest, destination));
+    if (found) {
+      hits++;
+    }
+    return found;
+  }
+
+  /** Records that the content with this digest was uploaded to destination. */
+  public synchronized void add(String digest, URL destination) throws IOException {
+    if (digest.length() != DIGEST_HEX_LENGTH) {
+      throw new IllegalArgumentException("Not a SHA-256 hex digest: " + digest);
+    }
+    String entry = entry(digest, destination);
+    if (entries.add(entry)) {
+      write(entry + "\n");
+    }
+  }
+
+  public synchronized int getSize() {
+    return entries.size();
+  }
+
+  /** Number of lookups that found the content already uploaded. */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized void close() throws IOException {
+    out.close();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "DigestIndex{file=" + file + ", size=" + entries.size() + ", hits=" + hits + '}';
+  }
+
+  private void write(String text) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    // Other processes may be appending to the same file.
+    try (FileLock lock = out.lock()) {
+      long position = out.size();
+      while (buffer.hasRemaining()) {
+        position += out.write(buffer, position);
+      }
+      out.force(false);
+    }
+  }
+
+  private void load(String line) {
+    if (line != null
+        && line.length() > DIGEST_HEX_LENGTH + 1
+        && line.charAt(DIGEST_HEX_LENGTH) == ' ') {
+      entries.add(line);
+    }
+  }
+
+  private static String entry(String digest, URL destination) {
+    return digest + " " + destination;
+  }
+
+  /** Returns the length of the file up to the end of its last complete line. */
+  private static long completeLength(FileChannel file) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(4096);
+    for (long end = file.size(); end > 0; ) {
+      long start = Math.max(0, end - buffer.capacity());
+      buffer.clear();
+      buffer.limit((int) (end - start));
+      while (buffer.hasRemaining()) {
+        file.read(buffer, start + buffer.position());
+      }
+      for (int i = buffer.limit() - 1; i >= 0; i--) {
+        if (buffer.get(i) == '\n') {
+          return start + i + 1;
+        }
+      }
+      end = start;
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,279 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import com.google.common.util.concurrent.RateLimiter;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watches a directory and hands the files that appear in it to a {@link Starter}, once they stop
+ * changing.
+ *
+ * <p>A file is a candidate from the first event about it until its size and modification time
+ * stayed the same for the quiet period, which lets the writer finish it. It is then queued for the
+ * starter, which runs on its own thread at most at the given rate. When the starter falls behind
+ * and the queue is full, the files that are ready stay candidates and are queued as room frees up,
+ * so a burst of arrivals or an unavailable service doesn't grow the memory of the ingester. The
+ * directory is scanned again when the watch service overflows.
+ *
+ * <p>Files whose name starts with a dot are ignored, writers can use such a name until the file is
+ * complete and then rename it.
+ */
+public final class DirectoryIngester implements AutoCloseable {
+
+  /** Starts the processing of a file. */
+  public interface Starter {
+
+    /**
+     * @param file a file that stopped changing
+     * @param version name, size and modification time of the file, which differ when it is
+     *     written again
+     * @throws Exception to have the start retried after a delay
+     */
+    void start(Path file, String version) throws Exception;
+  }
+
+  private static final class Candidate {
+    private final Path file;
+    private long size;
+    private long lastModifiedMillis;
+    private long changedAtNanos;
+
+    private Candidate(Path file) {
+      this.file = file;
+    }
+
+    private String version() {
+      return file.getFileName() + "@" + size + "@" + lastModifiedMillis;
+    }
+  }
+
+  private static final Duration RETRY_DELAY = Duration.ofSeconds(1);
+
+  private final Path directory;
+  private final long quietPeriodNanos;
+  private final RateLimiter rateLimiter;
+  private final Starter starter;
+  private final WatchService watchService;
+  private final BlockingQueue<Candidate> ready;
+  private final Thread startThread;
+
+  /** Files that aren't queued yet, by path. Guarded by itself. */
+  private final Map<Path, Candidate> candidates = new TreeMap<>();
+
+  private final AtomicLong started = new AtomicLong();
+  private final AtomicLong failedStarts = new AtomicLong();
+  private volatile boolean closed;
+
+  /**
+   * @param quietPeriod how long a file must stay unchanged before it is started
+   * @param startsPerSecond maximum rate of starts
+   * @param maxQueuedStarts number of files ready to start above which the others wait
+   */
+  public DirectoryIngester(
+      Path directory,
+      Duration quietPeriod,
+      double startsPerSecond,
+      int maxQueuedStarts,
+      Starter starter)
+      throws IOException {
+    this.directory = directory;
+    this.quietPeriodNanos = quietPeriod.toNanos();
+    this.rateLimiter = RateLimiter.create(startsPerSecond);
+    this.starter = starter;
+    this.ready = new ArrayBlockingQueue<>(maxQueuedStarts);
+    this.watchService = directory.getFileSystem().newWatchService();
+    directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+    this.startThread = new Thread(this::startReadyFiles, "ingester-start");
+  }
+
+  /** Watches the directory until {@link #close()} is called. */
+  public void run() throws IOException, InterruptedException {
+    startThread.start();
+    // Files already in the directory are ingested like new ones.
+    scan();
+    long tickMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(quietPeriodNanos) / 4);
+    while (!closed) {
+      WatchKey key;
+      try {
+        key = watchService.poll(tickMillis, TimeUnit.MILLISECONDS);
+      } catch (ClosedWatchServiceException e) {
+        break;
+      }
+      if (key != null) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == OVERFLOW) {
+            scan();
+          } else {
+            changed(directory.resolve((Path) event.context()));
+          }
+        }
+        key.reset();
+      }
+      queueQuietFiles();
+    }
+  }
+
+  /** Number of files handed to the starter. */
+  public long getStarted() {
+    return started.get();
+  }
+
+  /** Number of files waiting to stop changing or for room in the queue. */
+  public int getCandidates() {
+    synchronized (candidates) {
+      return candidates.size();
+    }
+  }
+
+  /** Number of files that stopped changing and wait for the starter. */
+  public int getQueued() {
+    return ready.size();
+  }
+
+  @Override
+  public String toString() {
+    return "DirectoryIngester{directory="
+        + directory
+        + ", started="
+        + started
+        + ", failedStarts="
+        + failedStarts
+        + ", queued="
+        + ready.size()
+        + ", candidates="
+        + getCandidates()
+        + '}';
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    startThread.interrupt();
+    watchService.close();
+  }
+
+  private void scan() throws IOException {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        changed(file);
+      }
+    }
+  }
+
+  private void changed(Path file) {
+    if (file.getFileName().toString().startsWith(".")) {
+      return;
+    }
+    synchronized (candidates) {
+      Candidate candidate = candidates.computeIfAbsent(file, Candidate::new);
+      candidate.changedAtNanos = System.nanoTime();
+    }
+  }
+
+  /** Queues the candidates that didn't change for the quiet period, while there is room. */
+  private void queueQuietFiles() {
+    long now = System.nanoTime();
+    synchronized (candidates) {
+      Iterator<Candidate> iterator = candidates.values().iterator();
+      while (iterator.hasNext()) {
+        Candidate candidate = iterator.next();
+        BasicFileAttributes attributes;
+        try {
+          attributes = Files.readAttributes(candidate.file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+          iterator.remove();
+          continue;
+        } catch (IOException e) {
+          continue;
+        }
+        if (!attributes.isRegularFile()) {
+          iterator.remove();
+          continue;
+        }
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        if (attributes.size() != candidate.size
+            || lastModified != candidate.lastModifiedMillis) {
+          // Changes the events didn't report yet, or the first look at the file.
+          candidate.size = attributes.size();
+          candidate.lastModifiedMillis = lastModified;
+          candidate.changedAtNanos = now;
+          continue;
+        }
+        if (now - candidate.changedAtNanos < quietPeriodNanos) {
+          continue;
+        }
+        if (!ready.offer(candidate)) {
+          // Backpressure: the remaining candidates wait for the starter to catch up.
+          return;
+        }
+        iterator.remove();
+      }
+    }
+  }
+
+  private void startReadyFiles() {
+    while (!closed) {
+      Candidate candidate;
+      try {
+        candidate = ready.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      while (!closed) {
+        rateLimiter.acquire();
+        try {
+          starter.start(candidate.file, candidate.version());
+          started.incrementAndGet();
+          break;
+        } catch (Exception e) {
+          failedStarts.incrementAndGet();
+          System.err.println("Failed to start " + candidate.file + ": " + e);
+          try {
+            Thread.sleep(RETRY_DELAY.toMillis());
+          } catch (InterruptedException interrupted) {
+            return;
+          }
+        }
+      }
+    }
+  }
+}
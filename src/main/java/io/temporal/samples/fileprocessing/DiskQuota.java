@@ -0,0 +1,255 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Keeps track of the files the workflows stage on the local disk of a worker and of the free space
+ * left on it.
+ *
+ * <p>Each workflow stages its files in directories it gets from {@link #newDirectory}, which are
+ * deleted by {@link #release} once the processed file is uploaded. A workflow that moved to another
+ * host never releases them, so the directories of workflows that haven't used them for a while
+ * are deleted as well. All the directories are under a root directory of this
+ * worker, which is emptied on startup.
+ *
+ * <p>The monitor tells its listener when the usable space falls below the minimum, so the worker
+ * stops taking new downloads, and when it is back above the resume threshold. The gap between the
+ * two keeps the worker from flapping around a single threshold.
+ */
+public final class DiskQuota implements Closeable {
+
+  /** Notified by the monitor thread. */
+  public interface Listener {
+    void diskLow(long usableBytes);
+
+    void diskAvailable(long usableBytes);
+  }
+
+  private static final class Staged {
+    private final List<File> directories = new ArrayList<>();
+    private long lastUsedMillis;
+  }
+
+  private final Path root;
+  private final FileStore store;
+  private final long minFreeBytes;
+  private final long resumeFreeBytes;
+  private final Duration staleAfter;
+
+  private final Map<String, Staged> stagedByWorkflow = new HashMap<>();
+
+  private ScheduledExecutorService monitor;
+  private volatile boolean low;
+
+  /**
+   * @param root directory of this worker that holds all the staged files
+   * @param minFreeBytes usable space under which new downloads aren't accepted
+   * @param resumeFreeBytes usable space over which they are accepted again
+   * @param staleAfter time after which the files of a workflow that doesn't use them are deleted
+   */
+  public DiskQuota(Path root, long minFreeBytes, long resumeFreeBytes, Duration staleAfter)
+      throws IOException {
+    if (resumeFreeBytes < minFreeBytes) {
+      throw new IllegalArgumentException(
+          "resumeFreeBytes=" + resumeFreeBytes + " < minFreeBytes=" + minFreeBytes);
+    }
+    this.root = Files.createDirectories(root);
+    this.store = Files.getFileStore(root);
+    this.minFreeBytes = minFreeBytes;
+    this.resumeFreeBytes = resumeFreeBytes;
+    this.staleAfter = staleAfter;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(root)) {
+      for (Path file : files) {
+        delete(file.toFile());
+      }
+    }
+  }
+
+  /** Creates a directory for the files a workflow stages. */
+  public File newDirectory(String workflowId) throws IOException {
+    File directory = Files.createTempDirectory(root, "staged").toFile();
+    synchronized (this) {
+      Staged staged = stagedByWorkflow.computeIfAbsent(workflowId, k -> new Staged());
+      staged.directories.add(directory);
+      staged.lastUsedMillis = System.currentTimeMillis();
+    }
+    return directory;
+  }
+
+  /** Marks the files of the workflow as in use, so that they aren't deleted as stale. */
+  public synchronized void touch(String workflowId) {
+    Staged staged = stagedByWorkflow.get(workflowId);
+    if (staged != null) {
+      staged.lastUsedMillis = System.currentTimeMillis();
+    }
+  }
+
+  /** Deletes the files staged by the workflow. */
+  public void release(String workflowId) {
+    Staged staged;
+    synchronized (this) {
+      staged = stagedByWorkflow.remove(workflowId);
+    }
+    if (staged != null) {
+      staged.directories.forEach(DiskQuota::delete);
+    }
+  }
+
+  /** @return whether there is enough usable space to accept a new download */
+  public boolean hasRoom() throws IOException {
+    return store.getUsableSpace() >= minFreeBytes;
+  }
+
+  /** @return false while the monitor found the disk low */
+  public boolean isAcceptingDownloads() {
+    return !low;
+  }
+
+  /** Usable space on the disk that holds the staged files. */
+  public long getUsableBytes() throws IOException {
+    return store.getUsableSpace();
+  }
+
+  public synchronized long getStagedBytes(String workflowId) {
+    Staged staged = stagedByWorkflow.get(workflowId);
+    return staged == null ? 0 : size(staged);
+  }
+
+  public synchronized long getStagedBytes() {
+    long bytes = 0;
+    for (Staged staged : stagedByWorkflow.values()) {
+      bytes += size(staged);
+    }
+    return bytes;
+  }
+
+  public synchronized int getWorkflows() {
+    return stagedByWorkflow.size();
+  }
+
+  /** Starts checking the usable space and the stale files every interval. */
+  public synchronized void startMonitor(Duration interval, Listener listener) {
+    if (monitor != null) {
+      throw new IllegalStateException("already started");
+    }
+    monitor =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread thread = new Thread(r, "disk-quota-monitor");
+              thread.setDaemon(true);
+              return thread;
+            });
+    monitor.scheduleWithFixedDelay(
+        () -> check(listener), 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /** Runs on the monitor thread. */
+  private void check(Listener listener) {
+    try {
+      check(listener, store.getUsableSpace());
+    } catch (IOException | RuntimeException e) {
+      // Keeps the monitor running, the next check may succeed.
+      System.err.println("Disk quota check failed: " + e);
+    }
+  }
+
+  void check(Listener listener, long usableBytes) {
+    releaseStale();
+    if (!low && usableBytes < minFreeBytes) {
+      low = true;
+      System.out.println("Disk low: " + usableBytes + " bytes usable, " + this);
+      listener.diskLow(usableBytes);
+    } else if (low && usableBytes >= resumeFreeBytes) {
+      low = false;
+      System.out.println("Disk available: " + usableBytes + " bytes usable, " + this);
+      listener.diskAvailable(usableBytes);
+    }
+  }
+
+  private void releaseStale() {
+    long staleBefore = System.currentTimeMillis() - staleAfter.toMillis();
+    List<Staged> stale = new ArrayList<>();
+    synchronized (this) {
+      Iterator<Staged> iterator = stagedByWorkflow.values().iterator();
+      while (iterator.hasNext()) {
+        Staged staged = iterator.next();
+        if (staged.lastUsedMillis < staleBefore) {
+          iterator.remove();
+          stale.add(staged);
+        }
+      }
+    }
+    for (Staged staged : stale) {
+      staged.directories.forEach(DiskQuota::delete);
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "staged " + getStagedBytes() + " bytes by " + stagedByWorkflow.size() + " workflows";
+  }
+
+  @Override
+  public synchronized void close() {
+    if (monitor != null) {
+      monitor.shutdownNow();
+    }
+  }
+
+  private static long size(Staged staged) {
+    long bytes = 0;
+    for (File directory : staged.directories) {
+      File[] files = directory.listFiles();
+      if (files != null) {
+        for (File file : files) {
+          bytes += file.length();
+        }
+      }
+    }
+    return bytes;
+  }
+
+  private static void delete(File file) {
+    try (Stream<Path> files = Files.walk(file.toPath())) {
+      files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    } catch (IOException e) {
+      System.err.println("Failed to delete " + file + ": " + e);
+    }
+  }
+}
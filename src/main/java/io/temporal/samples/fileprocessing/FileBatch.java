@@ -0,0 +1,108 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Files processed by a {@link FileProcessingBatchWorkflow}, given either as a list or as a manifest
+ * that is read a page at a time.
+ *
+ * <p>A manifest is a text file with a source and a destination URL separated by whitespace on each
+ * line. Blank lines and lines starting with {@code #} are ignored.
+ */
+public final class FileBatch {
+  private List<FileTransfer> transfers;
+  private URL manifest;
+  private long manifestOffset;
+  private long manifestLine;
+  private int maxConcurrency;
+  private Map<String, URL> running;
+
+  /**
+   * @param transfers files to process
+   * @param maxConcurrency maximum number of files processed at the same time
+   */
+  public FileBatch(List<FileTransfer> transfers, int maxConcurrency) {
+    this(transfers, null, 0, 0, maxConcurrency, null);
+  }
+
+  /**
+   * @param manifest location of the manifest that lists the files to process
+   * @param maxConcurrency maximum number of files processed at the same time
+   */
+  public FileBatch(URL manifest, int maxConcurrency) {
+    this(null, manifest, 0, 0, maxConcurrency, null);
+  }
+
+  FileBatch(
+      List<FileTransfer> transfers,
+      URL manifest,
+      long manifestOffset,
+      long manifestLine,
+      int maxConcurrency,
+      Map<String, URL> running) {
+    this.transfers = transfers;
+    this.manifest = manifest;
+    this.manifestOffset = manifestOffset;
+    this.manifestLine = manifestLine;
+    this.maxConcurrency = maxConcurrency;
+    this.running = running;
+  }
+
+  /** Jackson needs it */
+  public FileBatch() {}
+
+  /** @return files left to process, empty if the batch is given as a manifest */
+  public List<FileTransfer> getTransfers() {
+    return transfers == null ? new ArrayList<>() : transfers;
+  }
+
+  /** @return location of the manifest, null if the batch is given as a list */
+  public URL getManifest() {
+    return manifest;
+  }
+
+  /** @return byte offset of the first manifest line left to read */
+  public long getManifestOffset() {
+    return manifestOffset;
+  }
+
+  /** @return index of the first manifest line left to read */
+  public long getManifestLine() {
+    return manifestLine;
+  }
+
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  /**
+   * @return source of the files started by a previous run that were still being processed when
+   *     it continued as new, by id of the workflow that processes them
+   */
+  public Map<String, URL> getRunning() {
+    return running == null ? new LinkedHashMap<>() : running;
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import static io.temporal.samples.fileprocessing.FileProcessingWorker.TASK_QUEUE;
+
+import io.temporal.api.common.v1.WorkflowExecution;
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.client.WorkflowStub;
+import io.temporal.serviceclient.WorkflowServiceStubs;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Starts a batch of files listed in a manifest and prints its progress until it completes. The
+ * arguments are the manifest URL and the maximum number of files processed at the same time.
+ */
+public class FileProcessingBatchStarter {
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("Usage: FileProcessingBatchStarter <manifest URL> [max concurrency]");
+      System.exit(1);
+    }
+    URL manifest = new URL(args[0]);
+    int maxConcurrency = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+    WorkflowServiceStubs service = WorkflowServiceStubs.newInstance();
+    WorkflowClient client = WorkflowClient.newInstance(service);
+    FileProcessingBatchWorkflow workflow =
+        client.newWorkflowStub(
+            FileProcessingBatchWorkflow.class,
+            WorkflowOptions.newBuilder().setTaskQueue(TASK_QUEUE).build());
+    WorkflowExecution execution =
+        WorkflowClient.start(workflow::processBatch, new FileBatch(manifest, maxConcurrency), null);
+    System.out.println("Started FileProcessingBatchWorkflow for " + manifest);
+
+    // A stub without a run id follows the batch when it continues as new.
+    FileProcessingBatchWorkflow batch =
+        client.newWorkflowStub(FileProcessingBatchWorkflow.class, execution.getWorkflowId());
+    CompletableFuture<BatchProgress> result =
+        WorkflowStub.fromTyped(batch).getResultAsync(BatchProgress.class);
+    while (true) {
+      try {
+        BatchProgress progress = result.get(5, TimeUnit.SECONDS);
+        System.out.println("Completed: " + progress);
+        progress.getFailures().forEach(failure -> System.out.println("Failed " + failure));
+        break;
+      } catch (TimeoutException e) {
+        System.out.println(batch.getProgress());
+      }
+    }
+    System.exit(0);
+  }
+}
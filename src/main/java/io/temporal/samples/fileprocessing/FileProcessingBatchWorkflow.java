@@ -0,0 +1,43 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import io.temporal.workflow.QueryMethod;
+import io.temporal.workflow.WorkflowInterface;
+import io.temporal.workflow.WorkflowMethod;
+
+/** Processes a batch of files, each by a {@link FileProcessingWorkflow} child workflow. */
+@WorkflowInterface
+public interface FileProcessingBatchWorkflow {
+
+  /**
+   * Processes the files of batch, at most {@link FileBatch#getMaxConcurrency()} at the same time.
+   * A file that fails is counted and doesn't stop the batch.
+   *
+   * @param batch files left to process
+   * @param progress carried over from the previous run, null when starting the batch
+   * @return progress once all the files are processed
+   */
+  @WorkflowMethod
+  BatchProgress processBatch(FileBatch batch, BatchProgress progress);
+
+  @QueryMethod
+  BatchProgress getProgress();
+}
@@ -0,0 +1,214 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import io.temporal.activity.ActivityOptions;
+import io.temporal.api.enums.v1.ParentClosePolicy;
+import io.temporal.workflow.Async;
+import io.temporal.workflow.ChildWorkflowOptions;
+import io.temporal.workflow.Workflow;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Starts a {@link FileProcessingWorkflow} child per file, waiting for one to complete whenever
+ * {@link FileBatch#getMaxConcurrency()} are running. Continues as new right after starting {@link
+ * #FILES_PER_RUN} files, passing the files left, the files still running and the progress.
+ *
+ * <p>The children are abandoned when their parent run closes, so the files running at the end of a
+ * run keep the window full. The next run follows them through {@link BatchActivities#awaitFile},
+ * as it can't wait for the children of another run. They also keep running if the batch is
+ * terminated or cancelled.
+ */
+public class FileProcessingBatchWorkflowImpl implements FileProcessingBatchWorkflow {
+
+  /** Keeps the history short, each child adds a few events to it. */
+  static final int FILES_PER_RUN = 500;
+
+  /** Failures beyond this number are only counted. */
+  static final int MAX_REPORTED_FAILURES = 20;
+
+  private final FileProcessingBatchWorkflow continueAsNew =
+      Workflow.newContinueAsNewStub(FileProcessingBatchWorkflow.class);
+
+  private final ManifestActivities manifests =
+      Workflow.newActivityStub(
+          ManifestActivities.class,
+          ActivityOptions.newBuilder().setScheduleToCloseTimeout(Duration.ofMinutes(1)).build());
+
+  private final BatchActivities batchActivities =
+      Workflow.newActivityStub(
+          BatchActivities.class,
+          ActivityOptions.newBuilder()
+              .setStartToCloseTimeout(Duration.ofDays(1))
+              .setHeartbeatTimeout(BatchActivitiesImpl.HEARTBEAT_INTERVAL.multipliedBy(3))
+              .build());
+
+  private final int filesPerRun;
+
+  private long startedAtMillis;
+  private long total;
+  private long started;
+  private long succeeded;
+  private long failed;
+  // Source of the files being processed, by id of their workflow.
+  private final Map<String, URL> running = new LinkedHashMap<>();
+  private final List<String> failures = new ArrayList<>();
+
+  public FileProcessingBatchWorkflowImpl() {
+    this(FILES_PER_RUN);
+  }
+
+  FileProcessingBatchWorkflowImpl(int filesPerRun) {
+    this.filesPerRun = filesPerRun;
+  }
+
+  @Override
+  public BatchProgress processBatch(FileBatch batch, BatchProgress progress) {
+    if (progress == null) {
+      startedAtMillis = Workflow.currentTimeMillis();
+      total = batch.getManifest() == null ? batch.getTransfers().size() : -1;
+    } else {
+      startedAtMillis = progress.getStartedAtMillis();
+      total = progress.getTotal();
+      started = progress.getStarted();
+      succeeded = progress.getSucceeded();
+      failed = progress.getFailed();
+      failures.addAll(progress.getFailures());
+    }
+    for (Map.Entry<String, URL> file : batch.getRunning().entrySet()) {
+      follow(file.getKey(), file.getValue());
+    }
+    List<FileTransfer> transfers = batch.getTransfers();
+    int listed = 0;
+    long manifestOffset = batch.getManifestOffset();
+    long manifestLine = batch.getManifestLine();
+    boolean last = false;
+    for (int startedInRun = 0; startedInRun < filesPerRun && !last; ) {
+      List<FileTransfer> page;
+      int maxTransfers = filesPerRun - startedInRun;
+      if (batch.getManifest() == null) {
+        page = transfers.subList(listed, Math.min(transfers.size(), listed + maxTransfers));
+        listed += page.size();
+        last = listed == transfers.size();
+      } else {
+        ManifestPage read =
+            manifests.readManifest(batch.getManifest(), manifestOffset, manifestLine, maxTransfers);
+        page = read.getTransfers();
+        manifestOffset = read.getNextOffset();
+        manifestLine = read.getNextLine();
+        last = read.isLast();
+      }
+      for (FileTransfer transfer : page) {
+        Workflow.await(() -> running.size() < batch.getMaxConcurrency());
+        start(transfer);
+        startedInRun++;
+      }
+    }
+    if (last && total < 0) {
+      total = started;
+    }
+    if (last) {
+      Workflow.await(running::isEmpty);
+      return getProgress();
+    }
+    return continueAsNew.processBatch(
+        new FileBatch(
+            batch.getManifest() == null
+                ? new ArrayList<>(transfers.subList(listed, transfers.size()))
+                : null,
+            batch.getManifest(),
+            manifestOffset,
+            manifestLine,
+            batch.getMaxConcurrency(),
+            new LinkedHashMap<>(running)),
+        getProgress());
+  }
+
+  private void start(FileTransfer transfer) {
+    // The ids follow the order of the files in the batch, whichever run starts them.
+    String workflowId = Workflow.getInfo().getWorkflowId() + "/" + started;
+    FileProcessingWorkflow child =
+        Workflow.newChildWorkflowStub(
+            FileProcessingWorkflow.class,
+            ChildWorkflowOptions.newBuilder()
+                .setWorkflowId(workflowId)
+                .setParentClosePolicy(ParentClosePolicy.PARENT_CLOSE_POLICY_ABANDON)
+                .build());
+    started++;
+    running.put(workflowId, transfer.getSource());
+    Async.procedure(child::processFile, transfer.getSource(), transfer.getDestination())
+        .handle(
+            (result, failure) -> {
+              completed(workflowId, failure == null ? null : rootMessage(failure));
+              return null;
+            });
+  }
+
+  /** Follows a file started by a previous run. */
+  private void follow(String workflowId, URL source) {
+    running.put(workflowId, source);
+    Async.function(batchActivities::awaitFile, workflowId)
+        .handle(
+            (fileFailure, failure) -> {
+              completed(workflowId, failure == null ? fileFailure : rootMessage(failure));
+              return null;
+            });
+  }
+
+  /** @param failure why the file failed, null if it was processed */
+  private void completed(String workflowId, String failure) {
+    URL source = running.remove(workflowId);
+    if (failure == null) {
+      succeeded++;
+    } else {
+      failed++;
+      if (failures.size() < MAX_REPORTED_FAILURES) {
+        failures.add(source + ": " + failure);
+      }
+    }
+  }
+
+  /** The child workflow and activity failures wrap what actually went wrong. */
+  private static String rootMessage(Throwable failure) {
+    Throwable cause = failure;
+    while (cause.getCause() != null) {
+      cause = cause.getCause();
+    }
+    return cause.getMessage();
+  }
+
+  @Override
+  public BatchProgress getProgress() {
+    return new BatchProgress(
+        startedAtMillis,
+        Workflow.currentTimeMillis() - startedAtMillis,
+        total,
+        started,
+        succeeded,
+        failed,
+        running.size(),
+        new ArrayList<>(failures));
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import static io.temporal.samples.fileprocessing.FileProcessingWorker.TASK_QUEUE;
+
+import io.temporal.api.enums.v1.WorkflowIdReusePolicy;
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowExecutionAlreadyStarted;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.serviceclient.WorkflowServiceStubs;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * Starts a file processing workflow for each file written to a directory, as an alternative to
+ * {@link FileProcessingStarter}. The arguments are the directory and the URL the processed files
+ * are uploaded under, by default the local {@link UploadServer}.
+ *
+ * <p>The workflow id is made of the file name, size and modification time, so a file is processed
+ * once even if the ingester sees it again, after a restart for instance, and again once it is
+ * rewritten.
+ */
+public class FileProcessingIngester {
+
+  /** How long a file must stay unchanged before it is processed. */
+  static final Duration QUIET_PERIOD = Duration.ofSeconds(2);
+
+  static final double STARTS_PER_SECOND = 20;
+
+  static final int MAX_QUEUED_STARTS = 100;
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("Usage: FileProcessingIngester <directory> [destination URL]");
+      System.exit(1);
+    }
+    Path directory = Paths.get(args[0]).toAbsolutePath();
+    String destination =
+        args.length > 1 ? args[1] : "http://localhost:" + UploadServer.DEFAULT_PORT + "/";
+    WorkflowServiceStubs service = WorkflowServiceStubs.newInstance();
+    WorkflowClient client = WorkflowClient.newInstance(service);
+
+    DirectoryIngester.Starter starter =
+        (file, version) -> {
+          FileProcessingWorkflow workflow =
+              client.newWorkflowStub(
+                  FileProcessingWorkflow.class,
+                  WorkflowOptions.newBuilder()
+                      .setTaskQueue(TASK_QUEUE)
+                      .setWorkflowId("FileProcessingIngest/" + directory + "/" + version)
+                      .setWorkflowIdReusePolicy(
+                          WorkflowIdReusePolicy.WORKFLOW_ID_REUSE_POLICY_REJECT_DUPLICATE)
+                      .build());
+          URL source = file.toUri().toURL();
+          // Escapes the characters of the file name that can't appear in a URL path.
+          String name = new URI(null, null, file.getFileName() + ".gz", null).getRawPath();
+          try {
+            WorkflowClient.start(
+                workflow::processFile, source, new URL(new URL(destination), name));
+            System.out.println("Started processing of " + source);
+          } catch (WorkflowExecutionAlreadyStarted e) {
+            System.out.println("Already processed " + source);
+          }
+        };
+    try (DirectoryIngester ingester =
+        new DirectoryIngester(
+            directory, QUIET_PERIOD, STARTS_PER_SECOND, MAX_QUEUED_STARTS, starter)) {
+      System.out.println("Watching " + directory);
+      ingester.run();
+    }
+  }
+}
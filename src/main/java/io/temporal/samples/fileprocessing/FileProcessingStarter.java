@@ -41,8 +41,13 @@ public class FileProcessingStarter {
 
     System.out.println("Executing FileProcessingWorkflow");
 
-    URL source = new URL("http://www.google.com/");
-    URL destination = new URL("http://dummy");
+    URL source = new URL(args.length > 0 ? args[0] : "http://www.google.com/");
+    // Uploads to a local UploadServer by default.
+    URL destination =
+        new URL(
+            args.length > 1
+                ? args[1]
+                : "http://localhost:" + UploadServer.DEFAULT_PORT + "/processed.gz");
 
     // This is going to block until the workflow completes.
     // This is rarely used in production. Use the commented code below for async start version.
@@ -23,7 +23,10 @@ import io.temporal.client.WorkflowClient;
 import io.temporal.serviceclient.WorkflowServiceStubs;
 import io.temporal.worker.Worker;
 import io.temporal.worker.WorkerFactory;
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.time.Duration;
 
 /**
  * This is the process that hosts all workflows and activities in this sample. Run multiple
@@ -36,7 +39,25 @@ public class FileProcessingWorker {
 
   static final String TASK_QUEUE = "FileProcessing";
 
-  public static void main(String[] args) {
+  /** Downloads of files that no host has cached, polled only by workers with enough disk space. */
+  static final String DOWNLOAD_TASK_QUEUE = "FileProcessingDownloads";
+
+  /** Disk space the downloaded files cached by a worker may take. */
+  static final long CACHE_BUDGET_BYTES = 10L << 30;
+
+  /** Usable disk space under which a worker stops taking new downloads. */
+  static final long MIN_FREE_BYTES = 5L << 30;
+
+  /** Usable disk space over which it takes them again. */
+  static final long RESUME_FREE_BYTES = 10L << 30;
+
+  /** Staged files of a workflow that left this host are deleted after this. */
+  static final Duration STALE_AFTER = Duration.ofHours(6);
+
+  /** Parts sent at the same time by all the uploads of a worker. */
+  static final int UPLOAD_PARALLEL_PARTS = 8;
+
+  public static void main(String[] args) throws IOException {
 
     String hostSpecifiTaskQueue = ManagementFactory.getRuntimeMXBean().getName();
 
@@ -49,9 +70,59 @@ public class FileProcessingWorker {
     WorkerFactory factory = WorkerFactory.newInstance(client);
     // Worker that listens on a task queue and hosts both workflow and activity implementations.
     final Worker workerForCommonTaskQueue = factory.newWorker(TASK_QUEUE);
-    workerForCommonTaskQueue.registerWorkflowImplementationTypes(FileProcessingWorkflowImpl.class);
-    StoreActivitiesImpl storeActivityImpl = new StoreActivitiesImpl(hostSpecifiTaskQueue);
-    workerForCommonTaskQueue.registerActivitiesImplementations(storeActivityImpl);
+    workerForCommonTaskQueue.registerWorkflowImplementationTypes(
+        FileProcessingWorkflowImpl.class,
+        CacheDirectoryWorkflowImpl.class,
+        FileProcessingBatchWorkflowImpl.class);
+    workerForCommonTaskQueue.registerActivitiesImplementations(
+        new CacheDirectoryActivitiesImpl(client),
+        new ManifestActivitiesImpl(),
+        new BatchActivitiesImpl(client));
+
+    // Each worker has its own cache and staging directories, as the cache and the quota delete
+    // what they find there on startup.
+    String workerDirectory = hostSpecifiTaskQueue.replaceAll("[^A-Za-z0-9.-]", "_");
+    String tmpdir = System.getProperty("java.io.tmpdir");
+    ContentCache cache =
+        new ContentCache(
+            Paths.get(tmpdir, "fileprocessing-cache", workerDirectory),
+            CACHE_BUDGET_BYTES,
+            new CacheDirectoryPublisher(client, hostSpecifiTaskQueue));
+    DiskQuota quota =
+        new DiskQuota(
+            Paths.get(tmpdir, "fileprocessing-staging", workerDirectory),
+            MIN_FREE_BYTES,
+            RESUME_FREE_BYTES,
+            STALE_AFTER);
+    // Unlike the cache and the staged files, the index outlives the worker, so it is shared by the
+    // workers of the machine rather than named after this one.
+    DigestIndex digests = new DigestIndex(Paths.get(tmpdir, "fileprocessing-digests", "index"));
+    StoreActivitiesImpl storeActivityImpl =
+        new StoreActivitiesImpl(
+            hostSpecifiTaskQueue,
+            new ParallelCompressor(),
+            cache,
+            quota,
+            digests,
+            new MultipartUploader(UPLOAD_PARALLEL_PARTS, MultipartUploader.DEFAULT_PART_BYTES));
+
+    // Worker that takes the downloads nobody routed to a specific host. It stops polling while
+    // the disk is low, the other workers take them meanwhile.
+    final Worker workerForDownloads = factory.newWorker(DOWNLOAD_TASK_QUEUE);
+    workerForDownloads.registerActivitiesImplementations(storeActivityImpl);
+    quota.startMonitor(
+        Duration.ofSeconds(5),
+        new DiskQuota.Listener() {
+          @Override
+          public void diskLow(long usableBytes) {
+            workerForDownloads.suspendPolling();
+          }
+
+          @Override
+          public void diskAvailable(long usableBytes) {
+            workerForDownloads.resumePolling();
+          }
+        });
 
     // Get worker to poll the host-specific task queue.
     final Worker workerForHostSpecificTaskQueue = factory.newWorker(hostSpecifiTaskQueue);
@@ -59,6 +130,8 @@ public class FileProcessingWorker {
 
     // Start all workers created by this factory.
     factory.start();
+    // Lets the workflows choose this host for their downloads.
+    new HostLoadReporter(client, hostSpecifiTaskQueue, quota).start();
     System.out.println("Worker started for task queue: " + TASK_QUEUE);
     System.out.println("Worker Started for activity task Queue: " + hostSpecifiTaskQueue);
   }
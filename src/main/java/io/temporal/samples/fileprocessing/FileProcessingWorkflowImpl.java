@@ -20,10 +20,17 @@
 package io.temporal.samples.fileprocessing;
 
 import io.temporal.activity.ActivityOptions;
+import io.temporal.api.enums.v1.TimeoutType;
 import io.temporal.common.RetryOptions;
+import io.temporal.failure.ActivityFailure;
+import io.temporal.failure.TimeoutFailure;
+import io.temporal.workflow.Async;
+import io.temporal.workflow.Promise;
 import io.temporal.workflow.Workflow;
 import java.net.URL;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -33,20 +40,70 @@ import java.util.Optional;
  * through use of a host specific task queue. The first activity returns the name of the host
  * specific task queue and all other activities are dispatched using the stub that is configured
  * with it. This assumes that FileProcessingWorker has a worker running on the same task queue.
+ *
+ * <p>The download goes to the host that {@link CacheDirectoryActivities#selectDownloadHost}
+ * chooses from the files cached and the load reported by the hosts, so the same file isn't pulled
+ * onto several hosts and slow hosts don't pile up files. Without a recent load report it goes to a
+ * download task queue shared by the workers, which they stop polling while their disk is low.
+ *
+ * <p>A file larger than the range size is split into byte ranges that are processed by concurrent
+ * activities on the host specific task queue, then merged into one file before the upload.
  */
 public class FileProcessingWorkflowImpl implements FileProcessingWorkflow {
 
-  // Uses the default task queue shared by the pool of workers.
+  static final long DEFAULT_RANGE_BYTES = 256L << 20;
+
+  /** How long compressing a file of up to the range size may take, retries included. */
+  static final Duration PROCESS_TIMEOUT = Duration.ofMinutes(10);
+
+  /**
+   * How long the whole sequence is retried. Long enough for an attempt whose download and upload
+   * take up to their one hour timeouts to be followed by another one.
+   */
+  static final Duration PROCESS_FILE_RETRY_EXPIRATION = Duration.ofHours(3);
+
+  /** How long a download waits for the selected host before going elsewhere. */
+  static final Duration SELECTED_HOST_SCHEDULE_TO_START_TIMEOUT = Duration.ofSeconds(10);
+
+  /** How many times the selected host attempts a download before it goes elsewhere. */
+  static final int SELECTED_HOST_MAXIMUM_ATTEMPTS = 2;
+
+  /** Failure type of a download refused by a host low on disk space. */
+  static final String DISK_LOW_FAILURE = "DiskLow";
+
+  private final ActivityOptions downloadOptions;
+
+  // Uses the download task queue shared by the pool of workers.
   private final StoreActivities defaultTaskQueueStore;
 
+  private final CacheDirectoryActivities cacheDirectory;
+
+  private final long rangeBytes;
+
   public FileProcessingWorkflowImpl() {
+    this(DEFAULT_RANGE_BYTES);
+  }
+
+  /** @param rangeBytes size of the ranges a large file is processed in */
+  public FileProcessingWorkflowImpl(long rangeBytes) {
+    this.rangeBytes = rangeBytes;
     // Create activity clients.
-    ActivityOptions ao =
+    // Large files take long to download. The heartbeats of the download detect a stuck or dead
+    // worker well before the activity times out, and let its retries resume the download.
+    this.downloadOptions =
         ActivityOptions.newBuilder()
-            .setScheduleToCloseTimeout(Duration.ofSeconds(10))
-            .setTaskQueue(FileProcessingWorker.TASK_QUEUE)
+            .setScheduleToCloseTimeout(Duration.ofHours(1))
+            .setHeartbeatTimeout(Duration.ofSeconds(10))
+            .setTaskQueue(FileProcessingWorker.DOWNLOAD_TASK_QUEUE)
             .build();
-    this.defaultTaskQueueStore = Workflow.newActivityStub(StoreActivities.class, ao);
+    this.defaultTaskQueueStore = Workflow.newActivityStub(StoreActivities.class, downloadOptions);
+    this.cacheDirectory =
+        Workflow.newActivityStub(
+            CacheDirectoryActivities.class,
+            ActivityOptions.newBuilder()
+                .setScheduleToCloseTimeout(Duration.ofSeconds(10))
+                .setTaskQueue(FileProcessingWorker.TASK_QUEUE)
+                .build());
   }
 
   @Override
@@ -56,12 +113,12 @@ public class FileProcessingWorkflowImpl implements FileProcessingWorkflow {
     // Retries the whole sequence on any failure, potentially on a different host.
     Workflow.retry(
         retryOptions,
-        Optional.of(Duration.ofSeconds(10)),
+        Optional.of(PROCESS_FILE_RETRY_EXPIRATION),
         () -> processFileImpl(source, destination));
   }
 
   private void processFileImpl(URL source, URL destination) {
-    StoreActivities.TaskQueueFileNamePair downloaded = defaultTaskQueueStore.download(source);
+    StoreActivities.TaskQueueFileNamePair downloaded = download(source);
 
     // Now initialize stubs that are specific to the returned task queue.
     ActivityOptions hostActivityOptions =
@@ -72,10 +129,90 @@ public class FileProcessingWorkflowImpl implements FileProcessingWorkflow {
     StoreActivities hostSpecificStore =
         Workflow.newActivityStub(StoreActivities.class, hostActivityOptions);
 
-    // Call processFile activity to zip the file.
-    // Call the activity to process the file using worker-specific task queue.
-    String processed = hostSpecificStore.process(downloaded.getFileName());
-    // Call upload activity to upload the zipped file.
-    hostSpecificStore.upload(processed, destination);
+    // A host that indexes its uploads reports the digest of the file. The same content already
+    // uploaded to the same destination doesn't need to be processed and uploaded again.
+    String digest = downloaded.getDigest();
+    if (digest != null && hostSpecificStore.skipIfUploaded(digest, destination)) {
+      return;
+    }
+
+    // Compressing a file or a range of up to the range size takes much longer than the other
+    // host specific activities.
+    ActivityOptions processActivityOptions =
+        ActivityOptions.newBuilder(hostActivityOptions)
+            .setScheduleToCloseTimeout(PROCESS_TIMEOUT)
+            .build();
+    StoreActivities processStore =
+        Workflow.newActivityStub(StoreActivities.class, processActivityOptions);
+    String processed;
+    long fileSize = downloaded.getFileSize();
+    if (fileSize <= rangeBytes) {
+      // Call processFile activity to zip the file.
+      // Call the activity to process the file using worker-specific task queue.
+      processed = processStore.process(downloaded.getFileName());
+    } else {
+      processed = processRanges(processStore, downloaded.getFileName(), fileSize);
+    }
+    // Call upload activity to upload the zipped file. It heartbeats the bytes sent so far, so a
+    // stuck upload is retried long before its timeout.
+    ActivityOptions uploadActivityOptions =
+        ActivityOptions.newBuilder(hostActivityOptions)
+            .setScheduleToCloseTimeout(Duration.ofHours(1))
+            .setHeartbeatTimeout(Duration.ofSeconds(10))
+            .build();
+    StoreActivities uploadStore =
+        Workflow.newActivityStub(StoreActivities.class, uploadActivityOptions);
+    uploadStore.upload(processed, destination);
+    if (digest != null) {
+      hostSpecificStore.recordUploaded(digest, destination);
+    }
+  }
+
+  private StoreActivities.TaskQueueFileNamePair download(URL source) {
+    String host = cacheDirectory.selectDownloadHost(source);
+    if (host != null) {
+      // A host low on disk space fails the download right away, and a host that keeps failing it
+      // gives up after a few attempts instead of retrying it until the schedule to close timeout,
+      // so that another host downloads the file.
+      ActivityOptions selectedHostOptions =
+          ActivityOptions.newBuilder(downloadOptions)
+              .setTaskQueue(host)
+              .setScheduleToStartTimeout(SELECTED_HOST_SCHEDULE_TO_START_TIMEOUT)
+              .setRetryOptions(
+                  RetryOptions.newBuilder()
+                      .setMaximumAttempts(SELECTED_HOST_MAXIMUM_ATTEMPTS)
+                      .setDoNotRetry(DISK_LOW_FAILURE)
+                      .build())
+              .build();
+      StoreActivities selectedHostStore =
+          Workflow.newActivityStub(StoreActivities.class, selectedHostOptions);
+      try {
+        return selectedHostStore.download(source);
+      } catch (ActivityFailure e) {
+        // The host may also have run out of disk space since its last load report, another host
+        // downloads the file then.
+        if (e.getCause() instanceof TimeoutFailure
+            && ((TimeoutFailure) e.getCause()).getTimeoutType()
+                == TimeoutType.TIMEOUT_TYPE_SCHEDULE_TO_START) {
+          // Nobody polls the task queue of the host anymore.
+          cacheDirectory.removeHost(host);
+        }
+      }
+    }
+    return defaultTaskQueueStore.download(source);
+  }
+
+  private String processRanges(StoreActivities rangeStore, String fileName, long fileSize) {
+    List<Promise<String>> ranges = new ArrayList<>();
+    for (long offset = 0; offset < fileSize; offset += rangeBytes) {
+      ranges.add(
+          Async.function(
+              rangeStore::processRange, fileName, offset, Math.min(rangeBytes, fileSize - offset)));
+    }
+    List<String> rangeFileNames = new ArrayList<>();
+    for (Promise<String> range : ranges) {
+      rangeFileNames.add(range.get());
+    }
+    return rangeStore.merge(rangeFileNames);
   }
 }
@@ -0,0 +1,49 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import java.net.URL;
+
+/** A file for {@link FileProcessingBatchWorkflow} to process: where from and where to upload. */
+public final class FileTransfer {
+  private URL source;
+  private URL destination;
+
+  public FileTransfer(URL source, URL destination) {
+    this.source = source;
+    this.destination = destination;
+  }
+
+  /** Jackson needs it */
+  public FileTransfer() {}
+
+  public URL getSource() {
+    return source;
+  }
+
+  public URL getDestination() {
+    return destination;
+  }
+
+  @Override
+  public String toString() {
+    return source + " -> " + destination;
+  }
+}
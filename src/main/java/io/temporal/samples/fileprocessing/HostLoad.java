@@ -0,0 +1,113 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import java.util.Comparator;
+
+/** Load of a worker host, reported periodically to the {@link CacheDirectoryWorkflow}. */
+public final class HostLoad {
+
+  /**
+   * Orders the hosts from the least to the most loaded: by files in flight first, as they are what
+   * queues up on a slow host, then by CPU load, then by usable disk space.
+   */
+  public static final Comparator<HostLoad> LEAST_LOADED_FIRST =
+      Comparator.comparingInt(HostLoad::getInFlightFiles)
+          .thenComparingDouble(HostLoad::getCpuLoad)
+          .thenComparing(Comparator.comparingLong(HostLoad::getUsableDiskBytes).reversed());
+
+  private String hostTaskQueue;
+  private int inFlightFiles;
+  private long usableDiskBytes;
+  private double cpuLoad;
+  private boolean acceptingDownloads;
+  private long reportedAtMillis;
+
+  /**
+   * @param hostTaskQueue task queue of the host
+   * @param inFlightFiles number of workflows with files staged on the host
+   * @param usableDiskBytes usable space on the disk that holds the staged files
+   * @param cpuLoad system load average per core, 0 if not available
+   * @param acceptingDownloads false while the host doesn't take downloads for lack of disk space
+   */
+  public HostLoad(
+      String hostTaskQueue,
+      int inFlightFiles,
+      long usableDiskBytes,
+      double cpuLoad,
+      boolean acceptingDownloads) {
+    this.hostTaskQueue = hostTaskQueue;
+    this.inFlightFiles = inFlightFiles;
+    this.usableDiskBytes = usableDiskBytes;
+    this.cpuLoad = cpuLoad;
+    this.acceptingDownloads = acceptingDownloads;
+  }
+
+  /** Jackson needs it */
+  public HostLoad() {}
+
+  public String getHostTaskQueue() {
+    return hostTaskQueue;
+  }
+
+  public int getInFlightFiles() {
+    return inFlightFiles;
+  }
+
+  public long getUsableDiskBytes() {
+    return usableDiskBytes;
+  }
+
+  public double getCpuLoad() {
+    return cpuLoad;
+  }
+
+  public boolean isAcceptingDownloads() {
+    return acceptingDownloads;
+  }
+
+  /** Workflow time at which the directory received the report. */
+  public long getReportedAtMillis() {
+    return reportedAtMillis;
+  }
+
+  public void setReportedAtMillis(long reportedAtMillis) {
+    this.reportedAtMillis = reportedAtMillis;
+  }
+
+  @Override
+  public String toString() {
+    return "HostLoad{"
+        + "hostTaskQueue='"
+        + hostTaskQueue
+        + '\''
+        + ", inFlightFiles="
+        + inFlightFiles
+        + ", usableDiskBytes="
+        + usableDiskBytes
+        + ", cpuLoad="
+        + cpuLoad
+        + ", acceptingDownloads="
+        + acceptingDownloads
+        + ", reportedAtMillis="
+        + reportedAtMillis
+        + '}';
+  }
+}
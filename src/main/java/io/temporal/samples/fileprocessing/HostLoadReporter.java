@@ -0,0 +1,87 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import io.temporal.client.WorkflowClient;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports the load of this host to the {@link CacheDirectoryWorkflow} every {@link #INTERVAL}, so
+ * that the workflows can send their files to the least loaded hosts. A report that fails is logged
+ * and the next one is sent on time.
+ */
+public class HostLoadReporter implements Closeable {
+
+  static final Duration INTERVAL = Duration.ofSeconds(10);
+
+  private final WorkflowClient client;
+  private final String hostTaskQueue;
+  private final DiskQuota quota;
+  private final ScheduledExecutorService executor =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread thread = new Thread(r, "host-load-reporter");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  public HostLoadReporter(WorkflowClient client, String hostTaskQueue, DiskQuota quota) {
+    this.client = client;
+    this.hostTaskQueue = hostTaskQueue;
+    this.quota = quota;
+  }
+
+  public void start() {
+    executor.scheduleWithFixedDelay(this::report, 0, INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  HostLoad currentLoad() throws IOException {
+    OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    double loadAverage = os.getSystemLoadAverage();
+    double cpuLoad = loadAverage < 0 ? 0 : loadAverage / os.getAvailableProcessors();
+    return new HostLoad(
+        hostTaskQueue,
+        quota.getWorkflows(),
+        quota.getUsableBytes(),
+        cpuLoad,
+        quota.isAcceptingDownloads());
+  }
+
+  private void report() {
+    try {
+      HostLoad load = currentLoad();
+      CacheDirectoryPublisher.signal(client, d -> d.reportLoad(load));
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Failed to report the host load: " + e);
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+}
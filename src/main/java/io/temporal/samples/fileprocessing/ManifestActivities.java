@@ -0,0 +1,40 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import io.temporal.activity.ActivityInterface;
+import java.net.URL;
+
+/** Reads the manifests of {@link FileProcessingBatchWorkflow} batches. */
+@ActivityInterface
+public interface ManifestActivities {
+
+  /**
+   * Reads the files listed in a manifest from a given position. The manifest is read from that
+   * byte offset, so reading a page doesn't get slower as the batch progresses.
+   *
+   * @param manifest location of the manifest
+   * @param offset byte offset of the first line to read, {@link ManifestPage#getNextOffset()} of
+   *     the previous page
+   * @param firstLine index of the first line to read, only used to report invalid lines
+   * @param maxTransfers maximum number of files to return
+   */
+  ManifestPage readManifest(URL manifest, long offset, long firstLine, int maxTransfers);
+}
@@ -0,0 +1,120 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import io.temporal.activity.Activity;
+import io.temporal.failure.ApplicationFailure;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ManifestActivitiesImpl implements ManifestActivities {
+
+  @Override
+  public ManifestPage readManifest(URL manifest, long offset, long firstLine, int maxTransfers) {
+    List<FileTransfer> transfers = new ArrayList<>();
+    try (InputStream in = new BufferedInputStream(open(manifest, offset))) {
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      long line = firstLine;
+      while (transfers.size() < maxTransfers) {
+        String text = readLine(in, buffer);
+        if (text == null) {
+          return new ManifestPage(transfers, offset, line, true);
+        }
+        offset += buffer.size();
+        line++;
+        text = text.trim();
+        if (text.isEmpty() || text.startsWith("#")) {
+          continue;
+        }
+        String[] urls = text.split("\\s+");
+        if (urls.length != 2) {
+          throw ApplicationFailure.newNonRetryableFailure(
+              "Line " + line + " of " + manifest + " isn't a source and a destination URL",
+              "InvalidManifest");
+        }
+        try {
+          transfers.add(new FileTransfer(new URL(urls[0]), new URL(urls[1])));
+        } catch (MalformedURLException e) {
+          throw ApplicationFailure.newNonRetryableFailure(
+              "Line " + line + " of " + manifest + ": " + e.getMessage(), "InvalidManifest");
+        }
+      }
+      return new ManifestPage(transfers, offset, line, false);
+    } catch (IOException e) {
+      throw Activity.wrap(e);
+    }
+  }
+
+  /**
+   * Opens the manifest at a byte offset. HTTP servers are asked for a range. Other streams, and
+   * servers that ignore the range, are skipped over, which seeks for local files.
+   */
+  private static InputStream open(URL manifest, long offset) throws IOException {
+    URLConnection connection = manifest.openConnection();
+    if (offset > 0 && connection instanceof HttpURLConnection) {
+      connection.setRequestProperty("Range", "bytes=" + offset + "-");
+    }
+    InputStream in = connection.getInputStream();
+    if (connection instanceof HttpURLConnection
+        && ((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_PARTIAL) {
+      return in;
+    }
+    for (long skipped = 0; skipped < offset; ) {
+      long n = in.skip(offset - skipped);
+      if (n <= 0) {
+        if (in.read() < 0) {
+          break; // the manifest is shorter than the offset
+        }
+        n = 1;
+      }
+      skipped += n;
+    }
+    return in;
+  }
+
+  /**
+   * Reads the bytes of the next line, including its terminator, into buffer.
+   *
+   * @return the line without its terminator, null at the end of the manifest
+   */
+  private static String readLine(InputStream in, ByteArrayOutputStream buffer) throws IOException {
+    buffer.reset();
+    int b;
+    while ((b = in.read()) >= 0) {
+      buffer.write(b);
+      if (b == '\n') {
+        break;
+      }
+    }
+    if (buffer.size() == 0) {
+      return null;
+    }
+    return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import java.util.List;
+
+/** Files read from a manifest by {@link ManifestActivities#readManifest}. */
+public final class ManifestPage {
+  private List<FileTransfer> transfers;
+  private long nextOffset;
+  private long nextLine;
+  private boolean last;
+
+  /**
+   * @param transfers files listed by the lines read
+   * @param nextOffset byte offset of the first line that wasn't read
+   * @param nextLine index of the first line that wasn't read
+   * @param last true if the end of the manifest was reached
+   */
+  public ManifestPage(List<FileTransfer> transfers, long nextOffset, long nextLine, boolean last) {
+    this.transfers = transfers;
+    this.nextOffset = nextOffset;
+    this.nextLine = nextLine;
+    this.last = last;
+  }
+
+  /** Jackson needs it */
+  public ManifestPage() {}
+
+  public List<FileTransfer> getTransfers() {
+    return transfers;
+  }
+
+  public long getNextOffset() {
+    return nextOffset;
+  }
+
+  public long getNextLine() {
+    return nextLine;
+  }
+
+  public boolean isLast() {
+    return last;
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Uploads files in parts sent in parallel over HTTP, to a server such as {@link UploadServer}.
+ *
+ * <p>Part n of a file is sent with {@code PUT <url>?part=n} and a {@code Content-Range} header.
+ * Once all the parts are sent, {@code POST <url>?complete=<number of parts>} asks the server to
+ * assemble them. A part that could not be sent, or that the server failed with a 5xx, 408 or 429
+ * status, is sent again on its own a few times before the upload fails.
+ *
+ * <p>The parts are read through a {@link FileChannel} into buffers taken from a pool that holds one
+ * buffer per thread. The uploads running at the same time share the threads and the buffers, so
+ * the memory they use is bounded whatever the number and the size of the files.
+ */
+public final class MultipartUploader {
+
+  public static final int DEFAULT_PART_BYTES = 8 << 20;
+
+  static final int MAX_PART_ATTEMPTS = 5;
+
+  private static final long INITIAL_RETRY_DELAY_MILLIS = 100;
+
+  /** Progress is reported at most this often. */
+  private static final long PROGRESS_INTERVAL_MILLIS = 1000;
+
+  private final int partBytes;
+  private final ExecutorService executor;
+  private final BlockingQueue<byte[]> buffers;
+
+  public MultipartUploader() {
+    this(4, DEFAULT_PART_BYTES);
+  }
+
+  /**
+   * @param parallelParts number of parts sent at the same time by all the uploads
+   * @param partBytes size of the parts, the last part of a file may be shorter
+   */
+  public MultipartUploader(int parallelParts, int partBytes) {
+    this.partBytes = partBytes;
+    this.executor =
+        Executors.newFixedThreadPool(
+            parallelParts,
+            r -> {
+              Thread thread = new Thread(r, "multipart-upload");
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.buffers = new ArrayBlockingQueue<>(parallelParts);
+    for (int i = 0; i < parallelParts; i++) {
+      buffers.add(new byte[partBytes]);
+    }
+  }
+
+  /**
+   * Uploads file to url. Blocks until the server assembled the file.
+   *
+   * @param progress receives the number of bytes sent so far, on the calling thread
+   */
+  public void upload(Path file, URL url, LongConsumer progress) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      int parts = (int) Math.max(1, (size + partBytes - 1) / partBytes);
+      AtomicLong sent = new AtomicLong();
+      CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+      List<Future<Void>> futures = new ArrayList<>(parts);
+      try {
+        for (int part = 0; part < parts; part++) {
+          long offset = (long) part * partBytes;
+          int length = (int) Math.min(partBytes, size - offset);
+          URL partUrl = withQuery(url, "part=" + part);
+          futures.add(
+              completion.submit(
+                  () -> {
+                    sendPart(channel, partUrl, offset, length, size);
+                    sent.addAndGet(length);
+                    return null;
+                  }));
+        }
+        long lastProgress = System.currentTimeMillis();
+        for (int done = 0; done < parts; ) {
+          Future<Void> future = completion.poll(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+          if (future != null) {
+            future.get();
+            done++;
+          }
+          if (System.currentTimeMillis() - lastProgress >= PROGRESS_INTERVAL_MILLIS) {
+            progress.accept(sent.get());
+            lastProgress = System.currentTimeMillis();
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      } catch (ExecutionException e) {
+        throw e.getCause() instanceof IOException
+            ? (IOException) e.getCause()
+            : new IOException(e.getCause());
+      } finally {
+        // Stops sending the other parts when one failed or the progress callback threw.
+        for (Future<Void> future : futures) {
+          future.cancel(true);
+        }
+      }
+      progress.accept(sent.get());
+      URL completeUrl = withQuery(url, "complete=" + parts);
+      int code = send("POST", completeUrl, null, 0, null);
+      if (code / 100 != 2) {
+        throw new IOException("POST " + completeUrl + " returned " + code);
+      }
+    }
+  }
+
+  private void sendPart(FileChannel channel, URL partUrl, long offset, int length, long size)
+      throws IOException, InterruptedException {
+    byte[] buffer = buffers.take();
+    try {
+      ByteBuffer target = ByteBuffer.wrap(buffer, 0, length);
+      while (target.hasRemaining()) {
+        if (channel.read(target, offset + target.position()) < 0) {
+          throw new IOException("file shrank while uploading");
+        }
+      }
+      String range =
+          length == 0
+              ? "bytes */" + size
+              : "bytes " + offset + "-" + (offset + length - 1) + "/" + size;
+      for (int attempt = 1; ; attempt++) {
+        IOException failure = null;
+        int code;
+        try {
+          code = send("PUT", partUrl, buffer, length, range);
+        } catch (IOException e) {
+          code = 0;
+          failure = e;
+        }
+        if (code / 100 == 2) {
+          return;
+        }
+        if (code != 0) {
+          failure = new IOException("PUT " + partUrl + " returned " + code);
+          if (code < 500 && code != 408 && code != 429) {
+            throw failure;
+          }
+        }
+        if (attempt == MAX_PART_ATTEMPTS) {
+          throw new IOException("part failed after " + attempt + " attempts", failure);
+        }
+        Thread.sleep(INITIAL_RETRY_DELAY_MILLIS << (attempt - 1));
+      }
+    } finally {
+      buffers.add(buffer);
+    }
+  }
+
+  /** Sends a request and returns the status code of the response. */
+  private static int send(String method, URL url, byte[] body, int length, String contentRange)
+      throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    try {
+      connection.setRequestMethod(method);
+      connection.setDoOutput(true);
+      connection.setFixedLengthStreamingMode(length);
+      if (contentRange != null) {
+        connection.setRequestProperty("Content-Range", contentRange);
+      }
+      try (OutputStream out = connection.getOutputStream()) {
+        if (length > 0) {
+          out.write(body, 0, length);
+        }
+      }
+      int code = connection.getResponseCode();
+      InputStream response = code < 400 ? connection.getInputStream() : connection.getErrorStream();
+      if (response != null) {
+        response.close();
+      }
+      return code;
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  private static URL withQuery(URL url, String parameter) throws IOException {
+    String spec = url.toString();
+    return new URL(spec + (url.getQuery() == null ? "?" : "&") + parameter);
+  }
+}
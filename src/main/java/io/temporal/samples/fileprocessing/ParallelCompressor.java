@@ -0,0 +1,281 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses a file to gzip using all the cores, in the way pigz does.
+ *
+ * <p>The input is split into fixed size blocks that are deflated in parallel. Each block is primed
+ * with the last 32 KiB of the block before it, so the compression ratio stays close to that of a
+ * single stream, and ends with a sync flush, which aligns its output to a byte boundary. The
+ * compressed blocks are then concatenated in order between a single gzip header and trailer,
+ * which gives one valid deflate stream. The CRC of the trailer is computed while the input is
+ * read.
+ *
+ * <p>At most a few blocks per thread are in flight, so memory use doesn't depend on the file size.
+ *
+ * <p>Input that doesn't compress, like media or archives, is stored instead: a sample from its
+ * middle is deflated first, and if it barely shrinks the input is copied as stored deflate blocks.
+ * The copy goes through {@link FileChannel#transferTo} and the CRC is computed on memory-mapped
+ * windows of the input, so the content isn't copied to the heap at all. Compressed blocks still
+ * go through arrays, the only input that {@link Deflater} takes before Java 11.
+ */
+public final class ParallelCompressor {
+
+  public static final int DEFAULT_BLOCK_BYTES = 256 * 1024;
+
+  private static final int DICTIONARY_BYTES = 32 * 1024;
+
+  /** Size of the sample deflated to decide whether the input is worth compressing. */
+  private static final int SAMPLE_BYTES = 64 * 1024;
+
+  /** Input whose sample deflates to more than this fraction of its size is stored. */
+  private static final double MAX_COMPRESSED_RATIO = 0.95;
+
+  private static final int MAX_STORED_BLOCK_BYTES = 65535;
+
+  /** Size of the windows of the input mapped at once when storing it. */
+  static final long MAP_WINDOW_BYTES = 64L << 20;
+
+  private static final byte[] GZIP_HEADER = {
+    0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0
+  };
+
+  private final int threads;
+  private final int blockBytes;
+  private final int level;
+
+  public ParallelCompressor() {
+    this(
+        Runtime.getRuntime().availableProcessors(),
+        DEFAULT_BLOCK_BYTES,
+        Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * @param threads number of blocks deflated at once
+   * @param blockBytes size of the blocks the input is split into
+   * @param level deflate compression level, {@link Deflater#NO_COMPRESSION} to always store
+   */
+  public ParallelCompressor(int threads, int blockBytes, int level) {
+    if (threads < 1 || blockBytes < DICTIONARY_BYTES) {
+      throw new IllegalArgumentException("threads=" + threads + ", blockBytes=" + blockBytes);
+    }
+    this.threads = threads;
+    this.blockBytes = blockBytes;
+    this.level = level;
+  }
+
+  /** Writes the gzip compressed content of input to output. */
+  public void compress(Path input, Path output) throws IOException {
+    compress(input, 0, Files.size(input), output);
+  }
+
+  /**
+   * Writes the gzip compressed content of a byte range of input to output. The outputs of
+   * consecutive ranges concatenated together are a valid gzip file of the whole range.
+   */
+  public void compress(Path input, long offset, long size, Path output) throws IOException {
+    try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+        FileChannel out =
+            FileChannel.open(
+                output,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+      writeFully(out, ByteBuffer.wrap(GZIP_HEADER));
+      long crc =
+          compresses(in, offset, size)
+              ? deflate(in, offset, size, out)
+              : store(in, offset, size, out);
+      ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+      trailer.putInt((int) crc).putInt((int) size).flip();
+      writeFully(out, trailer);
+    }
+  }
+
+  /** Returns false if the sample from the middle of the range barely compresses. */
+  private boolean compresses(FileChannel in, long offset, long size) throws IOException {
+    if (level == Deflater.NO_COMPRESSION) {
+      return false;
+    }
+    if (size < SAMPLE_BYTES) {
+      return true;
+    }
+    byte[] sample = new byte[SAMPLE_BYTES];
+    readFully(in, offset + (size - SAMPLE_BYTES) / 2, ByteBuffer.wrap(sample));
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    try {
+      deflater.setInput(sample);
+      deflater.finish();
+      byte[] buffer = new byte[SAMPLE_BYTES];
+      long compressed = 0;
+      while (!deflater.finished()) {
+        compressed += deflater.deflate(buffer);
+      }
+      return compressed < SAMPLE_BYTES * MAX_COMPRESSED_RATIO;
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /** Writes the range to out as blocks deflated in parallel and returns its CRC. */
+  private long deflate(FileChannel in, long offset, long size, FileChannel out)
+      throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      CRC32 crc = new CRC32();
+      Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+      byte[] dictionary = null;
+      long position = 0;
+      do {
+        int length = (int) Math.min(blockBytes, size - position);
+        byte[] block = new byte[length];
+        readFully(in, offset + position, ByteBuffer.wrap(block));
+        crc.update(block, 0, length);
+        position += length;
+        boolean last = position == size;
+        byte[] blockDictionary = dictionary;
+        inFlight.add(executor.submit(() -> deflate(block, blockDictionary, last)));
+        dictionary = Arrays.copyOfRange(block, Math.max(0, length - DICTIONARY_BYTES), length);
+        if (inFlight.size() >= 2 * threads) {
+          writeFully(out, ByteBuffer.wrap(next(inFlight)));
+        }
+      } while (position < size);
+      while (!inFlight.isEmpty()) {
+        writeFully(out, ByteBuffer.wrap(next(inFlight)));
+      }
+      return crc.getValue();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Writes the range to out as stored deflate blocks and returns its CRC. Each mapped window of the
+   * input is checksummed, then transferred to out between the headers of its blocks.
+   */
+  private static long store(FileChannel in, long offset, long size, FileChannel out)
+      throws IOException {
+    CRC32 crc = new CRC32();
+    ByteBuffer header = ByteBuffer.allocate(5).order(ByteOrder.LITTLE_ENDIAN);
+    long position = 0;
+    do {
+      long windowEnd = Math.min(size, position + MAP_WINDOW_BYTES);
+      crc.update(in.map(FileChannel.MapMode.READ_ONLY, offset + position, windowEnd - position));
+      do {
+        int length = (int) Math.min(MAX_STORED_BLOCK_BYTES, windowEnd - position);
+        boolean last = position + length == size;
+        header.clear();
+        header.put((byte) (last ? 1 : 0)).putShort((short) length).putShort((short) ~length);
+        header.flip();
+        writeFully(out, header);
+        transferFully(in, offset + position, length, out);
+        position += length;
+      } while (position < windowEnd);
+    } while (position < size);
+    return crc.getValue();
+  }
+
+  private byte[] deflate(byte[] block, byte[] dictionary, boolean last) {
+    Deflater deflater = new Deflater(level, true);
+    try {
+      if (dictionary != null) {
+        deflater.setDictionary(dictionary);
+      }
+      deflater.setInput(block);
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(block.length / 2 + 64);
+      byte[] buffer = new byte[64 * 1024];
+      if (last) {
+        deflater.finish();
+        while (!deflater.finished()) {
+          compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+      } else {
+        // A full buffer means the flush may not be complete yet.
+        int length;
+        do {
+          length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+          compressed.write(buffer, 0, length);
+        } while (length == buffer.length);
+      }
+      return compressed.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte[] next(Deque<Future<byte[]>> inFlight) throws IOException {
+    try {
+      return inFlight.removeFirst().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private static void readFully(FileChannel in, long position, ByteBuffer buffer)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      if (in.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("file ends before the range");
+      }
+    }
+  }
+
+  private static void transferFully(FileChannel in, long position, long length, FileChannel out)
+      throws IOException {
+    while (length > 0) {
+      long transferred = in.transferTo(position, length, out);
+      if (transferred <= 0) {
+        throw new IOException("file ends before the range");
+      }
+      position += transferred;
+      length -= transferred;
+    }
+  }
+
+  private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      out.write(buffer);
+    }
+  }
+}
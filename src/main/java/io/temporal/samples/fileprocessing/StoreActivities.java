@@ -21,6 +21,7 @@ package io.temporal.samples.fileprocessing;
 
 import io.temporal.activity.ActivityInterface;
 import java.net.URL;
+import java.util.List;
 
 @ActivityInterface
 public interface StoreActivities {
@@ -28,10 +29,23 @@ public interface StoreActivities {
   final class TaskQueueFileNamePair {
     private String hostTaskQueue;
     private String fileName;
+    private long fileSize;
+    private String digest;
 
     public TaskQueueFileNamePair(String hostTaskQueue, String fileName) {
+      this(hostTaskQueue, fileName, 0);
+    }
+
+    public TaskQueueFileNamePair(String hostTaskQueue, String fileName, long fileSize) {
+      this(hostTaskQueue, fileName, fileSize, null);
+    }
+
+    public TaskQueueFileNamePair(
+        String hostTaskQueue, String fileName, long fileSize, String digest) {
       this.hostTaskQueue = hostTaskQueue;
       this.fileName = fileName;
+      this.fileSize = fileSize;
+      this.digest = digest;
     }
 
     /** Jackson needs it */
@@ -44,6 +58,15 @@ public interface StoreActivities {
     public String getFileName() {
       return fileName;
     }
+
+    public long getFileSize() {
+      return fileSize;
+    }
+
+    /** @return hex SHA-256 digest of the file, null if the host doesn't index uploads */
+    public String getDigest() {
+      return digest;
+    }
   }
 
   /**
@@ -61,6 +84,25 @@ public interface StoreActivities {
    */
   String process(String inputFileName);
 
+  /**
+   * Processes a byte range of a file on its own, so that the ranges of a large file can be
+   * processed concurrently.
+   *
+   * @param inputFileName source file name
+   * @param offset first byte of the range
+   * @param length number of bytes in the range
+   * @return processed range file name
+   */
+  String processRange(String inputFileName, long offset, long length);
+
+  /**
+   * Merges the processed ranges of a file, in order, into one processed file and deletes them.
+   *
+   * @param rangeFileNames processed range file names in the order of their offsets
+   * @return processed file name
+   */
+  String merge(List<String> rangeFileNames);
+
   /**
    * Downloads file to local disk.
    *
@@ -68,4 +110,23 @@ public interface StoreActivities {
    * @return local task queue and downloaded file name
    */
   TaskQueueFileNamePair download(URL url);
+
+  /**
+   * Checks whether a file with the same content was already uploaded to url from this host. If it
+   * was, deletes the files the workflow staged on the host, as they won't be processed.
+   *
+   * @param digest {@link TaskQueueFileNamePair#getDigest()} of the downloaded file
+   * @param url remote location
+   * @return true if the processing and the upload can be skipped
+   */
+  boolean skipIfUploaded(String digest, URL url);
+
+  /**
+   * Records that a file was processed and uploaded to url, so that the same content isn't processed
+   * and uploaded there again.
+   *
+   * @param digest {@link TaskQueueFileNamePair#getDigest()} of the downloaded file
+   * @param url remote location
+   */
+  void recordUploaded(String digest, URL url);
 }
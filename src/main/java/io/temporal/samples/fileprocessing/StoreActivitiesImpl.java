@@ -19,40 +19,357 @@
 
 package io.temporal.samples.fileprocessing;
 
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
-import com.google.common.io.Resources;
 import io.temporal.activity.Activity;
+import io.temporal.activity.ActivityExecutionContext;
+import io.temporal.failure.ApplicationFailure;
 import io.temporal.workflow.Workflow;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
 
 /** Store activities implementation. */
 public class StoreActivitiesImpl implements StoreActivities {
 
+  /** Size of the only buffer a download uses, whatever the size of the file. */
+  static final int DOWNLOAD_BUFFER_BYTES = 64 * 1024;
+
+  /** Heartbeats are sent at most this often. */
+  static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(1);
+
   private final String hostSpecificTaskQueue;
+  private final ParallelCompressor compressor;
+
+  /**
+   * Compresses each range on a single thread, as the concurrent range activities already keep all
+   * the cores busy.
+   */
+  private final ParallelCompressor rangeCompressor =
+      new ParallelCompressor(
+          1, ParallelCompressor.DEFAULT_BLOCK_BYTES, Deflater.DEFAULT_COMPRESSION);
+
+  /** Null if downloads aren't cached. */
+  private final ContentCache cache;
+
+  /** Null if the staged files are left in temporary directories. */
+  private final DiskQuota quota;
+
+  /** Null if uploads aren't indexed by content digest. */
+  private final DigestIndex digests;
+
+  private final MultipartUploader uploader;
+
+  private final long heartbeatIntervalNanos;
 
   public StoreActivitiesImpl(String taskQueue) {
+    this(taskQueue, new ParallelCompressor(), null, null, null, new MultipartUploader());
+  }
+
+  /**
+   * @param cache cache of the downloaded files on this host, null to always download
+   * @param quota where the files of each workflow are staged until uploaded, null to leave them in
+   *     temporary directories
+   * @param digests contents uploaded from this host, null to always process and upload
+   * @param uploader shared by the uploads of this host
+   */
+  public StoreActivitiesImpl(
+      String taskQueue,
+      ParallelCompressor compressor,
+      ContentCache cache,
+      DiskQuota quota,
+      DigestIndex digests,
+      MultipartUploader uploader) {
+    this(taskQueue, compressor, cache, quota, digests, uploader, HEARTBEAT_INTERVAL);
+  }
+
+  StoreActivitiesImpl(
+      String taskQueue,
+      ParallelCompressor compressor,
+      ContentCache cache,
+      DiskQuota quota,
+      DigestIndex digests,
+      MultipartUploader uploader,
+      Duration heartbeatInterval) {
     this.hostSpecificTaskQueue = taskQueue;
+    this.compressor = compressor;
+    this.cache = cache;
+    this.quota = quota;
+    this.digests = digests;
+    this.uploader = uploader;
+    this.heartbeatIntervalNanos = heartbeatInterval.toNanos();
   }
 
+  /**
+   * Progress of a download recorded in its heartbeats. A retry of the activity receives the last
+   * one and resumes the download from its offset.
+   */
+  public static final class DownloadProgress {
+    private String url;
+    private String hostTaskQueue;
+    private String fileName;
+    private long offset;
+
+    public DownloadProgress(String url, String hostTaskQueue, String fileName, long offset) {
+      this.url = url;
+      this.hostTaskQueue = hostTaskQueue;
+      this.fileName = fileName;
+      this.offset = offset;
+    }
+
+    /** Jackson needs it */
+    public DownloadProgress() {}
+
+    public String getUrl() {
+      return url;
+    }
+
+    public String getHostTaskQueue() {
+      return hostTaskQueue;
+    }
+
+    public String getFileName() {
+      return fileName;
+    }
+
+    /** Number of bytes at the start of the file that are known to be on disk. */
+    public long getOffset() {
+      return offset;
+    }
+  }
+
+  /**
+   * Streams the file to disk through a fixed size buffer, so heap use doesn't depend on the file
+   * size. Heartbeats the offset reached so far. A retry that runs on the same host continues from
+   * the last recorded offset instead of downloading the whole file again. A file found in the host
+   * cache with the same validator as the source isn't downloaded at all. A file that isn't is
+   * refused while the disk is low, so that the download goes to another host. When uploads are
+   * indexed, the digest of the file is computed as it streams in. Hashing a cached file or the part
+   * downloaded by a previous attempt heartbeats too, as it takes a while for a large file.
+   */
   @Override
   public TaskQueueFileNamePair download(URL url) {
+    ActivityExecutionContext context = Activity.getExecutionContext();
+    DownloadProgress resumeFrom = context.getHeartbeatDetails(DownloadProgress.class).orElse(null);
     try {
-      byte[] binary = Resources.toByteArray(url);
-      File destination = new File(Files.createTempDir(), "downloaded");
-      Files.write(binary, destination);
-      System.out.println(
-          "download activity: downloaded from " + url + " to " + destination.getAbsolutePath());
-      return new TaskQueueFileNamePair(hostSpecificTaskQueue, destination.getAbsolutePath());
+      return download(url, context.getInfo().getWorkflowId(), resumeFrom, context::heartbeat);
     } catch (IOException e) {
       throw Workflow.wrap(e);
     }
   }
 
+  TaskQueueFileNamePair download(
+      URL url,
+      String workflowId,
+      DownloadProgress resumeFrom,
+      Consumer<DownloadProgress> heartbeat)
+      throws IOException {
+    File destination;
+    long offset;
+    if (canResume(url, resumeFrom)) {
+      destination = new File(resumeFrom.getFileName());
+      offset = resumeFrom.getOffset();
+      if (quota != null) {
+        quota.touch(workflowId);
+      }
+    } else {
+      destination = new File(newDirectory(workflowId), "downloaded");
+      offset = 0;
+      if (cache != null
+          && cache.get(url.toString(), ContentCache.validator(url), destination.toPath())) {
+        System.out.println(
+            "download activity: found "
+                + url
+                + " in the cache, linked to "
+                + destination.getAbsolutePath()
+                + ", cache "
+                + cache);
+        // Hashing the file on disk is still much cheaper than processing and uploading it. Its
+        // heartbeats carry no progress, as a retry finds the file in the cache again.
+        return downloaded(
+            destination,
+            digests == null ? null : digest(destination, () -> heartbeat.accept(null)));
+      }
+      if (quota != null && !quota.hasRoom()) {
+        throw ApplicationFailure.newFailure(
+            "Not enough disk space for a new download on " + hostSpecificTaskQueue,
+            FileProcessingWorkflowImpl.DISK_LOW_FAILURE);
+      }
+    }
+    URLConnection connection = url.openConnection();
+    if (offset > 0 && connection instanceof HttpURLConnection) {
+      connection.setRequestProperty("Range", "bytes=" + offset + "-");
+    }
+    try (InputStream stream = connection.getInputStream();
+        FileChannel out =
+            FileChannel.open(
+                destination.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+      offset = skipTo(connection, stream, offset);
+      // Bytes past the recorded offset may not have reached the disk intact.
+      out.truncate(offset);
+      out.position(offset);
+      ReadableByteChannel in = Channels.newChannel(stream);
+      ByteBuffer buffer = ByteBuffer.allocateDirect(DOWNLOAD_BUFFER_BYTES);
+      MessageDigest digest = digests == null ? null : DigestIndex.newDigest();
+      if (digest != null) {
+        // The part downloaded by a previous attempt is hashed from the disk.
+        updateDigest(digest, out, offset, buffer, () -> heartbeat.accept(resumeFrom));
+      }
+      long transferred = offset;
+      long lastHeartbeat = System.nanoTime();
+      try {
+        while (in.read(buffer) != -1) {
+          buffer.flip();
+          if (digest != null) {
+            digest.update(buffer.duplicate());
+          }
+          while (buffer.hasRemaining()) {
+            transferred += out.write(buffer);
+          }
+          buffer.clear();
+          if (System.nanoTime() - lastHeartbeat >= heartbeatIntervalNanos) {
+            recordProgress(url, destination, out, transferred, heartbeat);
+            lastHeartbeat = System.nanoTime();
+          }
+        }
+      } catch (IOException e) {
+        // Lets the retry continue from where this attempt failed.
+        recordProgress(url, destination, out, transferred, heartbeat);
+        throw e;
+      }
+      recordProgress(url, destination, out, transferred, heartbeat);
+      System.out.println(
+          "download activity: downloaded "
+              + (transferred - offset)
+              + " bytes"
+              + (offset > 0 ? " resuming at " + offset : "")
+              + " from "
+              + url
+              + " to "
+              + destination.getAbsolutePath());
+      if (cache != null) {
+        cache.put(url.toString(), ContentCache.validator(connection), destination.toPath());
+        System.out.println("download activity: cache " + cache);
+      }
+      return downloaded(destination, digest == null ? null : DigestIndex.toHex(digest.digest()));
+    }
+  }
+
+  private TaskQueueFileNamePair downloaded(File file, String digest) {
+    return new TaskQueueFileNamePair(
+        hostSpecificTaskQueue, file.getAbsolutePath(), file.length(), digest);
+  }
+
+  /** Returns the digest of the whole content of file. */
+  private String digest(File file, Runnable heartbeat) throws IOException {
+    MessageDigest digest = DigestIndex.newDigest();
+    try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(DOWNLOAD_BUFFER_BYTES);
+      updateDigest(digest, in, in.size(), buffer, heartbeat);
+    }
+    return DigestIndex.toHex(digest.digest());
+  }
+
+  /**
+   * Adds the first length bytes of file to digest, reading them through buffer. Runs heartbeat at
+   * the heartbeat interval meanwhile.
+   */
+  private void updateDigest(
+      MessageDigest digest, FileChannel file, long length, ByteBuffer buffer, Runnable heartbeat)
+      throws IOException {
+    long lastHeartbeat = System.nanoTime();
+    for (long position = 0; position < length; ) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), length - position));
+      int read = file.read(buffer, position);
+      if (read < 0) {
+        throw new IOException("file shorter than the recorded offset");
+      }
+      position += read;
+      buffer.flip();
+      digest.update(buffer);
+      if (System.nanoTime() - lastHeartbeat >= heartbeatIntervalNanos) {
+        heartbeat.run();
+        lastHeartbeat = System.nanoTime();
+      }
+    }
+    buffer.clear();
+  }
+
+  private File newDirectory(String workflowId) throws IOException {
+    return quota == null ? Files.createTempDir() : quota.newDirectory(workflowId);
+  }
+
+  /** Keeps the staged files of the workflow of the current activity from going stale. */
+  private void touch() {
+    if (quota != null) {
+      quota.touch(Activity.getExecutionContext().getInfo().getWorkflowId());
+    }
+  }
+
+  private boolean canResume(URL url, DownloadProgress progress) {
+    if (progress == null
+        || !url.toString().equals(progress.getUrl())
+        || !hostSpecificTaskQueue.equals(progress.getHostTaskQueue())) {
+      return false;
+    }
+    File file = new File(progress.getFileName());
+    return file.isFile() && file.length() >= progress.getOffset();
+  }
+
+  /**
+   * Positions the stream at offset, unless the server ignored the range request.
+   *
+   * @return offset the stream starts at
+   */
+  private static long skipTo(URLConnection connection, InputStream stream, long offset)
+      throws IOException {
+    if (offset == 0) {
+      return 0;
+    }
+    if (connection instanceof HttpURLConnection) {
+      int code = ((HttpURLConnection) connection).getResponseCode();
+      return code == HttpURLConnection.HTTP_PARTIAL ? offset : 0;
+    }
+    ByteStreams.skipFully(stream, offset);
+    return offset;
+  }
+
+  private void recordProgress(
+      URL url,
+      File destination,
+      FileChannel out,
+      long offset,
+      Consumer<DownloadProgress> heartbeat)
+      throws IOException {
+    // The recorded offset must not run ahead of the disk.
+    out.force(false);
+    heartbeat.accept(
+        new DownloadProgress(
+            url.toString(), hostSpecificTaskQueue, destination.getAbsolutePath(), offset));
+  }
+
   @Override
   public String process(String sourceFile) {
     System.out.println("process activity: sourceFile= " + sourceFile);
+    touch();
     try {
       String processedName = processFileImpl(sourceFile);
       System.out.println("process activity: processed file: " + processedName);
@@ -65,9 +382,66 @@ public class StoreActivitiesImpl implements StoreActivities {
   private String processFileImpl(String fileName) throws IOException {
     File inputFile = new File(fileName);
     File inputDir = inputFile.getParentFile();
-    File outputFile = new File(inputDir, "processed");
-    // We don't really process it, just copy to keep the sample simple.
-    Files.copy(inputFile, outputFile);
+    File outputFile = new File(inputDir, "processed.gz");
+    compressor.compress(inputFile.toPath(), outputFile.toPath());
+    return outputFile.getAbsolutePath();
+  }
+
+  @Override
+  public String processRange(String inputFileName, long offset, long length) {
+    touch();
+    File inputFile = new File(inputFileName);
+    File outputFile =
+        new File(inputFile.getParentFile(), String.format("processed-%016x.gz", offset));
+    try {
+      rangeCompressor.compress(inputFile.toPath(), offset, length, outputFile.toPath());
+    } catch (IOException e) {
+      throw Activity.wrap(e);
+    }
+    System.out.println(
+        "processRange activity: processed " + length + " bytes at " + offset + " to " + outputFile);
+    return outputFile.getAbsolutePath();
+  }
+
+  /**
+   * Each range is a complete gzip member, and gzip members concatenated are a gzip file. The merged
+   * file gets its name only once it is complete and forced to disk, and the ranges are deleted
+   * after that. A retry that finds the merged file returns it, since its ranges may be gone.
+   */
+  @Override
+  public String merge(List<String> rangeFileNames) {
+    touch();
+    File outputFile = new File(new File(rangeFileNames.get(0)).getParentFile(), "processed.gz");
+    if (!outputFile.isFile()) {
+      File temporaryFile = new File(outputFile.getParentFile(), outputFile.getName() + ".tmp");
+      try {
+        try (FileChannel out =
+            FileChannel.open(
+                temporaryFile.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+          for (String rangeFileName : rangeFileNames) {
+            try (FileChannel in = FileChannel.open(new File(rangeFileName).toPath())) {
+              long size = in.size();
+              for (long position = 0; position < size; ) {
+                position += in.transferTo(position, size - position, out);
+              }
+            }
+          }
+          out.force(true);
+        }
+        java.nio.file.Files.move(
+            temporaryFile.toPath(), outputFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        throw Activity.wrap(e);
+      }
+    }
+    for (String rangeFileName : rangeFileNames) {
+      new File(rangeFileName).delete();
+    }
+    System.out.println(
+        "merge activity: merged " + rangeFileNames.size() + " ranges to " + outputFile);
     return outputFile.getAbsolutePath();
   }
 
@@ -77,7 +451,42 @@ public class StoreActivitiesImpl implements StoreActivities {
     if (!file.isFile()) {
       throw new IllegalArgumentException("Invalid file type: " + file);
     }
-    // Faking upload to simplify sample implementation.
+    ActivityExecutionContext context = Activity.getExecutionContext();
+    try {
+      // Heartbeats carry the number of bytes sent so far.
+      uploader.upload(file.toPath(), url, context::heartbeat);
+    } catch (IOException e) {
+      throw Activity.wrap(e);
+    }
     System.out.println("upload activity: uploaded from " + localFileName + " to " + url);
+    if (quota != null) {
+      // The workflow is done with the files it staged on this host.
+      quota.release(context.getInfo().getWorkflowId());
+      System.out.println("upload activity: disk quota " + quota);
+    }
+  }
+
+  @Override
+  public boolean skipIfUploaded(String digest, URL url) {
+    if (digests == null || !digests.contains(digest, url)) {
+      return false;
+    }
+    System.out.println("skip activity: " + digest + " already uploaded to " + url + ", " + digests);
+    if (quota != null) {
+      quota.release(Activity.getExecutionContext().getInfo().getWorkflowId());
+    }
+    return true;
+  }
+
+  @Override
+  public void recordUploaded(String digest, URL url) {
+    if (digests == null) {
+      return;
+    }
+    try {
+      digests.add(digest, url);
+    } catch (IOException e) {
+      throw Activity.wrap(e);
+    }
   }
 }
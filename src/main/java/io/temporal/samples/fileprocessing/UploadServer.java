@@ -0,0 +1,143 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+
+/**
+ * Receives the files sent by {@link MultipartUploader} and stores them in a directory, under the
+ * last segment of the request path. Stands in for the storage service the processed files are
+ * uploaded to.
+ */
+public final class UploadServer implements HttpHandler {
+
+  public static final int DEFAULT_PORT = 8089;
+
+  private final Path directory;
+
+  public UploadServer(Path directory) throws IOException {
+    this.directory = Files.createDirectories(directory);
+  }
+
+  public static void main(String[] args) throws IOException {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+    Path directory =
+        args.length > 1
+            ? Paths.get(args[1])
+            : Paths.get(System.getProperty("java.io.tmpdir"), "fileprocessing-uploads");
+    HttpServer server = start(new InetSocketAddress(port), new UploadServer(directory));
+    System.out.println(
+        "Storing uploads to http://localhost:"
+            + server.getAddress().getPort()
+            + "/ in "
+            + directory);
+  }
+
+  /** Starts an HTTP server that passes every request to handler. */
+  public static HttpServer start(InetSocketAddress address, HttpHandler handler)
+      throws IOException {
+    HttpServer server = HttpServer.create(address, 0);
+    server.createContext("/", handler);
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+    return server;
+  }
+
+  /** Returns the file an upload to path is stored in. */
+  public Path getFile(String path) {
+    Path name = Paths.get(path).getFileName();
+    if (name == null) {
+      throw new IllegalArgumentException("no file name in " + path);
+    }
+    return directory.resolve(name.toString());
+  }
+
+  @Override
+  public void handle(HttpExchange exchange) throws IOException {
+    try (InputStream body = exchange.getRequestBody()) {
+      String query = exchange.getRequestURI().getQuery();
+      Path file = getFile(exchange.getRequestURI().getPath());
+      String method = exchange.getRequestMethod();
+      int code;
+      if (method.equals("PUT") && query != null && query.startsWith("part=")) {
+        int part = Integer.parseInt(query.substring("part=".length()));
+        Path partFile = partFile(file, part);
+        // Parts are sent again when they fail, so a part may already exist.
+        Files.copy(body, partFile, StandardCopyOption.REPLACE_EXISTING);
+        code = 200;
+      } else if (method.equals("POST") && query != null && query.startsWith("complete=")) {
+        code = complete(file, Integer.parseInt(query.substring("complete=".length())));
+      } else {
+        code = 400;
+      }
+      exchange.sendResponseHeaders(code, -1);
+    } catch (RuntimeException e) {
+      exchange.sendResponseHeaders(400, -1);
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /** Concatenates the parts of file in order, or returns 409 when one is missing. */
+  private int complete(Path file, int parts) throws IOException {
+    for (int part = 0; part < parts; part++) {
+      if (!Files.isRegularFile(partFile(file, part))) {
+        return 409;
+      }
+    }
+    Path assembling = file.resolveSibling(file.getFileName() + ".assembling");
+    try (FileChannel out =
+        FileChannel.open(
+            assembling,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      for (int part = 0; part < parts; part++) {
+        try (FileChannel in = FileChannel.open(partFile(file, part), StandardOpenOption.READ)) {
+          long size = in.size();
+          for (long position = 0; position < size; ) {
+            position += in.transferTo(position, size - position, out);
+          }
+        }
+      }
+    }
+    Files.move(assembling, file, StandardCopyOption.REPLACE_EXISTING);
+    for (int part = 0; part < parts; part++) {
+      Files.delete(partFile(file, part));
+    }
+    return 200;
+  }
+
+  private static Path partFile(Path file, int part) {
+    return file.resolveSibling(file.getFileName() + ".part-" + part);
+  }
+}
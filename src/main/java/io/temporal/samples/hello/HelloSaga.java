@@ -24,12 +24,12 @@ import io.temporal.activity.ActivityMethod;
 import io.temporal.activity.ActivityOptions;
 import io.temporal.client.WorkflowClient;
 import io.temporal.client.WorkflowOptions;
+import io.temporal.samples.common.CompensationRunner;
 import io.temporal.serviceclient.WorkflowServiceStubs;
 import io.temporal.worker.Worker;
 import io.temporal.worker.WorkerFactory;
 import io.temporal.workflow.Async;
 import io.temporal.workflow.Promise;
-import io.temporal.workflow.Saga;
 import io.temporal.workflow.Workflow;
 import io.temporal.workflow.WorkflowInterface;
 import io.temporal.workflow.WorkflowMethod;
@@ -107,7 +107,8 @@ public class HelloSaga {
      * Main saga workflow. Here we execute activity operation twice (first from a child workflow,
      * second directly using activity stub), add three compensation functions, and then throws some
      * exception in workflow code. When we catch the exception, saga.compensate will run the
-     * compensation functions according to the policy specified in SagaOptions.
+     * compensation functions according to the policy specified in its options: the last two in
+     * parallel, then the first one, each within ten seconds.
      */
     @WorkflowMethod
     void execute();
@@ -121,7 +122,12 @@ public class HelloSaga {
 
     @Override
     public void execute() {
-      Saga saga = new Saga(new Saga.Options.Builder().setParallelCompensation(false).build());
+      CompensationRunner saga =
+          new CompensationRunner(
+              new CompensationRunner.Options.Builder()
+                  .setMaxConcurrency(2)
+                  .setStepTimeout(Duration.ofSeconds(10))
+                  .build());
       try {
         // The following demonstrate how to compensate sync invocations.
         ChildWorkflowOperation op1 = Workflow.newChildWorkflowStub(ChildWorkflowOperation.class);
@@ -130,6 +136,9 @@ public class HelloSaga {
             Workflow.newChildWorkflowStub(ChildWorkflowCompensation.class);
         saga.addCompensation(c1::compensate, -10);
 
+        // Compensations of a new group complete before those of the previous groups start.
+        saga.startGroup();
+
         // The following demonstrate how to compensate async invocations.
         Promise<Void> result = Async.procedure(activity::execute, 20);
         saga.addCompensation(activity::compensate, -20);
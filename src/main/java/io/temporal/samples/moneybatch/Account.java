@@ -20,6 +20,7 @@
 package io.temporal.samples.moneybatch;
 
 import io.temporal.activity.ActivityInterface;
+import java.util.List;
 
 @ActivityInterface
 public interface Account {
@@ -27,4 +28,11 @@ public interface Account {
   void deposit(String accountId, String referenceId, int amountCents);
 
   void withdraw(String accountId, String referenceId, int amountCents);
+
+  /**
+   * Executes each withdrawal independently. A failed withdrawal doesn't affect the others.
+   *
+   * @return result of each withdrawal in the order of the withdrawals argument
+   */
+  List<WithdrawalResult> withdrawBatch(List<Withdrawal> withdrawals);
 }
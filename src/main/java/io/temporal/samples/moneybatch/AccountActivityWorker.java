@@ -37,7 +37,7 @@ public class AccountActivityWorker {
     Worker worker = factory.newWorker(TASK_QUEUE);
 
     Account account = new AccountImpl();
-    worker.registerActivitiesImplementations(account);
+    worker.registerActivitiesImplementations(account, new BatchAggregationImpl(client));
 
     factory.start();
     System.out.println("Activity Worker started for task queue: " + TASK_QUEUE);
@@ -0,0 +1,58 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneybatch;
+
+import io.temporal.workflow.QueryMethod;
+import io.temporal.workflow.SignalMethod;
+import io.temporal.workflow.WorkflowInterface;
+import io.temporal.workflow.WorkflowMethod;
+
+/**
+ * Merges the batches reported by the shards of a destination account into deposits. Its workflow
+ * id is {@link ShardedTransfers#aggregatorWorkflowId}.
+ */
+@WorkflowInterface
+public interface AccountAggregatorWorkflow {
+
+  /**
+   * Keeps depositing the partial batches received through {@link #addPartial} to toAccountId.
+   * Never completes.
+   *
+   * @param toAccountId account to deposit to
+   * @param policy when to deposit, counting the withdrawals contained in the partial batches
+   * @param state batch carried over from a previous run, null when starting a new batch
+   */
+  @WorkflowMethod
+  void deposit(String toAccountId, FlushPolicy policy, BatchState state);
+
+  /**
+   * @param partialId unique id of the partial batch, used to ignore retried reports
+   * @param amountCents sum of the withdrawals of the partial batch
+   * @param count number of withdrawals of the partial batch
+   */
+  @SignalMethod
+  void addPartial(String partialId, int amountCents, int count);
+
+  @QueryMethod
+  int getBalance();
+
+  @QueryMethod
+  int getCount();
+}
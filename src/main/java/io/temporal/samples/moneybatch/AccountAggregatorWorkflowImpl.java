@@ -0,0 +1,144 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneybatch;
+
+import io.temporal.workflow.Workflow;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accumulates the partial batches of the shards and deposits their sum whenever the {@link
+ * FlushPolicy} says so. Continues as new after {@link
+ * AccountTransferWorkflowImpl#MAX_SIGNALS_PER_RUN} partial batches, passing the batch and the ids
+ * of the partial batches seen recently.
+ */
+public class AccountAggregatorWorkflowImpl implements AccountAggregatorWorkflow {
+
+  private static final class Partial {
+    private final String partialId;
+    private final int amountCents;
+    private final int count;
+
+    private Partial(String partialId, int amountCents, int count) {
+      this.partialId = partialId;
+      this.amountCents = amountCents;
+      this.count = count;
+    }
+  }
+
+  private final Account account;
+
+  private final AccountAggregatorWorkflow continueAsNew =
+      Workflow.newContinueAsNewStub(AccountAggregatorWorkflow.class);
+
+  private final int maxSignalsPerRun;
+
+  private ReferenceWindow partialIds =
+      new ReferenceWindow(WithdrawalBatcher.MAX_REFERENCES, WithdrawalBatcher.REFERENCE_RETENTION);
+  private final List<Partial> pending = new ArrayList<>();
+  private int balance;
+  private int count;
+  private long batchStartedAt;
+  private int signalsInRun;
+
+  public AccountAggregatorWorkflowImpl() {
+    this(false);
+  }
+
+  /** @param localActivities execute the account calls as local activities */
+  public AccountAggregatorWorkflowImpl(boolean localActivities) {
+    this(AccountTransferWorkflowImpl.MAX_SIGNALS_PER_RUN, localActivities);
+  }
+
+  AccountAggregatorWorkflowImpl(int maxSignalsPerRun, boolean localActivities) {
+    this.maxSignalsPerRun = maxSignalsPerRun;
+    account = AccountTransferWorkflowImpl.newAccountStub(localActivities);
+  }
+
+  @Override
+  public void deposit(String toAccountId, FlushPolicy policy, BatchState state) {
+    if (state != null) {
+      balance = state.getBalance();
+      count = state.getCount();
+      batchStartedAt = state.getBatchStartedAtMillis();
+      partialIds =
+          ReferenceWindow.restore(
+              WithdrawalBatcher.MAX_REFERENCES,
+              WithdrawalBatcher.REFERENCE_RETENTION,
+              state.getReferences());
+    }
+    long maxWait = policy.getMaxWaitMillis();
+    while (true) {
+      addPending();
+      if (signalsInRun >= maxSignalsPerRun) {
+        break;
+      }
+      long untilDeadline =
+          maxWait == 0 ? Long.MAX_VALUE : batchStartedAt + maxWait - Workflow.currentTimeMillis();
+      if (count > 0 && (policy.isFull(count, balance) || untilDeadline <= 0)) {
+        int amountCents = balance;
+        balance = 0;
+        count = 0;
+        account.deposit(toAccountId, Workflow.randomUUID().toString(), amountCents);
+        continue;
+      }
+      if (count > 0 && maxWait > 0) {
+        Workflow.await(Duration.ofMillis(untilDeadline), () -> !pending.isEmpty());
+      } else {
+        Workflow.await(() -> !pending.isEmpty());
+      }
+    }
+    continueAsNew.deposit(
+        toAccountId,
+        policy,
+        new BatchState(balance, count, batchStartedAt, partialIds.snapshot(), null, null));
+  }
+
+  private void addPending() {
+    for (Partial partial : pending) {
+      if (!partialIds.add(partial.partialId, Workflow.currentTimeMillis())) {
+        continue; // retried report
+      }
+      if (count == 0) {
+        batchStartedAt = Workflow.currentTimeMillis();
+      }
+      balance += partial.amountCents;
+      count += partial.count;
+    }
+    pending.clear();
+  }
+
+  @Override
+  public void addPartial(String partialId, int amountCents, int count) {
+    signalsInRun++;
+    pending.add(new Partial(partialId, amountCents, count));
+  }
+
+  @Override
+  public int getBalance() {
+    return balance;
+  }
+
+  @Override
+  public int getCount() {
+    return count;
+  }
+}
@@ -19,6 +19,9 @@
 
 package io.temporal.samples.moneybatch;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class AccountImpl implements Account {
   @Override
   public void deposit(String accountId, String referenceId, int amountCents) {
@@ -34,4 +37,19 @@ public class AccountImpl implements Account {
         "Withdraw to %s of %d cents requested. ReferenceId=%s\n",
         accountId, amountCents, referenceId);
   }
+
+  @Override
+  public List<WithdrawalResult> withdrawBatch(List<Withdrawal> withdrawals) {
+    List<WithdrawalResult> results = new ArrayList<>(withdrawals.size());
+    for (Withdrawal withdrawal : withdrawals) {
+      String referenceId = withdrawal.getReferenceId();
+      try {
+        withdraw(withdrawal.getFromAccountId(), referenceId, withdrawal.getAmountCents());
+        results.add(new WithdrawalResult(referenceId, true, null));
+      } catch (RuntimeException e) {
+        results.add(new WithdrawalResult(referenceId, false, e.getMessage()));
+      }
+    }
+    return results;
+  }
 }
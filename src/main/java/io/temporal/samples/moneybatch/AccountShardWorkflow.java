@@ -0,0 +1,63 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneybatch;
+
+import io.temporal.workflow.QueryMethod;
+import io.temporal.workflow.SignalMethod;
+import io.temporal.workflow.WorkflowInterface;
+import io.temporal.workflow.WorkflowMethod;
+import java.util.List;
+
+/**
+ * One of the shards that receive the withdrawals to a destination account in the sharded mode.
+ * Shards execute withdrawals and report their batches to the {@link AccountAggregatorWorkflow} of
+ * the destination account, which makes the deposits. See {@link ShardedTransfers}.
+ */
+@WorkflowInterface
+public interface AccountShardWorkflow {
+
+  /**
+   * Keeps reporting the withdrawals received through {@link #withdraw} to the aggregator of
+   * toAccountId in batches. Never completes.
+   *
+   * @param toAccountId account to deposit to
+   * @param shards number of shards of toAccountId
+   * @param policy deposit policy of the aggregator
+   * @param state batch carried over from a previous run, null when starting a new batch
+   */
+  @WorkflowMethod
+  void collect(String toAccountId, int shards, FlushPolicy policy, BatchState state);
+
+  @SignalMethod
+  void withdraw(String fromAccountId, String referenceId, int amountCents);
+
+  @QueryMethod
+  int getBalance();
+
+  @QueryMethod
+  int getCount();
+
+  /**
+   * @return withdrawals that failed and were not retried successfully with the same reference, at
+   *     most the {@value WithdrawalBatcher#MAX_FAILED_WITHDRAWALS} most recent ones
+   */
+  @QueryMethod
+  List<WithdrawalResult> getFailedWithdrawals();
+}
@@ -0,0 +1,84 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneybatch;
+
+import io.temporal.workflow.Workflow;
+import java.util.List;
+
+/**
+ * Batches the withdrawals of a shard using {@link FlushPolicy#forShards} and reports each batch to
+ * the aggregator through {@link BatchAggregation#addPartial}. A batch is reported under a
+ * reference generated by the workflow, so a retried report is counted by the aggregator only once.
+ */
+public class AccountShardWorkflowImpl implements AccountShardWorkflow {
+
+  private final BatchAggregation aggregation =
+      Workflow.newActivityStub(
+          BatchAggregation.class, AccountTransferWorkflowImpl.ACTIVITY_OPTIONS);
+
+  private final AccountShardWorkflow continueAsNew =
+      Workflow.newContinueAsNewStub(AccountShardWorkflow.class);
+
+  private final WithdrawalBatcher batcher;
+
+  public AccountShardWorkflowImpl() {
+    this(false);
+  }
+
+  /** @param localActivities execute the account calls as local activities */
+  public AccountShardWorkflowImpl(boolean localActivities) {
+    batcher =
+        new WithdrawalBatcher(
+            AccountTransferWorkflowImpl.newAccountStub(localActivities),
+            AccountTransferWorkflowImpl.MAX_SIGNALS_PER_RUN,
+            AccountTransferWorkflowImpl.MAX_EVENTS_PER_RUN);
+  }
+
+  @Override
+  public void collect(String toAccountId, int shards, FlushPolicy policy, BatchState state) {
+    batcher.restore(state);
+    batcher.run(
+        policy.forShards(shards),
+        (amountCents, count) ->
+            aggregation.addPartial(
+                toAccountId, policy, Workflow.randomUUID().toString(), amountCents, count));
+    continueAsNew.collect(toAccountId, shards, policy, batcher.getState());
+  }
+
+  @Override
+  public void withdraw(String fromAccountId, String referenceId, int amountCents) {
+    batcher.withdraw(fromAccountId, referenceId, amountCents);
+  }
+
+  @Override
+  public int getBalance() {
+    return batcher.getBalance();
+  }
+
+  @Override
+  public int getCount() {
+    return batcher.getCount();
+  }
+
+  @Override
+  public List<WithdrawalResult> getFailedWithdrawals() {
+    return batcher.getFailedWithdrawals();
+  }
+}
@@ -33,7 +33,21 @@ public class AccountTransferWorker {
     WorkerFactory factory = WorkerFactory.newInstance(client);
 
     Worker worker = factory.newWorker(AccountActivityWorker.TASK_QUEUE);
-    worker.registerWorkflowImplementationTypes(AccountTransferWorkflowImpl.class);
+    if (args.length > 0 && args[0].equals("local")) {
+      // Account calls run as local activities, so this worker executes them.
+      worker.addWorkflowImplementationFactory(
+          AccountTransferWorkflow.class, () -> new AccountTransferWorkflowImpl(true));
+      worker.addWorkflowImplementationFactory(
+          AccountShardWorkflow.class, () -> new AccountShardWorkflowImpl(true));
+      worker.addWorkflowImplementationFactory(
+          AccountAggregatorWorkflow.class, () -> new AccountAggregatorWorkflowImpl(true));
+      worker.registerActivitiesImplementations(new AccountImpl());
+    } else {
+      worker.registerWorkflowImplementationTypes(
+          AccountTransferWorkflowImpl.class,
+          AccountShardWorkflowImpl.class,
+          AccountAggregatorWorkflowImpl.class);
+    }
 
     factory.start();
     System.out.println("Worker started for task queue: " + AccountActivityWorker.TASK_QUEUE);
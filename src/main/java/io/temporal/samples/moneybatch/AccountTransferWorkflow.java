@@ -23,12 +23,21 @@ import io.temporal.workflow.QueryMethod;
 import io.temporal.workflow.SignalMethod;
 import io.temporal.workflow.WorkflowInterface;
 import io.temporal.workflow.WorkflowMethod;
+import java.util.List;
 
 @WorkflowInterface
 public interface AccountTransferWorkflow {
 
+  /**
+   * Keeps depositing the withdrawals received through {@link #withdraw} to toAccountId in batches.
+   * Never completes.
+   *
+   * @param toAccountId account to deposit to
+   * @param policy when to deposit a batch
+   * @param state batch carried over from a previous run, null when starting a new batch
+   */
   @WorkflowMethod
-  void deposit(String toAccountId, int batchSize);
+  void deposit(String toAccountId, FlushPolicy policy, BatchState state);
 
   @SignalMethod
   void withdraw(String fromAccountId, String referenceId, int amountCents);
@@ -38,4 +47,11 @@ public interface AccountTransferWorkflow {
 
   @QueryMethod
   int getCount();
+
+  /**
+   * @return withdrawals that failed and were not retried successfully with the same reference, at
+   *     most the {@value WithdrawalBatcher#MAX_FAILED_WITHDRAWALS} most recent ones
+   */
+  @QueryMethod
+  List<WithdrawalResult> getFailedWithdrawals();
 }
@@ -20,55 +20,109 @@
 package io.temporal.samples.moneybatch;
 
 import io.temporal.activity.ActivityOptions;
+import io.temporal.activity.LocalActivityOptions;
 import io.temporal.common.RetryOptions;
 import io.temporal.workflow.Workflow;
 import java.time.Duration;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
 
+/**
+ * Accumulates withdrawals and deposits their sum whenever the {@link FlushPolicy} says so. The
+ * policy bounds both the size of a batch and how long its first withdrawal waits for the deposit.
+ *
+ * <p>Withdrawals are batched by {@link WithdrawalBatcher}. To keep the history small the run
+ * continues as new once it handled {@link #MAX_SIGNALS_PER_RUN} signals or added about {@link
+ * #MAX_EVENTS_PER_RUN} events. The batch, the deduplication window and the queued withdrawals are
+ * passed to the next run.
+ */
 public class AccountTransferWorkflowImpl implements AccountTransferWorkflow {
 
-  private final ActivityOptions options =
+  static final int MAX_SIGNALS_PER_RUN = 1_000;
+
+  static final int MAX_EVENTS_PER_RUN = 10_000;
+
+  private static final RetryOptions RETRY_OPTIONS =
+      RetryOptions.newBuilder()
+          .setInitialInterval(Duration.ofSeconds(1))
+          .setMaximumInterval(Duration.ofSeconds(10))
+          .build();
+
+  static final ActivityOptions ACTIVITY_OPTIONS =
       ActivityOptions.newBuilder()
           .setStartToCloseTimeout(Duration.ofSeconds(5))
           .setScheduleToStartTimeout(Duration.ofHours(1))
-          .setRetryOptions(
-              RetryOptions.newBuilder()
-                  .setInitialInterval(Duration.ofSeconds(1))
-                  .setMaximumInterval(Duration.ofSeconds(10))
-                  .build())
+          .setRetryOptions(RETRY_OPTIONS)
           .build();
 
-  private final Account account = Workflow.newActivityStub(Account.class, options);
+  static final LocalActivityOptions LOCAL_ACTIVITY_OPTIONS =
+      LocalActivityOptions.newBuilder()
+          .setStartToCloseTimeout(Duration.ofSeconds(5))
+          .setRetryOptions(RETRY_OPTIONS)
+          .build();
+
+  private final Account account;
 
-  private Set<String> references = new HashSet<>();
-  private int balance;
-  private int count;
+  private final AccountTransferWorkflow continueAsNew =
+      Workflow.newContinueAsNewStub(AccountTransferWorkflow.class);
+
+  private final WithdrawalBatcher batcher;
+
+  public AccountTransferWorkflowImpl() {
+    this(false);
+  }
+
+  /**
+   * @param localActivities execute the account calls as local activities. They skip the round
+   *     trips through the activity task queue and record a single marker event each, but the
+   *     workflow worker must host the {@link Account} implementation.
+   */
+  public AccountTransferWorkflowImpl(boolean localActivities) {
+    this(MAX_SIGNALS_PER_RUN, MAX_EVENTS_PER_RUN, localActivities);
+  }
+
+  AccountTransferWorkflowImpl(int maxSignalsPerRun, int maxEventsPerRun) {
+    this(maxSignalsPerRun, maxEventsPerRun, false);
+  }
+
+  AccountTransferWorkflowImpl(int maxSignalsPerRun, int maxEventsPerRun, boolean localActivities) {
+    account = newAccountStub(localActivities);
+    batcher = new WithdrawalBatcher(account, maxSignalsPerRun, maxEventsPerRun);
+  }
+
+  /** Account stub with the same retry options in both modes. */
+  static Account newAccountStub(boolean localActivities) {
+    return localActivities
+        ? Workflow.newLocalActivityStub(Account.class, LOCAL_ACTIVITY_OPTIONS)
+        : Workflow.newActivityStub(Account.class, ACTIVITY_OPTIONS);
+  }
 
   @Override
-  public void deposit(String toAccount, int batchSize) {
-    Workflow.await(() -> count == batchSize);
-    String referenceId = Workflow.randomUUID().toString();
-    account.deposit(toAccount, referenceId, balance);
+  public void deposit(String toAccount, FlushPolicy policy, BatchState state) {
+    batcher.restore(state);
+    batcher.run(
+        policy,
+        (amountCents, count) ->
+            account.deposit(toAccount, Workflow.randomUUID().toString(), amountCents));
+    continueAsNew.deposit(toAccount, policy, batcher.getState());
   }
 
   @Override
   public void withdraw(String fromAccountId, String referenceId, int amountCents) {
-    if (!references.add(referenceId)) {
-      return; // duplicate
-    }
-    account.withdraw(fromAccountId, referenceId, amountCents);
-    balance += amountCents;
-    count++;
+    batcher.withdraw(fromAccountId, referenceId, amountCents);
   }
 
   @Override
   public int getBalance() {
-    return balance;
+    return batcher.getBalance();
   }
 
   @Override
   public int getCount() {
-    return count;
+    return batcher.getCount();
+  }
+
+  @Override
+  public List<WithdrawalResult> getFailedWithdrawals() {
+    return batcher.getFailedWithdrawals();
   }
 }
@@ -0,0 +1,81 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneybatch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * State that {@link AccountTransferWorkflowImpl} carries over when it continues as new. Contains
+ * the batch accumulated so far, the deduplication window, the withdrawals that were received
+ * while the previous run was handing off and the recent failed withdrawals.
+ */
+public final class BatchState {
+  private int balance;
+  private int count;
+  private long batchStartedAtMillis;
+  private byte[] references;
+  private List<Withdrawal> pendingWithdrawals;
+  private List<WithdrawalResult> failedWithdrawals;
+
+  public BatchState(
+      int balance,
+      int count,
+      long batchStartedAtMillis,
+      byte[] references,
+      List<Withdrawal> pendingWithdrawals,
+      List<WithdrawalResult> failedWithdrawals) {
+    this.balance = balance;
+    this.count = count;
+    this.batchStartedAtMillis = batchStartedAtMillis;
+    this.references = references;
+    this.pendingWithdrawals = pendingWithdrawals;
+    this.failedWithdrawals = failedWithdrawals;
+  }
+
+  /** Jackson needs it */
+  public BatchState() {}
+
+  public int getBalance() {
+    return balance;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  /** @return workflow time of the first withdrawal of the batch */
+  public long getBatchStartedAtMillis() {
+    return batchStartedAtMillis;
+  }
+
+  /** @return {@link ReferenceWindow#snapshot()} of the previous run */
+  public byte[] getReferences() {
+    return references;
+  }
+
+  public List<Withdrawal> getPendingWithdrawals() {
+    return pendingWithdrawals == null ? new ArrayList<>() : pendingWithdrawals;
+  }
+
+  public List<WithdrawalResult> getFailedWithdrawals() {
+    return failedWithdrawals == null ? new ArrayList<>() : failedWithdrawals;
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneybatch;
+
+import java.time.Duration;
+
+/**
+ * Decides when {@link AccountTransferWorkflow} deposits the withdrawals accumulated so far. A
+ * deposit happens as soon as any of the limits is reached. A limit of zero is disabled.
+ */
+public final class FlushPolicy {
+  private int maxCount;
+  private int maxAmountCents;
+  private long maxWaitMillis;
+
+  /**
+   * @param maxCount number of withdrawals per deposit
+   * @param maxAmountCents amount that triggers a deposit once the batch reaches it
+   * @param maxWait time after the first withdrawal of a batch at which it is deposited regardless
+   *     of its size
+   */
+  public FlushPolicy(int maxCount, int maxAmountCents, Duration maxWait) {
+    if (maxCount < 0 || maxAmountCents < 0 || maxWait.isNegative()) {
+      throw new IllegalArgumentException("negative limit");
+    }
+    if (maxCount == 0 && maxAmountCents == 0 && maxWait.isZero()) {
+      throw new IllegalArgumentException("at least one limit must be set");
+    }
+    this.maxCount = maxCount;
+    this.maxAmountCents = maxAmountCents;
+    this.maxWaitMillis = maxWait.toMillis();
+  }
+
+  /** Jackson needs it */
+  public FlushPolicy() {}
+
+  public int getMaxCount() {
+    return maxCount;
+  }
+
+  public int getMaxAmountCents() {
+    return maxAmountCents;
+  }
+
+  public long getMaxWaitMillis() {
+    return maxWaitMillis;
+  }
+
+  /**
+   * Policy of each of the shards that feed a {@link AccountAggregatorWorkflow} using this policy.
+   * Count and amount limits are divided between the shards, so the aggregated batch reaches them
+   * at about the same time. Shards wait at most half the time, leaving the other half to the
+   * aggregator.
+   */
+  FlushPolicy forShards(int shards) {
+    FlushPolicy result = new FlushPolicy();
+    result.maxCount = divideRoundingUp(maxCount, shards);
+    result.maxAmountCents = divideRoundingUp(maxAmountCents, shards);
+    result.maxWaitMillis = maxWaitMillis / 2;
+    if (result.maxWaitMillis == 0 && maxWaitMillis > 0) {
+      result.maxWaitMillis = 1;
+    }
+    return result;
+  }
+
+  private static int divideRoundingUp(int limit, int shards) {
+    return (int) ((limit + (long) shards - 1) / shards);
+  }
+
+  /** @return true if a batch of this size must be deposited right away */
+  boolean isFull(int count, int amountCents) {
+    return (maxCount > 0 && count >= maxCount)
+        || (maxAmountCents > 0 && amountCents >= maxAmountCents);
+  }
+}
@@ -0,0 +1,297 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneybatch;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * Bounded set of recently seen transfer references used to deduplicate withdraw signals.
+ *
+ * <p>References are kept in arrival order in a ring buffer and are evicted when the window is full
+ * or when they become older than the retention period, whichever happens first. References in the
+ * canonical {@link java.util.UUID#toString()} form are stored as a pair of primitive longs. Any
+ * other reference is reduced to its 128 bit murmur3 hash, so no String objects are retained.
+ *
+ * <p>The window never reads the clock itself. Workflow code must pass {@link
+ * io.temporal.workflow.Workflow#currentTimeMillis()} to keep it deterministic on replay.
+ */
+public final class ReferenceWindow {
+
+  private static final int INITIAL_SLOTS = 64;
+
+  // Marks a ring buffer slot whose reference was removed. Such slots are skipped on eviction.
+  private static final long REMOVED = Long.MIN_VALUE;
+
+  private final int capacity;
+  private final long retentionMillis;
+
+  // Ring buffer of references in arrival order. Slot head is the oldest one. The arrays grow on
+  // demand up to capacity so that a mostly idle window stays small.
+  private long[] mostSigBits;
+  private long[] leastSigBits;
+  private long[] addedAt;
+  private int head;
+  private int size;
+  private int removed;
+
+  // Open addressing index over the ring buffer. Holds slot + 1, zero marks an empty bucket.
+  private int[] index;
+  private int mask;
+
+  // Key of the reference passed to the last add or remove call.
+  private long keyMsb;
+  private long keyLsb;
+
+  public ReferenceWindow(int capacity, Duration retention) {
+    if (capacity <= 0 || capacity > 1 << 28) {
+      throw new IllegalArgumentException("capacity out of range: " + capacity);
+    }
+    if (retention.isNegative() || retention.isZero()) {
+      throw new IllegalArgumentException("retention must be positive: " + retention);
+    }
+    this.capacity = capacity;
+    this.retentionMillis = retention.toMillis();
+    allocate(Math.min(capacity, INITIAL_SLOTS));
+  }
+
+  /**
+   * Records a reference.
+   *
+   * @param referenceId reference to record
+   * @param nowMillis current time, must come from Workflow.currentTimeMillis() in workflow code
+   * @return false if the reference is already in the window
+   */
+  public boolean add(String referenceId, long nowMillis) {
+    evictExpired(nowMillis);
+    toKey(referenceId);
+    if (find(keyMsb, keyLsb) >= 0) {
+      return false;
+    }
+    if (size == capacity) {
+      evictOldest();
+    } else if (size == mostSigBits.length) {
+      grow();
+    }
+    insert((head + size) % mostSigBits.length, keyMsb, keyLsb, nowMillis);
+    size++;
+    return true;
+  }
+
+  /**
+   * Forgets a reference, so that it is accepted again by {@link #add}.
+   *
+   * @return false if the reference is not in the window
+   */
+  public boolean remove(String referenceId) {
+    toKey(referenceId);
+    int bucket = find(keyMsb, keyLsb);
+    if (bucket < 0) {
+      return false;
+    }
+    addedAt[index[bucket] - 1] = REMOVED;
+    removed++;
+    deleteBucket(bucket);
+    return true;
+  }
+
+  /** @return number of references currently in the window */
+  public int size() {
+    return size - removed;
+  }
+
+  /**
+   * Serializes the references in the window, oldest first, 24 bytes per reference. Used to carry
+   * the window over to a new workflow run.
+   */
+  public byte[] snapshot() {
+    ByteBuffer buffer = ByteBuffer.allocate(size() * 24);
+    for (int i = 0; i < size; i++) {
+      int slot = (head + i) % mostSigBits.length;
+      if (addedAt[slot] == REMOVED) {
+        continue;
+      }
+      buffer.putLong(mostSigBits[slot]).putLong(leastSigBits[slot]).putLong(addedAt[slot]);
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Creates a window that contains references from a {@link #snapshot()}. If the snapshot holds
+   * more references than the capacity only the newest ones are kept.
+   */
+  public static ReferenceWindow restore(int capacity, Duration retention, byte[] snapshot) {
+    ReferenceWindow window = new ReferenceWindow(capacity, retention);
+    ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+    int entries = snapshot.length / 24;
+    buffer.position(Math.max(0, entries - capacity) * 24);
+    while (buffer.remaining() >= 24) {
+      if (window.size == window.mostSigBits.length) {
+        window.grow();
+      }
+      window.insert(window.size, buffer.getLong(), buffer.getLong(), buffer.getLong());
+      window.size++;
+    }
+    return window;
+  }
+
+  private void insert(int slot, long msb, long lsb, long time) {
+    mostSigBits[slot] = msb;
+    leastSigBits[slot] = lsb;
+    addedAt[slot] = time;
+    if (time == REMOVED) {
+      return;
+    }
+    int bucket = bucket(msb, lsb);
+    while (index[bucket] != 0) {
+      bucket = (bucket + 1) & mask;
+    }
+    index[bucket] = slot + 1;
+  }
+
+  private void allocate(int slots) {
+    mostSigBits = new long[slots];
+    leastSigBits = new long[slots];
+    addedAt = new long[slots];
+    // Keeps the index load factor at or below one half.
+    int buckets = Integer.highestOneBit(slots) << 2;
+    index = new int[buckets];
+    mask = buckets - 1;
+  }
+
+  private void grow() {
+    long[] oldMsb = mostSigBits;
+    long[] oldLsb = leastSigBits;
+    long[] oldAddedAt = addedAt;
+    allocate((int) Math.min(capacity, 2L * oldMsb.length));
+    for (int i = 0; i < size; i++) {
+      int slot = (head + i) % oldMsb.length;
+      insert(i, oldMsb[slot], oldLsb[slot], oldAddedAt[slot]);
+    }
+    head = 0;
+  }
+
+  private void evictExpired(long nowMillis) {
+    long cutoff = nowMillis - retentionMillis;
+    while (size > 0 && addedAt[head] <= cutoff) {
+      evictOldest();
+    }
+  }
+
+  private void evictOldest() {
+    if (addedAt[head] == REMOVED) {
+      removed--;
+    } else {
+      deleteBucket(find(mostSigBits[head], leastSigBits[head]));
+    }
+    head = (head + 1) % mostSigBits.length;
+    size--;
+  }
+
+  private void deleteBucket(int bucket) {
+    // Backward shift deletion keeps probe sequences intact without tombstones.
+    int free = bucket;
+    int next = bucket;
+    while (true) {
+      next = (next + 1) & mask;
+      int entry = index[next];
+      if (entry == 0) {
+        break;
+      }
+      int home = bucket(mostSigBits[entry - 1], leastSigBits[entry - 1]);
+      boolean stays = free <= next ? free < home && home <= next : free < home || home <= next;
+      if (!stays) {
+        index[free] = entry;
+        free = next;
+      }
+    }
+    index[free] = 0;
+  }
+
+  /** @return index bucket holding the reference or -1 if it is not in the window */
+  private int find(long msb, long lsb) {
+    int bucket = bucket(msb, lsb);
+    while (true) {
+      int entry = index[bucket];
+      if (entry == 0) {
+        return -1;
+      }
+      if (mostSigBits[entry - 1] == msb && leastSigBits[entry - 1] == lsb) {
+        return bucket;
+      }
+      bucket = (bucket + 1) & mask;
+    }
+  }
+
+  private int bucket(long msb, long lsb) {
+    long h = (msb ^ Long.rotateLeft(lsb, 32)) * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & mask;
+  }
+
+  private void toKey(String referenceId) {
+    if (isCanonicalUuid(referenceId)) {
+      keyMsb = parseHex(referenceId, 0, 8) << 32 | parseHex(referenceId, 9, 13) << 16;
+      keyMsb |= parseHex(referenceId, 14, 18);
+      keyLsb = parseHex(referenceId, 19, 23) << 48 | parseHex(referenceId, 24, 36);
+    } else {
+      HashCode hash = Hashing.murmur3_128().hashString(referenceId, StandardCharsets.UTF_8);
+      byte[] bytes = hash.asBytes();
+      keyMsb = toLong(bytes, 0);
+      keyLsb = toLong(bytes, 8);
+    }
+  }
+
+  /** Only the lower case form produced by UUID.toString() is parsed, anything else is hashed. */
+  private static boolean isCanonicalUuid(String s) {
+    if (s.length() != 36) {
+      return false;
+    }
+    for (int i = 0; i < 36; i++) {
+      char c = s.charAt(i);
+      if (i == 8 || i == 13 || i == 18 || i == 23) {
+        if (c != '-') {
+          return false;
+        }
+      } else if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long parseHex(String s, int from, int to) {
+    long result = 0;
+    for (int i = from; i < to; i++) {
+      result = result << 4 | Character.digit(s.charAt(i), 16);
+    }
+    return result;
+  }
+
+  private static long toLong(byte[] bytes, int offset) {
+    long result = 0;
+    for (int i = offset; i < offset + 8; i++) {
+      result = result << 8 | (bytes[i] & 0xFF);
+    }
+    return result;
+  }
+}
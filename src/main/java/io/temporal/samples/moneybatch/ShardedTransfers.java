@@ -0,0 +1,82 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneybatch;
+
+import io.temporal.client.BatchRequest;
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+
+/**
+ * Requests transfers in the sharded mode. A single workflow per destination account limits the
+ * transfers to that account to the signal rate a single workflow sustains. In the sharded mode the
+ * withdrawals to a destination account are spread over a fixed number of {@link
+ * AccountShardWorkflow}s by hashing the source account. The shards report their batches to an
+ * {@link AccountAggregatorWorkflow}, which deposits them.
+ *
+ * <p>All the withdrawals from a source account go to the same shard. A retried request, which
+ * repeats both the source account and the reference, is therefore deduplicated as in the unsharded
+ * mode. Reusing a reference with a different source account is not detected. The number of shards
+ * of a destination account must not change while its shards are running.
+ */
+public final class ShardedTransfers {
+
+  private ShardedTransfers() {}
+
+  public static void requestTransfer(
+      WorkflowClient client,
+      FlushPolicy policy,
+      int shards,
+      String fromAccountId,
+      String toAccountId,
+      String referenceId,
+      int amountCents) {
+    WorkflowOptions options =
+        WorkflowOptions.newBuilder()
+            .setTaskQueue(AccountActivityWorker.TASK_QUEUE)
+            .setWorkflowId(shardWorkflowId(toAccountId, shardOf(fromAccountId, shards)))
+            .build();
+    AccountShardWorkflow shard = client.newWorkflowStub(AccountShardWorkflow.class, options);
+    BatchRequest request = client.newSignalWithStartRequest();
+    request.add(shard::collect, toAccountId, shards, policy, null);
+    request.add(shard::withdraw, fromAccountId, referenceId, amountCents);
+    client.signalWithStart(request);
+  }
+
+  /** String.hashCode is specified, so every client picks the same shard. */
+  static int shardOf(String fromAccountId, int shards) {
+    return Math.floorMod(fromAccountId.hashCode(), shards);
+  }
+
+  static String shardWorkflowId(String toAccountId, int shard) {
+    return toAccountId + "/shard-" + shard;
+  }
+
+  /** Differs from the id of the unsharded {@link AccountTransferWorkflow} of the same account. */
+  static String aggregatorWorkflowId(String toAccountId) {
+    return toAccountId + "/aggregator";
+  }
+
+  static WorkflowOptions aggregatorOptions(String toAccountId) {
+    return WorkflowOptions.newBuilder()
+        .setTaskQueue(AccountActivityWorker.TASK_QUEUE)
+        .setWorkflowId(aggregatorWorkflowId(toAccountId))
+        .build();
+  }
+}
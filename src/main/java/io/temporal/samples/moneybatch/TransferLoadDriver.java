@@ -0,0 +1,203 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneybatch;
+
+import io.temporal.client.BatchRequest;
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates signal with start load against {@link AccountTransferWorkflow}. Transfers between
+ * randomly chosen source and destination accounts are requested at a target rate, with up to a
+ * configured number of requests in flight at once.
+ *
+ * <p>Latency is measured from the time a request was due according to the target rate rather than
+ * from the time it was actually sent. A driver that falls behind therefore reports the delay
+ * instead of hiding it.
+ */
+public class TransferLoadDriver {
+
+  private final WorkflowClient client;
+  private final FlushPolicy policy;
+  private final int sourceAccounts;
+  private final int destinationAccounts;
+  private final int maxInFlight;
+  private final double requestsPerSecond;
+  private final int shards;
+
+  /**
+   * @param client client connected to the service that hosts the workers
+   * @param policy flush policy passed to the workflows started by the requests
+   * @param sourceAccounts number of accounts to withdraw from
+   * @param destinationAccounts number of accounts to deposit to, that is of batching workflows
+   * @param maxInFlight maximum number of requests waiting for a reply
+   * @param requestsPerSecond target rate, zero for as fast as maxInFlight allows
+   */
+  public TransferLoadDriver(
+      WorkflowClient client,
+      FlushPolicy policy,
+      int sourceAccounts,
+      int destinationAccounts,
+      int maxInFlight,
+      double requestsPerSecond) {
+    this(client, policy, sourceAccounts, destinationAccounts, maxInFlight, requestsPerSecond, 1);
+  }
+
+  /**
+   * @param shards number of shard workflows per destination account, one to use a single {@link
+   *     AccountTransferWorkflow} instead
+   * @see ShardedTransfers
+   */
+  public TransferLoadDriver(
+      WorkflowClient client,
+      FlushPolicy policy,
+      int sourceAccounts,
+      int destinationAccounts,
+      int maxInFlight,
+      double requestsPerSecond,
+      int shards) {
+    if (shards < 1) {
+      throw new IllegalArgumentException("shards must be positive: " + shards);
+    }
+    this.client = client;
+    this.policy = policy;
+    this.sourceAccounts = sourceAccounts;
+    this.destinationAccounts = destinationAccounts;
+    this.maxInFlight = maxInFlight;
+    this.requestsPerSecond = requestsPerSecond;
+    this.shards = shards;
+  }
+
+  /** Sends the given number of requests and waits for all of them to complete. */
+  public Report run(int requests) throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(maxInFlight);
+    Semaphore inFlight = new Semaphore(maxInFlight);
+    long[] latencies = new long[requests];
+    AtomicInteger errors = new AtomicInteger();
+    Random random = new Random();
+    long intervalNanos = requestsPerSecond > 0 ? (long) (1e9 / requestsPerSecond) : 0;
+    long start = System.nanoTime();
+    try {
+      for (int i = 0; i < requests; i++) {
+        long due = start + i * intervalNanos;
+        long delay = due - System.nanoTime();
+        if (delay > 0) {
+          TimeUnit.NANOSECONDS.sleep(delay);
+        }
+        inFlight.acquire();
+        // Without a target rate a request is due once it gets an in flight slot.
+        long sentAt = intervalNanos > 0 ? due : System.nanoTime();
+        String from = "account" + random.nextInt(sourceAccounts);
+        String to = "account" + (sourceAccounts + random.nextInt(destinationAccounts));
+        int amountCents = (random.nextInt(5) + 1) * 25;
+        int request = i;
+        executor.execute(
+            () -> {
+              try {
+                requestTransfer(from, to, UUID.randomUUID().toString(), amountCents);
+              } catch (RuntimeException e) {
+                errors.incrementAndGet();
+              } finally {
+                latencies[request] = System.nanoTime() - sentAt;
+                inFlight.release();
+              }
+            });
+      }
+      // Waits for the requests still in flight.
+      inFlight.acquire(maxInFlight);
+    } finally {
+      executor.shutdown();
+    }
+    return new Report(errors.get(), System.nanoTime() - start, latencies);
+  }
+
+  private void requestTransfer(String from, String to, String reference, int amountCents) {
+    if (shards > 1) {
+      ShardedTransfers.requestTransfer(client, policy, shards, from, to, reference, amountCents);
+      return;
+    }
+    WorkflowOptions options =
+        WorkflowOptions.newBuilder()
+            .setTaskQueue(AccountActivityWorker.TASK_QUEUE)
+            .setWorkflowId(to)
+            .build();
+    AccountTransferWorkflow transferWorkflow =
+        client.newWorkflowStub(AccountTransferWorkflow.class, options);
+    BatchRequest request = client.newSignalWithStartRequest();
+    request.add(transferWorkflow::deposit, to, policy, null);
+    request.add(transferWorkflow::withdraw, from, reference, amountCents);
+    client.signalWithStart(request);
+  }
+
+  /** Throughput and latency percentiles of a {@link #run(int)}. */
+  public static final class Report {
+    private final int errors;
+    private final long elapsedNanos;
+    private final long[] sortedLatencies;
+
+    Report(int errors, long elapsedNanos, long[] latencies) {
+      this.errors = errors;
+      this.elapsedNanos = elapsedNanos;
+      this.sortedLatencies = latencies.clone();
+      Arrays.sort(sortedLatencies);
+    }
+
+    public int getRequests() {
+      return sortedLatencies.length;
+    }
+
+    public int getErrors() {
+      return errors;
+    }
+
+    public double getRequestsPerSecond() {
+      return sortedLatencies.length * 1e9 / elapsedNanos;
+    }
+
+    /** @param percentile for example 99.9 */
+    public double getLatencyMillis(double percentile) {
+      if (sortedLatencies.length == 0) {
+        return 0;
+      }
+      int rank = (int) Math.ceil(percentile / 100 * sortedLatencies.length) - 1;
+      return sortedLatencies[Math.max(0, rank)] / 1e6;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%d requests, %d errors, %.1f requests/s, latency p50=%.2fms p99=%.2fms p999=%.2fms",
+          getRequests(),
+          errors,
+          getRequestsPerSecond(),
+          getLatencyMillis(50),
+          getLatencyMillis(99),
+          getLatencyMillis(99.9));
+    }
+  }
+}
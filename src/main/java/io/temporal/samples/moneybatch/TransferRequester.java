@@ -23,21 +23,42 @@ import io.temporal.client.BatchRequest;
 import io.temporal.client.WorkflowClient;
 import io.temporal.client.WorkflowOptions;
 import io.temporal.serviceclient.WorkflowServiceStubs;
+import java.time.Duration;
 import java.util.Random;
 import java.util.UUID;
 
+/**
+ * Requests a single transfer. Pass "load" followed by the number of requests, the target rate per
+ * second, the maximum number of requests in flight, the number of source accounts, the number of
+ * destination accounts and optionally the number of shards per destination account to run {@link
+ * TransferLoadDriver} instead.
+ */
 public class TransferRequester {
 
-  /** Number of withdrawals to batch */
-  public static final int BATCH_SIZE = 3;
+  /** Deposit once per three withdrawals or ten minutes after the first one of a batch. */
+  public static final FlushPolicy FLUSH_POLICY = new FlushPolicy(3, 0, Duration.ofMinutes(10));
 
   @SuppressWarnings("CatchAndPrintStackTrace")
-  public static void main(String[] args) {
+  public static void main(String[] args) throws InterruptedException {
     String reference = UUID.randomUUID().toString();
     int amountCents = (new Random().nextInt(5) + 1) * 25;
     WorkflowServiceStubs service = WorkflowServiceStubs.newInstance();
     WorkflowClient workflowClient = WorkflowClient.newInstance(service);
 
+    if ((args.length == 6 || args.length == 7) && args[0].equals("load")) {
+      TransferLoadDriver driver =
+          new TransferLoadDriver(
+              workflowClient,
+              FLUSH_POLICY,
+              Integer.parseInt(args[4]),
+              Integer.parseInt(args[5]),
+              Integer.parseInt(args[3]),
+              Double.parseDouble(args[2]),
+              args.length == 7 ? Integer.parseInt(args[6]) : 1);
+      System.out.println(driver.run(Integer.parseInt(args[1])));
+      System.exit(0);
+    }
+
     String from = "account1";
     String to = "account2";
     WorkflowOptions options =
@@ -49,7 +70,7 @@ public class TransferRequester {
         workflowClient.newWorkflowStub(AccountTransferWorkflow.class, options);
     // Signal with start sends a signal to a workflow starting it if not yet running
     BatchRequest request = workflowClient.newSignalWithStartRequest();
-    request.add(transferWorkflow::deposit, to, BATCH_SIZE);
+    request.add(transferWorkflow::deposit, to, FLUSH_POLICY, null);
     request.add(transferWorkflow::withdraw, from, reference, amountCents);
     workflowClient.signalWithStart(request);
 
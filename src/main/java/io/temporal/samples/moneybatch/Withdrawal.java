@@ -0,0 +1,48 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneybatch;
+
+/** Withdrawal requested through the {@link AccountTransferWorkflow#withdraw} signal. */
+public final class Withdrawal {
+  private String fromAccountId;
+  private String referenceId;
+  private int amountCents;
+
+  public Withdrawal(String fromAccountId, String referenceId, int amountCents) {
+    this.fromAccountId = fromAccountId;
+    this.referenceId = referenceId;
+    this.amountCents = amountCents;
+  }
+
+  /** Jackson needs it */
+  public Withdrawal() {}
+
+  public String getFromAccountId() {
+    return fromAccountId;
+  }
+
+  public String getReferenceId() {
+    return referenceId;
+  }
+
+  public int getAmountCents() {
+    return amountCents;
+  }
+}
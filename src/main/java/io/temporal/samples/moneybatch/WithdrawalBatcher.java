@@ -0,0 +1,210 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneybatch;
+
+import io.temporal.workflow.Functions;
+import io.temporal.workflow.Workflow;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+
+/**
+ * Workflow side helper that accumulates withdraw signals into batches according to a {@link
+ * FlushPolicy}.
+ *
+ * <p>Withdraw signals are only deduplicated and queued by {@link #withdraw}. The workflow thread
+ * drains the queue in {@link #run} and executes all the withdrawals received since the previous
+ * drain through a single {@link Account#withdrawBatch} activity, instead of scheduling an activity
+ * per signal.
+ *
+ * <p>Each signal and activity grows the history of the run. {@link #run} returns once the run
+ * handled maxSignalsPerRun signals or added about maxEventsPerRun events. The workflow is expected
+ * to continue as new passing {@link #getState()}, which contains the batch, the deduplication
+ * window, the queued withdrawals and the recent failures.
+ *
+ * <p>A failed withdrawal is not added to the batch. Its reference is kept in {@link
+ * #getFailedWithdrawals()} until a withdrawal with the same reference succeeds, so the client that
+ * signalled it can find out and retry.
+ */
+final class WithdrawalBatcher {
+
+  /**
+   * Maximum number of withdraw references remembered for deduplication. Each one takes 24 bytes of
+   * the continue as new input.
+   */
+  static final int MAX_REFERENCES = 20_000;
+
+  /** A retried withdraw signal older than this is no longer detected as a duplicate. */
+  static final Duration REFERENCE_RETENTION = Duration.ofDays(7);
+
+  /** Upper bound on the withdrawals passed to a single withdrawBatch call. */
+  static final int MAX_WITHDRAWALS_PER_ACTIVITY = 1_000;
+
+  /** Maximum number of failed withdrawals reported. Older failures are dropped first. */
+  static final int MAX_FAILED_WITHDRAWALS = 100;
+
+  // Upper bounds of history events added by a signal and by an activity, including the workflow
+  // task each of them causes.
+  private static final int EVENTS_PER_SIGNAL = 4;
+  private static final int EVENTS_PER_ACTIVITY = 6;
+
+  private final Logger logger = Workflow.getLogger(WithdrawalBatcher.class);
+
+  private final Account account;
+  private final int maxSignalsPerRun;
+  private final int maxEventsPerRun;
+
+  private ReferenceWindow references = new ReferenceWindow(MAX_REFERENCES, REFERENCE_RETENTION);
+  private final List<Withdrawal> pending = new ArrayList<>();
+  private final List<WithdrawalResult> failed = new ArrayList<>();
+  private int balance;
+  private int count;
+  private long batchStartedAt;
+
+  private int signalsInRun;
+  private int eventsInRun;
+
+  WithdrawalBatcher(Account account, int maxSignalsPerRun, int maxEventsPerRun) {
+    this.account = account;
+    this.maxSignalsPerRun = maxSignalsPerRun;
+    this.maxEventsPerRun = maxEventsPerRun;
+  }
+
+  /**
+   * Restores the state passed by the previous run. Withdrawals that were signalled before this
+   * call are deduplicated again against the restored window.
+   */
+  void restore(BatchState state) {
+    if (state == null) {
+      return;
+    }
+    balance = state.getBalance();
+    count = state.getCount();
+    batchStartedAt = state.getBatchStartedAtMillis();
+    references =
+        ReferenceWindow.restore(MAX_REFERENCES, REFERENCE_RETENTION, state.getReferences());
+    failed.clear();
+    failed.addAll(state.getFailedWithdrawals());
+    List<Withdrawal> received = new ArrayList<>(pending);
+    pending.clear();
+    pending.addAll(state.getPendingWithdrawals());
+    for (Withdrawal withdrawal : received) {
+      if (references.add(withdrawal.getReferenceId(), Workflow.currentTimeMillis())) {
+        pending.add(withdrawal);
+      }
+    }
+  }
+
+  /** Called from the withdraw signal handler. */
+  void withdraw(String fromAccountId, String referenceId, int amountCents) {
+    signalsInRun++;
+    eventsInRun += EVENTS_PER_SIGNAL;
+    if (!references.add(referenceId, Workflow.currentTimeMillis())) {
+      return; // duplicate
+    }
+    pending.add(new Withdrawal(fromAccountId, referenceId, amountCents));
+  }
+
+  /**
+   * Executes withdrawals and passes each batch that the policy considers complete to flush, until
+   * the run is full.
+   *
+   * @param flush receives the amount in cents and the number of withdrawals of a batch. It is
+   *     expected to execute a single activity.
+   */
+  void run(FlushPolicy policy, Functions.Proc2<Integer, Integer> flush) {
+    long maxWait = policy.getMaxWaitMillis();
+    while (!isRunFull()) {
+      if (!pending.isEmpty()) {
+        withdrawPending();
+      }
+      long untilDeadline =
+          maxWait == 0 ? Long.MAX_VALUE : batchStartedAt + maxWait - Workflow.currentTimeMillis();
+      if (count > 0 && (policy.isFull(count, balance) || untilDeadline <= 0)) {
+        int amountCents = balance;
+        int withdrawals = count;
+        balance = 0;
+        count = 0;
+        eventsInRun += EVENTS_PER_ACTIVITY;
+        flush.apply(amountCents, withdrawals);
+        continue;
+      }
+      if (count > 0 && maxWait > 0) {
+        Workflow.await(Duration.ofMillis(untilDeadline), () -> !pending.isEmpty() || isRunFull());
+      } else {
+        Workflow.await(() -> !pending.isEmpty() || isRunFull());
+      }
+    }
+  }
+
+  private void withdrawPending() {
+    List<Withdrawal> drained =
+        pending.subList(0, Math.min(pending.size(), MAX_WITHDRAWALS_PER_ACTIVITY));
+    List<Withdrawal> withdrawals = new ArrayList<>(drained);
+    drained.clear();
+    eventsInRun += EVENTS_PER_ACTIVITY;
+    List<WithdrawalResult> results = account.withdrawBatch(withdrawals);
+    for (int i = 0; i < withdrawals.size(); i++) {
+      Withdrawal withdrawal = withdrawals.get(i);
+      WithdrawalResult result = results.get(i);
+      String referenceId = withdrawal.getReferenceId();
+      if (!failed.isEmpty()) {
+        failed.removeIf(f -> f.getReferenceId().equals(referenceId));
+      }
+      if (!result.isSucceeded()) {
+        // Lets the client retry the withdrawal with the same reference.
+        references.remove(referenceId);
+        if (failed.size() == MAX_FAILED_WITHDRAWALS) {
+          failed.remove(0);
+        }
+        failed.add(result);
+        logger.warn("Withdrawal " + referenceId + " failed: " + result.getFailure());
+        continue;
+      }
+      if (count == 0) {
+        batchStartedAt = Workflow.currentTimeMillis();
+      }
+      balance += withdrawal.getAmountCents();
+      count++;
+    }
+  }
+
+  private boolean isRunFull() {
+    return signalsInRun >= maxSignalsPerRun || eventsInRun >= maxEventsPerRun;
+  }
+
+  BatchState getState() {
+    return new BatchState(balance, count, batchStartedAt, references.snapshot(), pending, failed);
+  }
+
+  int getBalance() {
+    return balance;
+  }
+
+  int getCount() {
+    return count;
+  }
+
+  /** @return failed withdrawals that were not retried successfully, oldest first */
+  List<WithdrawalResult> getFailedWithdrawals() {
+    return new ArrayList<>(failed);
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneybatch;
+
+/** Outcome of a single withdrawal of {@link Account#withdrawBatch}. */
+public final class WithdrawalResult {
+  private String referenceId;
+  private boolean succeeded;
+  private String failure;
+
+  public WithdrawalResult(String referenceId, boolean succeeded, String failure) {
+    this.referenceId = referenceId;
+    this.succeeded = succeeded;
+    this.failure = failure;
+  }
+
+  /** Jackson needs it */
+  public WithdrawalResult() {}
+
+  public String getReferenceId() {
+    return referenceId;
+  }
+
+  public boolean isSucceeded() {
+    return succeeded;
+  }
+
+  /** @return failure message, null if the withdrawal succeeded */
+  public String getFailure() {
+    return failure;
+  }
+}
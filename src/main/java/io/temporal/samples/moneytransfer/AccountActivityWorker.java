@@ -23,13 +23,23 @@ import io.temporal.client.WorkflowClient;
 import io.temporal.serviceclient.WorkflowServiceStubs;
 import io.temporal.worker.Worker;
 import io.temporal.worker.WorkerFactory;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class AccountActivityWorker {
 
   static final String TASK_QUEUE = "AccountTransfer";
 
+  /** How long an account operation waits for others to share its journal commit. */
+  static final Duration COMMIT_WINDOW = Duration.ofMillis(1);
+
   @SuppressWarnings("CatchAndPrintStackTrace")
-  public static void main(String[] args) {
+  public static void main(String[] args) throws IOException {
     // gRPC stubs wrapper that talks to the local docker instance of temporal service.
     WorkflowServiceStubs service = WorkflowServiceStubs.newInstance();
     // client that can be used to start and signal workflows
@@ -38,11 +48,31 @@ public class AccountActivityWorker {
     // worker factory that can be used to create workers for specific task queues
     WorkerFactory factory = WorkerFactory.newInstance(client);
     Worker worker = factory.newWorker(TASK_QUEUE);
-    Account account = new AccountImpl();
+    // Balances survive restarts of this worker. Pass a directory to keep them somewhere else.
+    Path directory =
+        args.length > 0
+            ? Paths.get(args[0])
+            : Paths.get(System.getProperty("java.io.tmpdir"), "moneytransfer-ledger");
+    Ledger ledger = Ledger.open(directory, AccountImpl.OPENING_BALANCE_CENTS, COMMIT_WINDOW);
+    // Bounds the journal replayed on the next start.
+    ScheduledExecutorService snapshots = Executors.newSingleThreadScheduledExecutor();
+    snapshots.scheduleWithFixedDelay(
+        () -> {
+          try {
+            ledger.snapshot();
+          } catch (IOException e) {
+            e.printStackTrace();
+          }
+        },
+        1,
+        1,
+        TimeUnit.MINUTES);
+    Account account = new AccountImpl(ledger);
     worker.registerActivitiesImplementations(account);
 
     // Start all workers created by this factory.
     factory.start();
-    System.out.println("Activity Worker started for task queue: " + TASK_QUEUE);
+    System.out.println(
+        "Activity Worker started for task queue: " + TASK_QUEUE + ", ledger in " + directory);
   }
 }
@@ -19,20 +19,46 @@
 
 package io.temporal.samples.moneytransfer;
 
+import io.temporal.failure.ApplicationFailure;
+
 public class AccountImpl implements Account {
 
+  /** Balance of an account before its first transfer. */
+  static final long OPENING_BALANCE_CENTS = 100_000;
+
+  /** Failure type of a withdrawal that exceeds the balance of the account. */
+  static final String INSUFFICIENT_FUNDS_FAILURE = "InsufficientFunds";
+
+  private final Ledger ledger;
+
+  public AccountImpl() {
+    this(new Ledger(OPENING_BALANCE_CENTS));
+  }
+
+  public AccountImpl(Ledger ledger) {
+    this.ledger = ledger;
+  }
+
   @Override
   public void withdraw(String accountId, String referenceId, int amountCents) {
+    long balance;
+    try {
+      balance = ledger.withdraw(accountId, referenceId, amountCents);
+    } catch (Ledger.InsufficientFundsException e) {
+      // Retries would fail the same way until a deposit comes, so the transfer fails instead.
+      throw ApplicationFailure.newNonRetryableFailure(e.getMessage(), INSUFFICIENT_FUNDS_FAILURE);
+    }
     System.out.printf(
-        "Withdraw to %s of %d cents requested. ReferenceId=%s\n",
-        accountId, amountCents, referenceId);
+        "Withdrew %d cents from %s, balance %d cents. ReferenceId=%s\n",
+        amountCents, accountId, balance, referenceId);
   }
 
   @Override
   public void deposit(String accountId, String referenceId, int amountCents) {
+    long balance = ledger.deposit(accountId, referenceId, amountCents);
     System.out.printf(
-        "Deposit to %s of %d cents requested. ReferenceId=%s\n",
-        accountId, amountCents, referenceId);
+        "Deposited %d cents to %s, balance %d cents. ReferenceId=%s\n",
+        amountCents, accountId, balance, referenceId);
     //    throw new RuntimeException("simulated");
   }
 }
@@ -39,7 +39,15 @@ public class AccountTransferWorker {
     // worker factory that can be used to create workers for specific task queues
     WorkerFactory factory = WorkerFactory.newInstance(client);
     Worker workerForCommonTaskQueue = factory.newWorker(TASK_QUEUE);
-    workerForCommonTaskQueue.registerWorkflowImplementationTypes(AccountTransferWorkflowImpl.class);
+    if (args.length > 0 && args[0].equals("local")) {
+      // Account calls run as local activities, so this worker executes them.
+      workerForCommonTaskQueue.addWorkflowImplementationFactory(
+          AccountTransferWorkflow.class, () -> new AccountTransferWorkflowImpl(true));
+      workerForCommonTaskQueue.registerActivitiesImplementations(new AccountImpl());
+    } else {
+      workerForCommonTaskQueue.registerWorkflowImplementationTypes(
+          AccountTransferWorkflowImpl.class);
+    }
     // Start all workers created by this factory.
     factory.start();
     System.out.println("Worker started for task queue: " + TASK_QUEUE);
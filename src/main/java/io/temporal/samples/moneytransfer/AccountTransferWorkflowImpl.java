@@ -20,14 +20,48 @@
 package io.temporal.samples.moneytransfer;
 
 import io.temporal.activity.ActivityOptions;
+import io.temporal.activity.LocalActivityOptions;
+import io.temporal.common.RetryOptions;
 import io.temporal.workflow.Workflow;
 import java.time.Duration;
 
 public class AccountTransferWorkflowImpl implements AccountTransferWorkflow {
 
+  // The service defaults, spelled out so that local activities retry the same way.
+  private static final RetryOptions RETRY_OPTIONS =
+      RetryOptions.newBuilder()
+          .setInitialInterval(Duration.ofSeconds(1))
+          .setBackoffCoefficient(2)
+          .setMaximumInterval(Duration.ofSeconds(100))
+          .build();
+
   private final ActivityOptions options =
-      ActivityOptions.newBuilder().setStartToCloseTimeout(Duration.ofSeconds(5)).build();
-  private final Account account = Workflow.newActivityStub(Account.class, options);
+      ActivityOptions.newBuilder()
+          .setStartToCloseTimeout(Duration.ofSeconds(5))
+          .setRetryOptions(RETRY_OPTIONS)
+          .build();
+  private final LocalActivityOptions localOptions =
+      LocalActivityOptions.newBuilder()
+          .setStartToCloseTimeout(Duration.ofSeconds(5))
+          .setRetryOptions(RETRY_OPTIONS)
+          .build();
+  private final Account account;
+
+  public AccountTransferWorkflowImpl() {
+    this(false);
+  }
+
+  /**
+   * @param localActivities execute the account calls as local activities. They skip the round
+   *     trips through the activity task queue and record a single marker event each, but the
+   *     workflow worker must host the {@link Account} implementation.
+   */
+  public AccountTransferWorkflowImpl(boolean localActivities) {
+    account =
+        localActivities
+            ? Workflow.newLocalActivityStub(Account.class, localOptions)
+            : Workflow.newActivityStub(Account.class, options);
+  }
 
   @Override
   public void transfer(
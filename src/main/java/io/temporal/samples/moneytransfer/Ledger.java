@@ -0,0 +1,518 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneytransfer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * Thread safe ledger of account balances, either in memory only or made durable by a {@link
+ * LedgerJournal} through {@link #open}.
+ *
+ * <p>Accounts are spread over a fixed number of stripes by the hash of their id. Each stripe owns
+ * the balances of its accounts and the operations applied to them, and is guarded by its own
+ * monitor. Operations on accounts of different stripes never wait for each other, so concurrent
+ * activity threads only contend when they touch accounts that share a stripe.
+ *
+ * <p>Every operation carries a reference id. An operation retried with the same reference id is
+ * applied only once. Withdrawals and deposits are tracked separately, so a transfer can use a
+ * single reference id for both of its sides. Applied operations are remembered for a retention
+ * period, a week by default, after which they are forgotten so that memory and snapshots don't
+ * grow with every reference ever seen. A retry that comes later than that is applied again, so
+ * the retention must exceed how long the activities of a transfer keep retrying.
+ *
+ * <p>A durable ledger journals each operation under the stripe lock and returns once the journal
+ * committed it, so a worker that restarts before the commit fails the activity and its retry
+ * applies the operation again. {@link #snapshot} writes the state to a file and starts a new
+ * journal segment. On startup the latest snapshot is loaded and the segments written after it are
+ * replayed.
+ */
+public final class Ledger implements Closeable {
+
+  public static final int DEFAULT_STRIPES = 256;
+
+  public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+
+  public static final Duration DEFAULT_RETENTION = Duration.ofDays(7);
+
+  /** Thrown when a withdrawal exceeds the balance of the account. */
+  public static final class InsufficientFundsException extends RuntimeException {
+    public InsufficientFundsException(String accountId, long balanceCents, long amountCents) {
+      super(
+          "Insufficient funds in "
+              + accountId
+              + ": balance "
+              + balanceCents
+              + " cents, withdrawal "
+              + amountCents
+              + " cents");
+    }
+  }
+
+  private static final class Operation {
+    private final String accountId;
+    private final long amountCents;
+    /** Journal position to wait for before acknowledging a retry. */
+    private final long journalPosition;
+
+    private final long appliedAtMillis;
+
+    private Operation(
+        String accountId, long amountCents, long journalPosition, long appliedAtMillis) {
+      this.accountId = accountId;
+      this.amountCents = amountCents;
+      this.journalPosition = journalPosition;
+      this.appliedAtMillis = appliedAtMillis;
+    }
+  }
+
+  private static final class Stripe {
+    private final Map<String, Long> balances = new HashMap<>();
+    // Applied operations by reference id, oldest first, so that expired ones are at the head.
+    private final Map<String, Operation> withdrawals = new LinkedHashMap<>();
+    private final Map<String, Operation> deposits = new LinkedHashMap<>();
+  }
+
+  private static final String SNAPSHOT_PREFIX = "snapshot-";
+  private static final String JOURNAL_PREFIX = "journal-";
+
+  private final long openingBalanceCents;
+  private final Stripe[] stripes;
+  private final long retentionMillis;
+  private final LongSupplier clock;
+
+  private Path directory;
+  private LedgerJournal journal;
+
+  public Ledger(long openingBalanceCents) {
+    this(openingBalanceCents, DEFAULT_STRIPES);
+  }
+
+  /**
+   * @param openingBalanceCents balance of an account before its first operation
+   * @param stripes number of independently locked partitions of the accounts
+   */
+  public Ledger(long openingBalanceCents, int stripes) {
+    this(openingBalanceCents, stripes, DEFAULT_RETENTION);
+  }
+
+  /** @param retention how long an applied operation is remembered to recognize its retries */
+  public Ledger(long openingBalanceCents, int stripes, Duration retention) {
+    this(openingBalanceCents, stripes, retention, System::currentTimeMillis);
+  }
+
+  Ledger(long openingBalanceCents, int stripes, Duration retention, LongSupplier clock) {
+    if (stripes < 1) {
+      throw new IllegalArgumentException("stripes must be positive: " + stripes);
+    }
+    if (retention.isNegative() || retention.isZero()) {
+      throw new IllegalArgumentException("retention must be positive: " + retention);
+    }
+    this.openingBalanceCents = openingBalanceCents;
+    this.retentionMillis = retention.toMillis();
+    this.clock = clock;
+    this.stripes = new Stripe[stripes];
+    for (int i = 0; i < stripes; i++) {
+      this.stripes[i] = new Stripe();
+    }
+  }
+
+  public static Ledger open(Path directory, long openingBalanceCents, Duration commitWindow)
+      throws IOException {
+    return open(
+        directory, openingBalanceCents, commitWindow, DEFAULT_STRIPES, DEFAULT_SEGMENT_BYTES);
+  }
+
+  /**
+   * Restores the ledger persisted in directory, or creates an empty one, and journals its
+   * operations there from now on.
+   *
+   * @param commitWindow how long the first operation of a group commit waits for others to join
+   * @param segmentBytes size of each memory-mapped journal segment
+   */
+  public static Ledger open(
+      Path directory,
+      long openingBalanceCents,
+      Duration commitWindow,
+      int stripes,
+      long segmentBytes)
+      throws IOException {
+    return open(
+        directory,
+        openingBalanceCents,
+        commitWindow,
+        stripes,
+        segmentBytes,
+        DEFAULT_RETENTION,
+        System::currentTimeMillis);
+  }
+
+  static Ledger open(
+      Path directory,
+      long openingBalanceCents,
+      Duration commitWindow,
+      int stripes,
+      long segmentBytes,
+      Duration retention,
+      LongSupplier clock)
+      throws IOException {
+    Files.createDirectories(directory);
+    Ledger ledger = new Ledger(openingBalanceCents, stripes, retention, clock);
+    long snapshot = latestGeneration(directory, SNAPSHOT_PREFIX);
+    if (snapshot >= 0) {
+      ledger.load(snapshotFile(directory, snapshot));
+    }
+    long last = Math.max(snapshot, latestGeneration(directory, JOURNAL_PREFIX));
+    for (long generation = Math.max(snapshot, 0); generation <= last; generation++) {
+      Path segment = LedgerJournal.segmentFile(directory, generation);
+      if (Files.exists(segment)) {
+        LedgerJournal.replay(segment, ledger::replay);
+      }
+    }
+    // Never appends to a replayed segment, whose tail may hold a torn record.
+    long generation = last + 1;
+    ledger.directory = directory;
+    ledger.journal = new LedgerJournal(directory, generation, segmentBytes, commitWindow);
+    ledger.writeSnapshot(generation, ledger.serialize());
+    return ledger;
+  }
+
+  /**
+   * @return balance after the withdrawal
+   * @throws InsufficientFundsException if the balance is lower than the amount
+   * @throws IllegalStateException if the reference id was used for a different withdrawal
+   */
+  public long withdraw(String accountId, String referenceId, long amountCents) {
+    checkAmount(amountCents);
+    Stripe stripe = stripeOf(accountId);
+    long balance;
+    long position;
+    synchronized (stripe) {
+      long now = clock.getAsLong();
+      expire(stripe, now);
+      balance = stripe.balances.getOrDefault(accountId, openingBalanceCents);
+      Operation applied = findApplied(stripe.withdrawals, accountId, referenceId, amountCents);
+      if (applied != null) {
+        position = applied.journalPosition;
+      } else {
+        if (balance < amountCents) {
+          throw new InsufficientFundsException(accountId, balance, amountCents);
+        }
+        balance -= amountCents;
+        position = append(LedgerJournal.WITHDRAW, accountId, referenceId, amountCents);
+        stripe.balances.put(accountId, balance);
+        stripe.withdrawals.put(referenceId, new Operation(accountId, amountCents, position, now));
+      }
+    }
+    awaitDurable(position);
+    return balance;
+  }
+
+  /**
+   * @return balance after the deposit
+   * @throws IllegalStateException if the reference id was used for a different deposit
+   */
+  public long deposit(String accountId, String referenceId, long amountCents) {
+    checkAmount(amountCents);
+    Stripe stripe = stripeOf(accountId);
+    long balance;
+    long position;
+    synchronized (stripe) {
+      long now = clock.getAsLong();
+      expire(stripe, now);
+      balance = stripe.balances.getOrDefault(accountId, openingBalanceCents);
+      Operation applied = findApplied(stripe.deposits, accountId, referenceId, amountCents);
+      if (applied != null) {
+        position = applied.journalPosition;
+      } else {
+        balance += amountCents;
+        position = append(LedgerJournal.DEPOSIT, accountId, referenceId, amountCents);
+        stripe.balances.put(accountId, balance);
+        stripe.deposits.put(referenceId, new Operation(accountId, amountCents, position, now));
+      }
+    }
+    awaitDurable(position);
+    return balance;
+  }
+
+  public long getBalance(String accountId) {
+    Stripe stripe = stripeOf(accountId);
+    synchronized (stripe) {
+      return stripe.balances.getOrDefault(accountId, openingBalanceCents);
+    }
+  }
+
+  /**
+   * Writes the state of a durable ledger to a snapshot and deletes the journal segments it covers,
+   * so that a restart replays only the operations that follow. Operations wait while the state is
+   * copied, but not while the snapshot is written.
+   */
+  public synchronized void snapshot() throws IOException {
+    if (journal == null) {
+      throw new IllegalStateException("in-memory ledger");
+    }
+    long[] generation = new long[1];
+    byte[][] state = new byte[1][];
+    withAllStripes(
+        0,
+        () -> {
+          try {
+            generation[0] = journal.rotate();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+          state[0] = serialize();
+        });
+    writeSnapshot(generation[0], state[0]);
+  }
+
+  /** Number of journal forces, which shows how many operations a group commit covers. */
+  public long getJournalForces() {
+    return journal == null ? 0 : journal.getForces();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (journal != null) {
+      journal.close();
+    }
+  }
+
+  private void withAllStripes(int index, Runnable action) {
+    if (index == stripes.length) {
+      action.run();
+      return;
+    }
+    synchronized (stripes[index]) {
+      withAllStripes(index + 1, action);
+    }
+  }
+
+  private long append(byte type, String accountId, String referenceId, long amountCents) {
+    return journal == null ? 0 : journal.append(type, accountId, referenceId, amountCents);
+  }
+
+  private void awaitDurable(long position) {
+    if (journal != null) {
+      journal.awaitDurable(position);
+    }
+  }
+
+  /**
+   * Applies a journaled operation. Operations already in the snapshot are skipped. The journal
+   * doesn't record when an operation was applied, so its retention restarts at the replay.
+   */
+  private void replay(byte type, String accountId, String referenceId, long amountCents) {
+    Stripe stripe = stripeOf(accountId);
+    Map<String, Operation> operations =
+        type == LedgerJournal.WITHDRAW ? stripe.withdrawals : stripe.deposits;
+    if (operations.containsKey(referenceId)) {
+      return;
+    }
+    long balance = stripe.balances.getOrDefault(accountId, openingBalanceCents);
+    balance += type == LedgerJournal.WITHDRAW ? -amountCents : amountCents;
+    stripe.balances.put(accountId, balance);
+    operations.put(referenceId, new Operation(accountId, amountCents, 0, clock.getAsLong()));
+  }
+
+  /** Forgets the operations of the stripe older than the retention. Called with it locked. */
+  private void expire(Stripe stripe, long nowMillis) {
+    expire(stripe.withdrawals, nowMillis - retentionMillis);
+    expire(stripe.deposits, nowMillis - retentionMillis);
+  }
+
+  private static void expire(Map<String, Operation> operations, long cutoffMillis) {
+    Iterator<Operation> oldest = operations.values().iterator();
+    while (oldest.hasNext() && oldest.next().appliedAtMillis <= cutoffMillis) {
+      oldest.remove();
+    }
+  }
+
+  /**
+   * Operations are recorded in the stripe of their account, where a retry finds them. Returns null
+   * if the operation was not applied yet.
+   */
+  private static Operation findApplied(
+      Map<String, Operation> operations, String accountId, String referenceId, long amountCents) {
+    Operation applied = operations.get(referenceId);
+    if (applied == null) {
+      return null;
+    }
+    if (!applied.accountId.equals(accountId) || applied.amountCents != amountCents) {
+      throw new IllegalStateException("Reference " + referenceId + " reused for another operation");
+    }
+    return applied;
+  }
+
+  private static void checkAmount(long amountCents) {
+    if (amountCents < 0) {
+      throw new IllegalArgumentException("negative amount: " + amountCents);
+    }
+  }
+
+  private Stripe stripeOf(String accountId) {
+    return stripes[Math.floorMod(accountId.hashCode(), stripes.length)];
+  }
+
+  /**
+   * Balances and the operations still retained followed by a CRC32 of them. Called with all the
+   * stripes locked.
+   */
+  private byte[] serialize() {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      long now = clock.getAsLong();
+      for (Stripe stripe : stripes) {
+        expire(stripe, now);
+        for (Map.Entry<String, Long> balance : stripe.balances.entrySet()) {
+          out.writeByte(0);
+          out.writeUTF(balance.getKey());
+          out.writeLong(balance.getValue());
+        }
+        writeOperations(out, LedgerJournal.WITHDRAW, stripe.withdrawals);
+        writeOperations(out, LedgerJournal.DEPOSIT, stripe.deposits);
+      }
+      out.writeByte(-1);
+      CRC32 crc = new CRC32();
+      crc.update(bytes.toByteArray());
+      out.writeLong(crc.getValue());
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void writeOperations(
+      DataOutputStream out, byte type, Map<String, Operation> operations) throws IOException {
+    for (Map.Entry<String, Operation> operation : operations.entrySet()) {
+      out.writeByte(type);
+      out.writeUTF(operation.getKey());
+      out.writeUTF(operation.getValue().accountId);
+      out.writeLong(operation.getValue().amountCents);
+      out.writeLong(operation.getValue().appliedAtMillis);
+    }
+  }
+
+  private void load(Path file) throws IOException {
+    byte[] bytes = Files.readAllBytes(file);
+    if (bytes.length < 9) {
+      throw new IOException("Truncated snapshot " + file);
+    }
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, bytes.length - 8);
+    if (crc.getValue() != ByteBuffer.wrap(bytes, bytes.length - 8, 8).getLong()) {
+      throw new IOException("Corrupted snapshot " + file);
+    }
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+    for (byte type = in.readByte(); type != -1; type = in.readByte()) {
+      if (type == 0) {
+        String accountId = in.readUTF();
+        stripeOf(accountId).balances.put(accountId, in.readLong());
+      } else {
+        String referenceId = in.readUTF();
+        String accountId = in.readUTF();
+        Stripe stripe = stripeOf(accountId);
+        Map<String, Operation> operations =
+            type == LedgerJournal.WITHDRAW ? stripe.withdrawals : stripe.deposits;
+        long amountCents = in.readLong();
+        operations.put(referenceId, new Operation(accountId, amountCents, 0, in.readLong()));
+      }
+    }
+  }
+
+  /** Writes the snapshot atomically, then deletes the files that it replaces. */
+  private void writeSnapshot(long generation, byte[] state) throws IOException {
+    Path file = snapshotFile(directory, generation);
+    Path temporary = directory.resolve(file.getFileName() + ".tmp");
+    try (FileChannel channel =
+        FileChannel.open(
+            temporary,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = ByteBuffer.wrap(state);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(true);
+    }
+    Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+    for (Path old : list(directory)) {
+      String name = old.getFileName().toString();
+      if ((name.startsWith(SNAPSHOT_PREFIX) || name.startsWith(JOURNAL_PREFIX))
+          && !name.endsWith(".tmp")
+          && generationOf(name) < generation) {
+        Files.delete(old);
+      }
+    }
+  }
+
+  private static Path snapshotFile(Path directory, long generation) {
+    return directory.resolve(String.format(SNAPSHOT_PREFIX + "%016x", generation));
+  }
+
+  /** @return -1 if there is no such file */
+  private static long latestGeneration(Path directory, String prefix) throws IOException {
+    long latest = -1;
+    for (Path file : list(directory)) {
+      String name = file.getFileName().toString();
+      if (name.startsWith(prefix) && !name.endsWith(".tmp")) {
+        latest = Math.max(latest, generationOf(name));
+      }
+    }
+    return latest;
+  }
+
+  private static long generationOf(String fileName) {
+    return Long.parseLong(fileName.substring(fileName.indexOf('-') + 1), 16);
+  }
+
+  private static List<Path> list(Path directory) throws IOException {
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+      for (Path file : stream) {
+        files.add(file);
+      }
+    }
+    return files;
+  }
+}
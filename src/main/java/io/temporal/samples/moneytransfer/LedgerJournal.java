@@ -0,0 +1,265 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneytransfer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of {@link Ledger} operations over memory-mapped segment files.
+ *
+ * <p>An operation is durable once the segment it was written to is forced to disk. Appending only
+ * copies the record into the mapping and returns its end position. Callers then wait in {@link
+ * #awaitDurable} until a force covers that position. The first waiter that finds no force in
+ * progress becomes the leader. It waits for the commit window so that more operations join, then
+ * forces the segment once for all of them (group commit). A zero window still groups the
+ * operations appended while the previous force was running.
+ *
+ * <p>Each record is {@code length, type, amount, account id, reference id, crc32}. Replay stops at
+ * the first record that is incomplete or fails its checksum, which is where the last crash
+ * interrupted unacknowledged writes. A full segment is forced and followed by the next one.
+ */
+final class LedgerJournal implements Closeable {
+
+  static final byte WITHDRAW = 1;
+  static final byte DEPOSIT = 2;
+
+  /** Receives the records of a segment during replay. */
+  interface RecordHandler {
+    void apply(byte type, String accountId, String referenceId, long amountCents);
+  }
+
+  // length + type + amount + two string lengths + crc
+  private static final int RECORD_OVERHEAD = 4 + 1 + 8 + 2 + 2 + 4;
+
+  private final Path directory;
+  private final long segmentBytes;
+  private final long commitWindowNanos;
+
+  private final Object lock = new Object();
+  private long generation;
+  private FileChannel channel;
+  private MappedByteBuffer segment;
+  /** Bytes appended to all the segments since the journal was opened. */
+  private long written;
+  /** Bytes known to be on disk. */
+  private long durable;
+  private boolean forcing;
+  private long forces;
+
+  LedgerJournal(Path directory, long generation, long segmentBytes, Duration commitWindow)
+      throws IOException {
+    this.directory = directory;
+    this.segmentBytes = segmentBytes;
+    this.commitWindowNanos = commitWindow.toNanos();
+    openSegment(generation);
+  }
+
+  static Path segmentFile(Path directory, long generation) {
+    return directory.resolve(String.format("journal-%016x", generation));
+  }
+
+  /** Replays the records of a segment until the first invalid one. */
+  static void replay(Path segmentFile, RecordHandler handler) throws IOException {
+    try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ)) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      while (buffer.remaining() >= RECORD_OVERHEAD) {
+        int start = buffer.position();
+        int length = buffer.getInt();
+        if (length < RECORD_OVERHEAD || length > buffer.remaining() + 4) {
+          return;
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer content = buffer.duplicate();
+        content.position(start).limit(start + length - 4);
+        crc.update(content);
+        buffer.position(start + length - 4);
+        if ((int) crc.getValue() != buffer.getInt()) {
+          return;
+        }
+        buffer.position(start + 4);
+        byte type = buffer.get();
+        long amountCents = buffer.getLong();
+        String accountId = readString(buffer);
+        String referenceId = readString(buffer);
+        buffer.position(start + length);
+        handler.apply(type, accountId, referenceId, amountCents);
+      }
+    }
+  }
+
+  /**
+   * Writes a record to the current segment. Callers serialize appends of operations that depend on
+   * each other, so the journal keeps their order.
+   *
+   * @return position to pass to {@link #awaitDurable}
+   */
+  long append(byte type, String accountId, String referenceId, long amountCents) {
+    byte[] account = accountId.getBytes(StandardCharsets.UTF_8);
+    byte[] reference = referenceId.getBytes(StandardCharsets.UTF_8);
+    int length = RECORD_OVERHEAD + account.length + reference.length;
+    if (account.length > Short.MAX_VALUE || reference.length > Short.MAX_VALUE) {
+      throw new IllegalArgumentException("id too long");
+    }
+    ByteBuffer record = ByteBuffer.allocate(length);
+    record.putInt(length).put(type).putLong(amountCents);
+    record.putShort((short) account.length).put(account);
+    record.putShort((short) reference.length).put(reference);
+    CRC32 crc = new CRC32();
+    crc.update(record.array(), 0, length - 4);
+    record.putInt((int) crc.getValue());
+    record.flip();
+    synchronized (lock) {
+      if (segment.remaining() < length) {
+        try {
+          rotate();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        if (segment.remaining() < length) {
+          throw new IllegalArgumentException("record larger than a segment");
+        }
+      }
+      segment.put(record);
+      written += length;
+      return written;
+    }
+  }
+
+  /**
+   * Blocks until the record that ended at position is on disk. An interrupt doesn't stop the wait,
+   * since the operation must not be acknowledged before it is durable, but it is restored after.
+   */
+  void awaitDurable(long position) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        long target;
+        MappedByteBuffer toForce;
+        synchronized (lock) {
+          while (durable < position && forcing) {
+            try {
+              lock.wait();
+            } catch (InterruptedException e) {
+              interrupted = true;
+            }
+          }
+          if (durable >= position) {
+            return;
+          }
+          // Leader of the next group commit. Waiting releases the lock, so more records join.
+          forcing = true;
+          long deadline = System.nanoTime() + commitWindowNanos;
+          try {
+            for (long left = commitWindowNanos; left > 0; left = deadline - System.nanoTime()) {
+              TimeUnit.NANOSECONDS.timedWait(lock, left);
+            }
+          } catch (InterruptedException e) {
+            // Commits what joined so far rather than leaving the followers without a leader.
+            interrupted = true;
+          }
+          target = written;
+          toForce = segment;
+        }
+        // Forced without the lock, so appends continue. Their records go to the next group.
+        boolean forced = false;
+        try {
+          toForce.force();
+          forced = true;
+        } finally {
+          synchronized (lock) {
+            if (forced) {
+              durable = Math.max(durable, target);
+              forces++;
+            }
+            forcing = false;
+            lock.notifyAll();
+          }
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Forces the current segment and switches to a new one. Called by {@link Ledger#snapshot} with
+   * all the appends blocked, so the new segment contains only operations after the snapshot.
+   *
+   * @return generation of the new segment
+   */
+  long rotate() throws IOException {
+    synchronized (lock) {
+      segment.force();
+      forces++;
+      durable = written;
+      lock.notifyAll();
+      channel.close();
+      openSegment(generation + 1);
+      return generation;
+    }
+  }
+
+  private void openSegment(long generation) throws IOException {
+    this.generation = generation;
+    channel =
+        FileChannel.open(
+            segmentFile(directory, generation),
+            StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+  }
+
+  /** Number of forces so far, one per group commit or segment switch. */
+  long getForces() {
+    synchronized (lock) {
+      return forces;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (lock) {
+      segment.force();
+      durable = written;
+      lock.notifyAll();
+      channel.close();
+    }
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getShort()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.bookingsaga;
+
+import static io.temporal.samples.bookingsaga.TripBookingSaga.TASK_QUEUE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+import com.google.common.collect.ImmutableMap;
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.testing.TestWorkflowEnvironment;
+import io.temporal.worker.Worker;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GroupBookingWorkflowTest {
+
+  private static final List<String> NAMES = Arrays.asList("trip1", "trip2", "trip3");
+
+  private TestWorkflowEnvironment testEnv;
+  private Worker worker;
+  private WorkflowClient client;
+
+  @Before
+  public void setUp() {
+    testEnv = TestWorkflowEnvironment.newInstance();
+    worker = testEnv.newWorker(TASK_QUEUE);
+    worker.registerWorkflowImplementationTypes(GroupBookingWorkflowImpl.class);
+
+    client = testEnv.getWorkflowClient();
+  }
+
+  @After
+  public void tearDown() {
+    testEnv.close();
+  }
+
+  @Test
+  public void testGroupBooked() {
+    GroupBookingActivities activities = mock(GroupBookingActivities.class);
+    when(activities.reserveCars(NAMES)).thenReturn(ids("Car", "trip1", "trip2", "trip3"));
+    when(activities.bookHotels(NAMES)).thenReturn(ids("Hotel", "trip1", "trip2", "trip3"));
+    when(activities.bookFlights(NAMES)).thenReturn(ids("Flight", "trip1", "trip2", "trip3"));
+
+    assertEquals(NAMES, bookGroupTrip(activities));
+
+    verify(activities).reserveCars(NAMES);
+    verify(activities).bookHotels(NAMES);
+    verify(activities).bookFlights(NAMES);
+    verifyNoMoreInteractions(activities);
+  }
+
+  /** Only the reservations of the customers missing one are cancelled. */
+  @Test
+  public void testCompensatesPerCustomer() {
+    GroupBookingActivities activities = mock(GroupBookingActivities.class);
+    when(activities.reserveCars(NAMES)).thenReturn(ids("Car", "trip1", "trip2", "trip3"));
+    when(activities.bookHotels(NAMES)).thenReturn(ids("Hotel", "trip1", "trip2"));
+    when(activities.bookFlights(NAMES)).thenReturn(ids("Flight", "trip1", "trip3"));
+
+    assertEquals(Collections.singletonList("trip1"), bookGroupTrip(activities));
+
+    verify(activities).cancelCars(ImmutableMap.of("trip2", "Car-trip2", "trip3", "Car-trip3"));
+    verify(activities).cancelHotels(ImmutableMap.of("trip2", "Hotel-trip2"));
+    verify(activities).cancelFlights(ImmutableMap.of("trip3", "Flight-trip3"));
+  }
+
+  /** A provider call that fails altogether cancels the reservations of the whole group. */
+  @Test
+  public void testCompensatesGroupWhenProviderFails() {
+    GroupBookingActivities activities = mock(GroupBookingActivities.class);
+    when(activities.reserveCars(NAMES)).thenReturn(ids("Car", "trip1", "trip2", "trip3"));
+    when(activities.bookHotels(NAMES)).thenReturn(ids("Hotel", "trip1", "trip2", "trip3"));
+    when(activities.bookFlights(NAMES))
+        .thenThrow(new RuntimeException("Flight booking did not work"));
+
+    assertEquals(Collections.emptyList(), bookGroupTrip(activities));
+
+    verify(activities).cancelCars(ids("Car", "trip1", "trip2", "trip3"));
+    verify(activities).cancelHotels(ids("Hotel", "trip1", "trip2", "trip3"));
+    verify(activities, never()).cancelFlights(anyMapOf(String.class, String.class));
+    verify(activities).cancelFlightsOf(NAMES);
+  }
+
+  /** A provider that fails after reserving for part of the group has them cancelled by name. */
+  @Test
+  public void testCancelsByNameWhenProviderFailsMidway() {
+    Set<String> hotelsHeld = ConcurrentHashMap.newKeySet();
+    GroupBookingActivities activities = mock(GroupBookingActivities.class);
+    when(activities.reserveCars(NAMES)).thenReturn(ids("Car", "trip1", "trip2", "trip3"));
+    when(activities.bookHotels(NAMES))
+        .thenAnswer(
+            invocation -> {
+              hotelsHeld.add("trip1");
+              hotelsHeld.add("trip2");
+              throw new RuntimeException("Hotel booking timed out");
+            });
+    when(activities.cancelHotelsOf(NAMES))
+        .thenAnswer(
+            invocation -> {
+              hotelsHeld.removeAll(NAMES);
+              return ids("CancelledHotel", "trip1", "trip2");
+            });
+    when(activities.bookFlights(NAMES)).thenReturn(ids("Flight", "trip1", "trip2", "trip3"));
+
+    assertEquals(Collections.emptyList(), bookGroupTrip(activities));
+
+    assertTrue(hotelsHeld.isEmpty());
+    verify(activities).cancelCars(ids("Car", "trip1", "trip2", "trip3"));
+    verify(activities).cancelFlights(ids("Flight", "trip1", "trip2", "trip3"));
+    verify(activities, never()).cancelHotels(anyMapOf(String.class, String.class));
+  }
+
+  private List<String> bookGroupTrip(GroupBookingActivities activities) {
+    worker.registerActivitiesImplementations(activities);
+    testEnv.start();
+
+    GroupBookingWorkflow workflow =
+        client.newWorkflowStub(
+            GroupBookingWorkflow.class,
+            WorkflowOptions.newBuilder().setTaskQueue(TASK_QUEUE).build());
+    return workflow.bookGroupTrip(NAMES);
+  }
+
+  private static Map<String, String> ids(String provider, String... names) {
+    ImmutableMap.Builder<String, String> ids = ImmutableMap.builder();
+    for (String name : names) {
+      ids.put(name, provider + "-" + name);
+    }
+    return ids.build();
+  }
+}
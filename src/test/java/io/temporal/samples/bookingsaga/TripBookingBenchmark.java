@@ -0,0 +1,134 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.bookingsaga;
+
+import static io.temporal.samples.bookingsaga.TripBookingSaga.TASK_QUEUE;
+
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.testing.TestWorkflowEnvironment;
+import io.temporal.worker.Worker;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Compares the trip latency with the reservations requested one after another and at the same
+ * time. Each provider call sleeps for a latency drawn from a log-normal distribution around the
+ * given median, so a few calls are several times slower than the median. The arguments are the
+ * number of trips per mode and the median provider latency in milliseconds.
+ *
+ * <pre>
+ * ./gradlew -q benchmark -PmainClass=io.temporal.samples.bookingsaga.TripBookingBenchmark \
+ *     --args="200 50"
+ * </pre>
+ */
+public class TripBookingBenchmark {
+
+  private static final int WARM_UP_TRIPS = 20;
+
+  public static void main(String[] args) {
+    int trips = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    long medianMillis = args.length > 1 ? Long.parseLong(args[1]) : 50;
+    System.out.println("sequential: " + run(trips, medianMillis, false));
+    System.out.println("parallel:   " + run(trips, medianMillis, true));
+    System.exit(0);
+  }
+
+  private static String run(int trips, long medianMillis, boolean parallelReservations) {
+    TestWorkflowEnvironment testEnv = TestWorkflowEnvironment.newInstance();
+    Worker worker = testEnv.newWorker(TASK_QUEUE);
+    worker.addWorkflowImplementationFactory(
+        TripBookingWorkflow.class, () -> new TripBookingWorkflowImpl(parallelReservations));
+    worker.registerActivitiesImplementations(new SlowProviders(medianMillis));
+    testEnv.start();
+
+    WorkflowClient client = testEnv.getWorkflowClient();
+    long[] latencies = new long[trips];
+    for (int i = -WARM_UP_TRIPS; i < trips; i++) {
+      WorkflowOptions options = WorkflowOptions.newBuilder().setTaskQueue(TASK_QUEUE).build();
+      TripBookingWorkflow workflow = client.newWorkflowStub(TripBookingWorkflow.class, options);
+      long start = System.nanoTime();
+      workflow.bookTrip("trip" + i);
+      if (i >= 0) {
+        latencies[i] = System.nanoTime() - start;
+      }
+    }
+    testEnv.close();
+    Arrays.sort(latencies);
+    return String.format(
+        "%d trips, latency p50=%.1fms p99=%.1fms",
+        trips,
+        latencies[trips / 2] / 1e6,
+        latencies[(int) Math.ceil(trips * 0.99) - 1] / 1e6);
+  }
+
+  private static class SlowProviders implements TripBookingActivities {
+
+    // Same seed in both modes, so they see the same latencies.
+    private final Random random = new Random(1);
+    private final long medianMillis;
+
+    private SlowProviders(long medianMillis) {
+      this.medianMillis = medianMillis;
+    }
+
+    @Override
+    public String reserveCar(String name) {
+      return reserve();
+    }
+
+    @Override
+    public String bookFlight(String name) {
+      return reserve();
+    }
+
+    @Override
+    public String bookHotel(String name) {
+      return reserve();
+    }
+
+    @Override
+    public String cancelFlight(String reservationID, String name) {
+      return reserve();
+    }
+
+    @Override
+    public String cancelHotel(String reservationID, String name) {
+      return reserve();
+    }
+
+    @Override
+    public String cancelCar(String reservationID, String name) {
+      return reserve();
+    }
+
+    private String reserve() {
+      long latencyMillis = (long) (medianMillis * Math.exp(0.5 * random.nextGaussian()));
+      try {
+        Thread.sleep(latencyMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      }
+      return UUID.randomUUID().toString();
+    }
+  }
+}
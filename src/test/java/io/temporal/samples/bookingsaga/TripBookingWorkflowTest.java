@@ -21,6 +21,7 @@ package io.temporal.samples.bookingsaga;
 
 import static io.temporal.samples.bookingsaga.TripBookingSaga.TASK_QUEUE;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
@@ -31,12 +32,17 @@ import io.temporal.client.WorkflowOptions;
 import io.temporal.failure.ApplicationFailure;
 import io.temporal.testing.TestWorkflowEnvironment;
 import io.temporal.worker.Worker;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 public class TripBookingWorkflowTest {
 
+  private static final String PARALLEL_TASK_QUEUE = TASK_QUEUE + "Parallel";
+
   private TestWorkflowEnvironment testEnv;
   private Worker worker;
   private WorkflowClient client;
@@ -106,4 +112,92 @@ public class TripBookingWorkflowTest {
     verify(activities).cancelHotel(eq("HotelBookingID1"), eq("trip1"));
     verify(activities).cancelCar(eq("CarBookingID1"), eq("trip1"));
   }
+
+  /** Only the reservations that succeeded are cancelled. */
+  @Test
+  public void testParallelSAGA() {
+    TripBookingActivities activities = mock(TripBookingActivities.class);
+    when(activities.bookHotel("trip1")).thenReturn("HotelBookingID1");
+    when(activities.reserveCar("trip1")).thenReturn("CarBookingID1");
+    when(activities.bookFlight("trip1"))
+        .thenThrow(new RuntimeException("Flight booking did not work"));
+
+    bookTripInParallel(activities);
+
+    verify(activities).cancelHotel(eq("HotelBookingID1"), eq("trip1"));
+    verify(activities).cancelCar(eq("CarBookingID1"), eq("trip1"));
+    verify(activities, never()).cancelFlight(anyString(), anyString());
+  }
+
+  /**
+   * The compensation starts with the first failure, and a reservation that succeeds after it is
+   * cancelled too.
+   */
+  @Test
+  public void testParallelSAGACompensatesBeforeSlowReservation() {
+    CountDownLatch carCancelled = new CountDownLatch(1);
+    AtomicBoolean hotelBookedAfterCancellation = new AtomicBoolean();
+    TripBookingActivities activities = mock(TripBookingActivities.class);
+    when(activities.reserveCar("trip1")).thenReturn("CarBookingID1");
+    when(activities.cancelCar("CarBookingID1", "trip1"))
+        .thenAnswer(
+            invocation -> {
+              carCancelled.countDown();
+              return "CarCancellationID1";
+            });
+    when(activities.bookHotel("trip1"))
+        .thenAnswer(
+            invocation -> {
+              hotelBookedAfterCancellation.set(carCancelled.await(10, TimeUnit.SECONDS));
+              return "HotelBookingID1";
+            });
+    when(activities.bookFlight("trip1"))
+        .thenThrow(new RuntimeException("Flight booking did not work"));
+
+    bookTripInParallel(activities);
+
+    assertTrue(hotelBookedAfterCancellation.get());
+    verify(activities).cancelCar(eq("CarBookingID1"), eq("trip1"));
+    verify(activities).cancelHotel(eq("HotelBookingID1"), eq("trip1"));
+    verify(activities, never()).cancelFlight(anyString(), anyString());
+  }
+
+  @Test
+  public void testParallelReservationsSucceed() {
+    TripBookingActivities activities = mock(TripBookingActivities.class);
+    when(activities.bookHotel("trip1")).thenReturn("HotelBookingID1");
+    when(activities.reserveCar("trip1")).thenReturn("CarBookingID1");
+    when(activities.bookFlight("trip1")).thenReturn("FlightBookingID1");
+
+    TripBookingWorkflow workflow = newParallelWorkflow(activities);
+    workflow.bookTrip("trip1");
+
+    verify(activities, never()).cancelCar(anyString(), anyString());
+    verify(activities, never()).cancelHotel(anyString(), anyString());
+    verify(activities, never()).cancelFlight(anyString(), anyString());
+  }
+
+  private void bookTripInParallel(TripBookingActivities activities) {
+    TripBookingWorkflow workflow = newParallelWorkflow(activities);
+    try {
+      workflow.bookTrip("trip1");
+      fail("unreachable");
+    } catch (WorkflowException e) {
+      assertEquals(
+          "Flight booking did not work",
+          ((ApplicationFailure) e.getCause().getCause()).getOriginalMessage());
+    }
+  }
+
+  private TripBookingWorkflow newParallelWorkflow(TripBookingActivities activities) {
+    Worker parallelWorker = testEnv.newWorker(PARALLEL_TASK_QUEUE);
+    parallelWorker.addWorkflowImplementationFactory(
+        TripBookingWorkflow.class, () -> new TripBookingWorkflowImpl(true));
+    parallelWorker.registerActivitiesImplementations(activities);
+    testEnv.start();
+
+    return client.newWorkflowStub(
+        TripBookingWorkflow.class,
+        WorkflowOptions.newBuilder().setTaskQueue(PARALLEL_TASK_QUEUE).build());
+  }
 }
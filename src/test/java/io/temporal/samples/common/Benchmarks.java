@@ -0,0 +1,52 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.common;
+
+import com.google.protobuf.ByteString;
+import io.temporal.api.common.v1.WorkflowExecution;
+import io.temporal.api.workflowservice.v1.GetWorkflowExecutionHistoryRequest;
+import io.temporal.api.workflowservice.v1.GetWorkflowExecutionHistoryResponse;
+import io.temporal.testing.TestWorkflowEnvironment;
+
+/** Helpers shared by the benchmarks that run against the in-process test service. */
+public final class Benchmarks {
+
+  private Benchmarks() {}
+
+  /** @return number of events in the history of the last run of workflowId */
+  public static long countHistoryEvents(TestWorkflowEnvironment testEnv, String workflowId) {
+    WorkflowExecution execution = WorkflowExecution.newBuilder().setWorkflowId(workflowId).build();
+    long events = 0;
+    ByteString pageToken = ByteString.EMPTY;
+    do {
+      GetWorkflowExecutionHistoryRequest request =
+          GetWorkflowExecutionHistoryRequest.newBuilder()
+              .setNamespace(testEnv.getNamespace())
+              .setExecution(execution)
+              .setNextPageToken(pageToken)
+              .build();
+      GetWorkflowExecutionHistoryResponse response =
+          testEnv.getWorkflowService().blockingStub().getWorkflowExecutionHistory(request);
+      events += response.getHistory().getEventsCount();
+      pageToken = response.getNextPageToken();
+    } while (!pageToken.isEmpty());
+    return events;
+  }
+}
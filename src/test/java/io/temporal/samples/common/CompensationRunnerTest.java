@@ -0,0 +1,225 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.temporal.activity.ActivityInterface;
+import io.temporal.activity.ActivityOptions;
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.common.RetryOptions;
+import io.temporal.testing.TestWorkflowEnvironment;
+import io.temporal.worker.Worker;
+import io.temporal.workflow.Workflow;
+import io.temporal.workflow.WorkflowInterface;
+import io.temporal.workflow.WorkflowMethod;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompensationRunnerTest {
+
+  private static final String TASK_QUEUE = "CompensationRunner";
+
+  @WorkflowInterface
+  public interface CompensatingWorkflow {
+    /**
+     * Adds a compensation for each step, in groups of the given size, and runs them.
+     *
+     * @param stepTimeoutMillis no timeout if 0
+     * @return the class of the first compensation failure, or null
+     */
+    @WorkflowMethod
+    String compensate(int steps, int stepsPerGroup, int maxConcurrency, long stepTimeoutMillis);
+  }
+
+  @ActivityInterface
+  public interface StepActivities {
+    void undo(int step);
+  }
+
+  public static class CompensatingWorkflowImpl implements CompensatingWorkflow {
+    private final StepActivities activities =
+        Workflow.newActivityStub(
+            StepActivities.class,
+            ActivityOptions.newBuilder()
+                .setStartToCloseTimeout(Duration.ofMinutes(1))
+                .setRetryOptions(RetryOptions.newBuilder().setMaximumAttempts(1).build())
+                .build());
+
+    @Override
+    public String compensate(
+        int steps, int stepsPerGroup, int maxConcurrency, long stepTimeoutMillis) {
+      CompensationRunner.Options.Builder options =
+          new CompensationRunner.Options.Builder().setMaxConcurrency(maxConcurrency);
+      if (stepTimeoutMillis > 0) {
+        options.setStepTimeout(Duration.ofMillis(stepTimeoutMillis));
+      }
+      CompensationRunner runner = new CompensationRunner(options.build());
+      for (int i = 0; i < steps; i++) {
+        if (i > 0 && i % stepsPerGroup == 0) {
+          runner.startGroup();
+        }
+        runner.addCompensation(activities::undo, i);
+      }
+      try {
+        runner.compensate();
+        return null;
+      } catch (CompensationRunner.CompensationException e) {
+        return e.getCause().getClass().getSimpleName();
+      }
+    }
+  }
+
+  /** Records the start and end of each step and the number of steps running at the same time. */
+  private static class RecordingSteps implements StepActivities {
+    private final List<String> events = new ArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private int running;
+    private int maxRunning;
+    private volatile int blockedStep = -1;
+    private volatile int failedStep = -1;
+
+    @Override
+    public void undo(int step) {
+      synchronized (this) {
+        events.add("start" + step);
+        maxRunning = Math.max(maxRunning, ++running);
+      }
+      try {
+        if (step == blockedStep) {
+          release.await(1, TimeUnit.MINUTES);
+        } else {
+          Thread.sleep(200);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      synchronized (this) {
+        running--;
+        events.add("end" + step);
+      }
+      if (step == failedStep) {
+        throw new IllegalStateException("step " + step + " failed");
+      }
+    }
+
+    synchronized List<String> getEvents() {
+      return new ArrayList<>(events);
+    }
+
+    synchronized int getMaxRunning() {
+      return maxRunning;
+    }
+  }
+
+  private TestWorkflowEnvironment testEnv;
+  private RecordingSteps activities;
+  private WorkflowClient client;
+
+  @Before
+  public void setUp() {
+    testEnv = TestWorkflowEnvironment.newInstance();
+    Worker worker = testEnv.newWorker(TASK_QUEUE);
+    worker.registerWorkflowImplementationTypes(CompensatingWorkflowImpl.class);
+    activities = new RecordingSteps();
+    worker.registerActivitiesImplementations(activities);
+    testEnv.start();
+
+    client = testEnv.getWorkflowClient();
+  }
+
+  @After
+  public void tearDown() {
+    activities.release.countDown();
+    testEnv.close();
+  }
+
+  @Test
+  public void testBoundsConcurrency() {
+    assertNull(compensate(8, 8, 3, 0));
+
+    assertEquals(3, activities.getMaxRunning());
+    assertEquals(16, activities.getEvents().size());
+  }
+
+  @Test
+  public void testRunsSequentiallyInReverseOrder() {
+    assertNull(compensate(3, 3, 1, 0));
+
+    assertEquals(
+        Arrays.asList("start2", "end2", "start1", "end1", "start0", "end0"),
+        activities.getEvents());
+  }
+
+  @Test
+  public void testRunsGroupsInReverseOrder() {
+    assertNull(compensate(6, 3, 10, 0));
+
+    List<String> events = activities.getEvents();
+    int lastGroupEnd =
+        Math.max(events.indexOf("end3"), Math.max(events.indexOf("end4"), events.indexOf("end5")));
+    int firstGroupStart =
+        Math.min(
+            events.indexOf("start0"),
+            Math.min(events.indexOf("start1"), events.indexOf("start2")));
+    assertTrue(lastGroupEnd < firstGroupStart);
+    assertEquals(3, activities.getMaxRunning());
+  }
+
+  @Test
+  public void testTimesOutStep() {
+    activities.blockedStep = 1;
+
+    assertEquals("TimeoutException", compensate(2, 2, 2, 1_000));
+
+    assertTrue(activities.getEvents().contains("end0"));
+  }
+
+  /** A failed group completes, but the earlier groups aren't compensated. */
+  @Test
+  public void testStopsAfterFailedGroup() {
+    activities.failedStep = 3;
+
+    assertEquals("ActivityFailure", compensate(4, 2, 10, 0));
+
+    assertEquals(4, activities.getEvents().size());
+    assertTrue(activities.getEvents().contains("end2"));
+    assertTrue(activities.getEvents().contains("end3"));
+  }
+
+  private String compensate(
+      int steps, int stepsPerGroup, int maxConcurrency, long stepTimeoutMillis) {
+    CompensatingWorkflow workflow =
+        client.newWorkflowStub(
+            CompensatingWorkflow.class,
+            WorkflowOptions.newBuilder().setTaskQueue(TASK_QUEUE).build());
+    return workflow.compensate(steps, stepsPerGroup, maxConcurrency, stepTimeoutMillis);
+  }
+}
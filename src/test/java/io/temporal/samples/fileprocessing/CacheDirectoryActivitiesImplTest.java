@@ -0,0 +1,94 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class CacheDirectoryActivitiesImplTest {
+
+  private static final long NOW = 1_000_000;
+
+  @Test
+  public void testPrefersLeastLoadedCachingHost() {
+    List<HostLoad> loads =
+        Arrays.asList(
+            load("host1", 0, 0.1, true, NOW),
+            load("host2", 5, 0.9, false, NOW),
+            load("host3", 2, 0.5, true, NOW));
+    assertEquals("host3", select(Arrays.asList("host2", "host3"), loads, new Random(1)));
+    // A caching host that refuses downloads still serves cache hits.
+    assertEquals("host2", select(Collections.singletonList("host2"), loads, new Random(1)));
+  }
+
+  @Test
+  public void testIgnoresExpiredAndRefusingHosts() {
+    long expired = NOW - CacheDirectoryActivitiesImpl.LOAD_EXPIRATION.toMillis() - 1;
+    List<HostLoad> loads =
+        Arrays.asList(
+            load("host1", 0, 0, true, expired),
+            load("host2", 0, 0, false, NOW),
+            load("host3", 9, 0.9, true, NOW));
+    for (int seed = 0; seed < 10; seed++) {
+      assertEquals("host3", select(Collections.singletonList("host1"), loads, new Random(seed)));
+    }
+    assertNull(
+        select(
+            Collections.<String>emptyList(),
+            Collections.singletonList(load("host1", 0, 0, true, expired)),
+            new Random(1)));
+  }
+
+  @Test
+  public void testPicksLessLoadedOfTwo() {
+    List<HostLoad> loads =
+        Arrays.asList(
+            load("host1", 0, 0.2, true, NOW),
+            load("host2", 1, 0.1, true, NOW),
+            load("host3", 2, 0.0, true, NOW));
+    int[] picks = new int[3];
+    Random random = new Random(1);
+    for (int i = 0; i < 3000; i++) {
+      String host = select(Collections.<String>emptyList(), loads, random);
+      picks[Integer.parseInt(host.substring(4)) - 1]++;
+    }
+    // The most loaded host is only picked when both picks are it, the least loaded whenever it
+    // is one of them.
+    assertEquals(5.0 / 9, picks[0] / 3000.0, 0.05);
+    assertEquals(1.0 / 9, picks[2] / 3000.0, 0.05);
+  }
+
+  private static String select(List<String> caching, List<HostLoad> loads, Random random) {
+    return CacheDirectoryActivitiesImpl.select(caching, loads, NOW, random);
+  }
+
+  private static HostLoad load(
+      String host, int inFlightFiles, double cpuLoad, boolean accepting, long reportedAt) {
+    HostLoad load = new HostLoad(host, inFlightFiles, 1L << 30, cpuLoad, accepting);
+    load.setReportedAtMillis(reportedAt);
+    return load;
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import static io.temporal.samples.fileprocessing.FileProcessingWorker.TASK_QUEUE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.testing.TestWorkflowEnvironment;
+import io.temporal.worker.Worker;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CacheDirectoryWorkflowTest {
+
+  private static final String URL_A = "http://a";
+  private static final String URL_B = "http://b";
+
+  private TestWorkflowEnvironment testEnv;
+  private CacheDirectoryWorkflow directory;
+
+  @Before
+  public void setUp() {
+    testEnv = TestWorkflowEnvironment.newInstance();
+    Worker worker = testEnv.newWorker(TASK_QUEUE);
+    worker.registerWorkflowImplementationTypes(CacheDirectoryWorkflowImpl.class);
+    testEnv.start();
+    WorkflowClient client = testEnv.getWorkflowClient();
+    directory =
+        client.newWorkflowStub(
+            CacheDirectoryWorkflow.class,
+            WorkflowOptions.newBuilder()
+                .setWorkflowId(CacheDirectoryWorkflow.WORKFLOW_ID)
+                .setTaskQueue(TASK_QUEUE)
+                .build());
+    WorkflowClient.start(directory::run, null, null);
+  }
+
+  @After
+  public void tearDown() {
+    testEnv.close();
+  }
+
+  @Test
+  public void testTracksCachedFiles() {
+    directory.cached("host2", URL_A);
+    directory.cached("host1", URL_A);
+    directory.cached("host1", URL_B);
+    assertEquals(Arrays.asList("host1", "host2"), directory.getHosts(URL_A));
+
+    directory.evicted("host2", URL_A);
+    assertEquals(Collections.singletonList("host1"), directory.getHosts(URL_A));
+
+    directory.hostUnavailable("host1");
+    assertEquals(Collections.emptyList(), directory.getHosts(URL_A));
+    assertEquals(Collections.emptyList(), directory.getHosts(URL_B));
+  }
+
+  @Test
+  public void testTracksHostLoads() {
+    directory.reportLoad(new HostLoad("host1", 3, 1000, 0.5, true));
+    directory.reportLoad(new HostLoad("host2", 1, 2000, 0.1, true));
+    directory.reportLoad(new HostLoad("host1", 4, 900, 0.6, false));
+    List<HostLoad> loads = directory.getLoads();
+    assertEquals(2, loads.size());
+    assertEquals("host1", loads.get(0).getHostTaskQueue());
+    assertEquals(4, loads.get(0).getInFlightFiles());
+    assertFalse(loads.get(0).isAcceptingDownloads());
+    assertTrue(loads.get(0).getReportedAtMillis() > 0);
+
+    directory.hostUnavailable("host1");
+    assertEquals(1, directory.getLoads().size());
+    assertEquals("host2", directory.getLoads().get(0).getHostTaskQueue());
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ContentCacheTest {
+
+  private Path directory;
+  private Path downloads;
+  private ContentCache cache;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("cache");
+    downloads = Files.createTempDirectory("downloads");
+    cache = new ContentCache(directory, 100);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    for (Path dir : new Path[] {directory, downloads}) {
+      for (File file : dir.toFile().listFiles()) {
+        file.delete();
+      }
+      Files.delete(dir);
+    }
+  }
+
+  @Test
+  public void testHitAndMiss() throws IOException {
+    cache.put("url", "v1", download("a", 10));
+    assertTrue(cache.get("url", "v1", downloads.resolve("hit")));
+    assertArrayEquals(Files.readAllBytes(downloads.resolve("a")), bytes(downloads.resolve("hit")));
+    assertFalse(cache.get("url", "v2", downloads.resolve("changed")));
+    assertFalse(cache.get("other", "v1", downloads.resolve("other")));
+    assertFalse(cache.get("url", null, downloads.resolve("unknown")));
+    assertEquals(1, cache.getHits());
+    assertEquals(3, cache.getMisses());
+
+    // A new version replaces the old one.
+    cache.put("url", "v2", download("b", 20));
+    assertTrue(cache.get("url", "v2", downloads.resolve("new")));
+    assertFalse(cache.get("url", "v1", downloads.resolve("old")));
+    assertEquals(1, cache.getEntries());
+    assertEquals(20, cache.getSizeBytes());
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() throws IOException {
+    cache.put("a", "v", download("a", 40));
+    cache.put("b", "v", download("b", 40));
+    assertTrue(cache.get("a", "v", downloads.resolve("a-hit")));
+    cache.put("c", "v", download("c", 40));
+
+    assertEquals(1, cache.getEvictions());
+    assertEquals(80, cache.getSizeBytes());
+    assertFalse(cache.get("b", "v", downloads.resolve("b-miss")));
+    assertTrue(cache.get("a", "v", downloads.resolve("a-hit-again")));
+    assertTrue(cache.get("c", "v", downloads.resolve("c-hit")));
+    assertEquals(2, directory.toFile().list().length);
+    // The content linked by a hit outlives the eviction of its entry.
+    assertEquals(40, Files.size(downloads.resolve("a-hit")));
+  }
+
+  @Test
+  public void testNotifiesListener() throws IOException {
+    List<String> events = new ArrayList<>();
+    ContentCache notifying =
+        new ContentCache(
+            directory,
+            100,
+            new ContentCache.Listener() {
+              @Override
+              public void added(String url) {
+                events.add("added " + url);
+              }
+
+              @Override
+              public void removed(String url) {
+                events.add("removed " + url);
+              }
+            });
+    notifying.put("a", "v", download("a", 60));
+    notifying.put("a", "w", download("a2", 60));
+    notifying.put("b", "v", download("b", 60));
+    assertEquals(Arrays.asList("added a", "added a", "added b", "removed a"), events);
+  }
+
+  @Test
+  public void testSkipsFilesOverBudget() throws IOException {
+    cache.put("a", "v", download("a", 101));
+    assertEquals(0, cache.getEntries());
+    assertEquals(0, directory.toFile().list().length);
+  }
+
+  @Test
+  public void testClearsDirectoryOnStartup() throws IOException {
+    cache.put("a", "v", download("a", 10));
+    ContentCache restarted = new ContentCache(directory, 100);
+    assertEquals(0, directory.toFile().list().length);
+    assertFalse(restarted.get("a", "v", downloads.resolve("a-miss")));
+  }
+
+  private Path download(String name, int size) throws IOException {
+    byte[] content = new byte[size];
+    for (int i = 0; i < size; i++) {
+      content[i] = (byte) (name.hashCode() + i);
+    }
+    return Files.write(downloads.resolve(name), content);
+  }
+
+  private static byte[] bytes(Path file) throws IOException {
+    return Files.readAllBytes(file);
+  }
+}
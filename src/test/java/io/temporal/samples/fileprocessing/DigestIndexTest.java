@@ -0,0 +1,103 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DigestIndexTest {
+
+  private static final String DIGEST =
+      DigestIndex.toHex(DigestIndex.newDigest().digest("content".getBytes(StandardCharsets.UTF_8)));
+
+  private File file;
+  private URL destination;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("digests", null);
+    destination = new URL("http://destination/processed.gz");
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Test
+  public void testDigest() throws IOException {
+    assertEquals("ed7002b439e9ac845f22357d822bac1444730fbdb6016d3ec9432297b9ec9f73", DIGEST);
+    Files.write("content", file, StandardCharsets.UTF_8);
+    assertEquals(DIGEST, DigestIndex.digest(file.toPath()));
+  }
+
+  @Test
+  public void testPersistsAdditions() throws IOException {
+    DigestIndex index = new DigestIndex(file.toPath());
+    assertFalse(index.contains(DIGEST, destination));
+    index.add(DIGEST, destination);
+    index.add(DIGEST, destination);
+    assertTrue(index.contains(DIGEST, destination));
+    assertFalse(index.contains(DIGEST, new URL("http://elsewhere/processed.gz")));
+    index.close();
+
+    DigestIndex reopened = new DigestIndex(file.toPath());
+    assertEquals(1, reopened.getSize());
+    assertTrue(reopened.contains(DIGEST, destination));
+    assertEquals(1, reopened.getHits());
+    reopened.close();
+  }
+
+  @Test
+  public void testIgnoresLineCutShort() throws IOException {
+    DigestIndex index = new DigestIndex(file.toPath());
+    index.add(DIGEST, destination);
+    index.close();
+    // A crash in the middle of an addition leaves a prefix of the destination.
+    try (OutputStream out = new FileOutputStream(file, true)) {
+      out.write((DIGEST + " http://destination/processed").getBytes(StandardCharsets.UTF_8));
+    }
+
+    DigestIndex reopened = new DigestIndex(file.toPath());
+    assertEquals(1, reopened.getSize());
+    assertFalse(reopened.contains(DIGEST, new URL("http://destination/processed")));
+    URL other = new URL("http://destination/other.gz");
+    reopened.add(DIGEST, other);
+    reopened.close();
+
+    DigestIndex again = new DigestIndex(file.toPath());
+    assertEquals(2, again.getSize());
+    assertTrue(again.contains(DIGEST, destination));
+    assertTrue(again.contains(DIGEST, other));
+    again.close();
+  }
+}
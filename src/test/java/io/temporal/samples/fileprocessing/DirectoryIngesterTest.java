@@ -0,0 +1,167 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+public class DirectoryIngesterTest {
+
+  private static final Duration QUIET_PERIOD = Duration.ofMillis(300);
+
+  @Rule public Timeout globalTimeout = Timeout.seconds(20);
+
+  private File directory;
+  private final List<String> started = new CopyOnWriteArrayList<>();
+  private DirectoryIngester ingester;
+  private Thread watcher;
+
+  @Before
+  public void setUp() {
+    directory = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (ingester != null) {
+      ingester.close();
+      watcher.join();
+    }
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  @Test
+  public void testStartsFilesOnceTheyStopChanging() throws Exception {
+    Files.write(new byte[10], new File(directory, "existing"));
+    start(1000, 10, (file, version) -> started.add(version));
+
+    File growing = new File(directory, "growing");
+    try (OutputStream out = new FileOutputStream(growing)) {
+      for (int i = 0; i < 5; i++) {
+        out.write(new byte[100]);
+        out.flush();
+        Thread.sleep(QUIET_PERIOD.toMillis() / 3);
+      }
+    }
+    Files.write(new byte[1], new File(directory, ".partial"));
+    awaitStarted(2);
+    Thread.sleep(3 * QUIET_PERIOD.toMillis());
+
+    assertEquals(2, started.size());
+    assertTrue(started.get(0).startsWith("existing@10@"));
+    // Started once, when complete.
+    assertTrue(started.get(1).startsWith("growing@500@"));
+  }
+
+  @Test
+  public void testLimitsStartRate() throws Exception {
+    for (int i = 0; i < 6; i++) {
+      Files.write(new byte[1], new File(directory, "file" + i));
+    }
+    long startNanos = System.nanoTime();
+    start(10, 10, (file, version) -> started.add(version));
+    awaitStarted(6);
+    // The first start is immediate, the others are 100 ms apart.
+    assertTrue(System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(500));
+  }
+
+  @Test
+  public void testBackpressure() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    start(
+        1000,
+        2,
+        (file, version) -> {
+          release.await();
+          started.add(version);
+        });
+    for (int i = 0; i < 6; i++) {
+      Files.write(new byte[1], new File(directory, "file" + i));
+    }
+    Thread.sleep(3 * QUIET_PERIOD.toMillis());
+
+    // One file in the starter, two queued, the rest wait as candidates.
+    assertEquals(2, ingester.getQueued());
+    assertEquals(3, ingester.getCandidates());
+    assertEquals(0, ingester.getStarted());
+
+    release.countDown();
+    awaitStarted(6);
+    assertEquals(0, ingester.getCandidates());
+  }
+
+  @Test
+  public void testRetriesFailedStart() throws Exception {
+    Files.write(new byte[1], new File(directory, "file"));
+    start(
+        1000,
+        10,
+        (file, version) -> {
+          if (started.add(version) && started.size() == 1) {
+            throw new IOException("service unavailable");
+          }
+        });
+    awaitStarted(2);
+    assertEquals(started.get(0), started.get(1));
+    assertEquals(1, ingester.getStarted());
+  }
+
+  private void start(double startsPerSecond, int maxQueuedStarts, DirectoryIngester.Starter starter)
+      throws IOException {
+    Path path = directory.toPath();
+    ingester = new DirectoryIngester(path, QUIET_PERIOD, startsPerSecond, maxQueuedStarts, starter);
+    watcher =
+        new Thread(
+            () -> {
+              try {
+                ingester.run();
+              } catch (Exception e) {
+                throw new RuntimeException(e);
+              }
+            });
+    watcher.start();
+  }
+
+  private void awaitStarted(int count) throws InterruptedException {
+    while (started.size() < count) {
+      Thread.sleep(10);
+    }
+  }
+}
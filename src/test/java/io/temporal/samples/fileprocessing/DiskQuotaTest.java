@@ -0,0 +1,118 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DiskQuotaTest {
+
+  private Path root;
+
+  @Before
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("staging");
+  }
+
+  @After
+  public void tearDown() {
+    root.toFile().delete();
+  }
+
+  @Test
+  public void testReleasesStagedFiles() throws IOException {
+    DiskQuota quota = new DiskQuota(root, 0, 0, Duration.ofHours(1));
+    File first = quota.newDirectory("workflow1");
+    Files.write(new File(first, "downloaded").toPath(), new byte[100]);
+    Files.write(new File(first, "processed.gz").toPath(), new byte[10]);
+    File second = quota.newDirectory("workflow2");
+    Files.write(new File(second, "downloaded").toPath(), new byte[5]);
+    assertEquals(110, quota.getStagedBytes("workflow1"));
+    assertEquals(115, quota.getStagedBytes());
+    assertEquals(2, quota.getWorkflows());
+
+    quota.release("workflow1");
+    assertFalse(first.exists());
+    assertTrue(second.exists());
+    assertEquals(5, quota.getStagedBytes());
+    quota.release("workflow2");
+    assertEquals(0, root.toFile().list().length);
+  }
+
+  @Test
+  public void testReleasesStaleFiles() throws IOException, InterruptedException {
+    DiskQuota quota = new DiskQuota(root, 0, 0, Duration.ofMillis(50));
+    File stale = quota.newDirectory("workflow1");
+    Thread.sleep(100);
+    File used = quota.newDirectory("workflow2");
+    quota.check(new RecordingListener(), Long.MAX_VALUE);
+    assertFalse(stale.exists());
+    assertTrue(used.exists());
+    assertEquals(1, quota.getWorkflows());
+    quota.release("workflow2");
+  }
+
+  @Test
+  public void testSuspendsAndResumesWithHysteresis() throws IOException {
+    DiskQuota quota = new DiskQuota(root, 100, 200, Duration.ofHours(1));
+    RecordingListener listener = new RecordingListener();
+    quota.check(listener, 150);
+    quota.check(listener, 99);
+    quota.check(listener, 50);
+    quota.check(listener, 150);
+    quota.check(listener, 200);
+    quota.check(listener, 150);
+    assertEquals(Arrays.asList("low 99", "available 200"), listener.events);
+  }
+
+  @Test
+  public void testClearsRootOnStartup() throws IOException {
+    new DiskQuota(root, 0, 0, Duration.ofHours(1)).newDirectory("workflow1");
+    new DiskQuota(root, 0, 0, Duration.ofHours(1));
+    assertEquals(0, root.toFile().list().length);
+  }
+
+  private static class RecordingListener implements DiskQuota.Listener {
+    private final List<String> events = new ArrayList<>();
+
+    @Override
+    public void diskLow(long usableBytes) {
+      events.add("low " + usableBytes);
+    }
+
+    @Override
+    public void diskAvailable(long usableBytes) {
+      events.add("available " + usableBytes);
+    }
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import static io.temporal.samples.fileprocessing.FileProcessingWorker.TASK_QUEUE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.Files;
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.failure.ApplicationFailure;
+import io.temporal.testing.TestWorkflowEnvironment;
+import io.temporal.worker.Worker;
+import io.temporal.workflow.Workflow;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestWatcher;
+import org.junit.rules.Timeout;
+import org.junit.runner.Description;
+
+public class FileProcessingBatchTest {
+
+  private static final int FILES_PER_RUN = 4;
+
+  private static final AtomicInteger running = new AtomicInteger();
+  private static final AtomicInteger maxRunning = new AtomicInteger();
+  private static final Queue<URL> processed = new ConcurrentLinkedQueue<>();
+
+  /** Takes a second per file and fails the files whose path contains "fail". */
+  public static class FakeFileProcessingWorkflow implements FileProcessingWorkflow {
+
+    @Override
+    public void processFile(URL source, URL destination) {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      Workflow.sleep(Duration.ofSeconds(1));
+      running.decrementAndGet();
+      processed.add(source);
+      if (source.getPath().contains("fail")) {
+        throw ApplicationFailure.newNonRetryableFailure("cannot process", "Test");
+      }
+    }
+  }
+
+  @Rule public Timeout globalTimeout = Timeout.seconds(10);
+
+  /** Prints a history of the workflow under test in case of a test failure. */
+  @Rule
+  public TestWatcher watchman =
+      new TestWatcher() {
+        @Override
+        protected void failed(Throwable e, Description description) {
+          if (testEnv != null) {
+            System.err.println(testEnv.getDiagnostics());
+            testEnv.close();
+          }
+        }
+      };
+
+  private TestWorkflowEnvironment testEnv;
+  private WorkflowClient client;
+  private File manifest;
+
+  @Before
+  public void setUp() throws IOException {
+    running.set(0);
+    maxRunning.set(0);
+    processed.clear();
+    manifest = File.createTempFile("manifest", null);
+    testEnv = TestWorkflowEnvironment.newInstance();
+    Worker worker = testEnv.newWorker(TASK_QUEUE);
+    worker.registerWorkflowImplementationTypes(FakeFileProcessingWorkflow.class);
+    worker.addWorkflowImplementationFactory(
+        FileProcessingBatchWorkflow.class,
+        () -> new FileProcessingBatchWorkflowImpl(FILES_PER_RUN));
+    client = testEnv.getWorkflowClient();
+    worker.registerActivitiesImplementations(
+        new ManifestActivitiesImpl(), new BatchActivitiesImpl(client));
+    testEnv.start();
+  }
+
+  @After
+  public void tearDown() {
+    testEnv.close();
+    manifest.delete();
+  }
+
+  @Test
+  public void testProcessesListWithBoundedConcurrency() {
+    List<FileTransfer> transfers = transfers("file", 10);
+    BatchProgress progress = newBatch().processBatch(new FileBatch(transfers, 3), null);
+
+    assertEquals(10, progress.getTotal());
+    assertEquals(10, progress.getStarted());
+    assertEquals(10, progress.getSucceeded());
+    assertEquals(0, progress.getFailed());
+    assertEquals(0, progress.getInFlight());
+    assertEquals(3, maxRunning.get());
+    assertEquals(10, processed.size());
+    for (FileTransfer transfer : transfers) {
+      assertTrue(processed.contains(transfer.getSource()));
+    }
+    // The batch continued as new twice without waiting for its files, so it kept 3 of them running
+    // all along: 10 files took 4 seconds instead of 5.
+    assertTrue(progress.getElapsedMillis() >= 4000);
+    assertTrue(progress.getElapsedMillis() < 5000);
+    assertEquals(10 * 1000.0 / progress.getElapsedMillis(), progress.getFilesPerSecond(), 0.001);
+  }
+
+  @Test
+  public void testCountsFailures() {
+    List<FileTransfer> transfers = transfers("file", 3);
+    transfers.addAll(transfers("fail", 2));
+    BatchProgress progress = newBatch().processBatch(new FileBatch(transfers, 5), null);
+
+    assertEquals(5, progress.getStarted());
+    assertEquals(3, progress.getSucceeded());
+    assertEquals(2, progress.getFailed());
+    assertEquals(2, progress.getFailures().size());
+    assertTrue(progress.getFailures().get(0).contains("cannot process"));
+  }
+
+  @Test
+  public void testProcessesManifest() throws IOException {
+    StringBuilder lines = new StringBuilder("# source destination\n\n");
+    for (FileTransfer transfer : transfers("file", 7)) {
+      lines.append(transfer.getSource()).append("  ").append(transfer.getDestination());
+      lines.append('\n');
+    }
+    Files.write(lines, manifest, StandardCharsets.UTF_8);
+    FileProcessingBatchWorkflow batch = newBatch();
+    BatchProgress progress = batch.processBatch(new FileBatch(manifest.toURI().toURL(), 2), null);
+
+    assertEquals(7, progress.getTotal());
+    assertEquals(7, progress.getSucceeded());
+    assertEquals(7, processed.size());
+    assertEquals(2, maxRunning.get());
+
+    // The query of a stub without run id reaches the last run.
+    FileProcessingBatchWorkflow last =
+        client.newWorkflowStub(FileProcessingBatchWorkflow.class, "batch");
+    assertEquals(7, last.getProgress().getSucceeded());
+  }
+
+  private FileProcessingBatchWorkflow newBatch() {
+    return client.newWorkflowStub(
+        FileProcessingBatchWorkflow.class,
+        WorkflowOptions.newBuilder().setWorkflowId("batch").setTaskQueue(TASK_QUEUE).build());
+  }
+
+  private static List<FileTransfer> transfers(String name, int count) {
+    List<FileTransfer> transfers = new ArrayList<>();
+    try {
+      for (int i = 0; i < count; i++) {
+        transfers.add(
+            new FileTransfer(
+                new URL("http://source/" + name + i), new URL("http://destination/" + name + i)));
+      }
+    } catch (MalformedURLException e) {
+      throw new RuntimeException(e);
+    }
+    return transfers;
+  }
+}
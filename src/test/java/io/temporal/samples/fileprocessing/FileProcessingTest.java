@@ -19,6 +19,7 @@
 
 package io.temporal.samples.fileprocessing;
 
+import static io.temporal.samples.fileprocessing.FileProcessingWorker.DOWNLOAD_TASK_QUEUE;
 import static io.temporal.samples.fileprocessing.FileProcessingWorker.TASK_QUEUE;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Mockito.*;
@@ -26,12 +27,14 @@ import static org.mockito.Mockito.*;
 import io.temporal.api.enums.v1.TimeoutType;
 import io.temporal.client.WorkflowClient;
 import io.temporal.client.WorkflowOptions;
+import io.temporal.failure.ApplicationFailure;
 import io.temporal.failure.TimeoutFailure;
 import io.temporal.samples.fileprocessing.StoreActivities.TaskQueueFileNamePair;
 import io.temporal.testing.TestWorkflowEnvironment;
 import io.temporal.worker.Worker;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -39,6 +42,7 @@ import org.junit.Test;
 import org.junit.rules.TestWatcher;
 import org.junit.rules.Timeout;
 import org.junit.runner.Description;
+import org.mockito.InOrder;
 
 public class FileProcessingTest {
 
@@ -47,6 +51,8 @@ public class FileProcessingTest {
 
   private static final String FILE_NAME_UNPROCESSED = "input_file";
   private static final String FILE_NAME_PROCESSED = "output_file";
+  private static final String DIGEST =
+      "ed7002b439e9ac845f22357d822bac1444730fbdb6016d3ec9432297b9ec9f73";
 
   private static final URL SOURCE;
   private static final URL DESTINATION;
@@ -77,17 +83,24 @@ public class FileProcessingTest {
 
   private TestWorkflowEnvironment testEnv;
   private Worker worker;
+  private Worker downloadWorker;
   // Host specific workers.
   private Worker workerHost1;
   private Worker workerHost2;
 
   private WorkflowClient client;
 
+  // No host is selected for the download unless a test says otherwise.
+  private CacheDirectoryActivities cacheDirectory;
+
   @Before
   public void setUp() {
     testEnv = TestWorkflowEnvironment.newInstance();
     worker = testEnv.newWorker(TASK_QUEUE);
     worker.registerWorkflowImplementationTypes(FileProcessingWorkflowImpl.class);
+    cacheDirectory = mock(CacheDirectoryActivities.class);
+    worker.registerActivitiesImplementations(cacheDirectory);
+    downloadWorker = testEnv.newWorker(DOWNLOAD_TASK_QUEUE);
     workerHost1 = testEnv.newWorker(HOST_NAME_1);
     workerHost2 = testEnv.newWorker(HOST_NAME_2);
 
@@ -104,7 +117,7 @@ public class FileProcessingTest {
     StoreActivities activities = mock(StoreActivities.class);
     when(activities.download(anyObject()))
         .thenReturn(new TaskQueueFileNamePair(HOST_NAME_1, FILE_NAME_UNPROCESSED));
-    worker.registerActivitiesImplementations(activities);
+    downloadWorker.registerActivitiesImplementations(activities);
 
     StoreActivities activitiesHost1 = mock(StoreActivities.class);
     when(activitiesHost1.process(FILE_NAME_UNPROCESSED)).thenReturn(FILE_NAME_PROCESSED);
@@ -131,6 +144,57 @@ public class FileProcessingTest {
     verifyZeroInteractions(activitiesHost2);
   }
 
+  @Test
+  public void testSkipsContentAlreadyUploaded() {
+    StoreActivities activities = mock(StoreActivities.class);
+    when(activities.download(anyObject()))
+        .thenReturn(new TaskQueueFileNamePair(HOST_NAME_1, FILE_NAME_UNPROCESSED, 10, DIGEST));
+    downloadWorker.registerActivitiesImplementations(activities);
+
+    StoreActivities activitiesHost1 = mock(StoreActivities.class);
+    when(activitiesHost1.skipIfUploaded(DIGEST, DESTINATION)).thenReturn(true);
+    workerHost1.registerActivitiesImplementations(activitiesHost1);
+
+    testEnv.start();
+    FileProcessingWorkflow workflow =
+        client.newWorkflowStub(
+            FileProcessingWorkflow.class,
+            WorkflowOptions.newBuilder().setTaskQueue(TASK_QUEUE).build());
+
+    workflow.processFile(SOURCE, DESTINATION);
+
+    verify(activities).download(SOURCE);
+    verify(activitiesHost1).skipIfUploaded(DIGEST, DESTINATION);
+    verifyNoMoreInteractions(activities, activitiesHost1);
+  }
+
+  @Test
+  public void testRecordsUploadedContent() {
+    StoreActivities activities = mock(StoreActivities.class);
+    when(activities.download(anyObject()))
+        .thenReturn(new TaskQueueFileNamePair(HOST_NAME_1, FILE_NAME_UNPROCESSED, 10, DIGEST));
+    downloadWorker.registerActivitiesImplementations(activities);
+
+    StoreActivities activitiesHost1 = mock(StoreActivities.class);
+    when(activitiesHost1.process(FILE_NAME_UNPROCESSED)).thenReturn(FILE_NAME_PROCESSED);
+    workerHost1.registerActivitiesImplementations(activitiesHost1);
+
+    testEnv.start();
+    FileProcessingWorkflow workflow =
+        client.newWorkflowStub(
+            FileProcessingWorkflow.class,
+            WorkflowOptions.newBuilder().setTaskQueue(TASK_QUEUE).build());
+
+    workflow.processFile(SOURCE, DESTINATION);
+
+    InOrder inOrder = inOrder(activitiesHost1);
+    inOrder.verify(activitiesHost1).skipIfUploaded(DIGEST, DESTINATION);
+    inOrder.verify(activitiesHost1).process(FILE_NAME_UNPROCESSED);
+    inOrder.verify(activitiesHost1).upload(FILE_NAME_PROCESSED, DESTINATION);
+    inOrder.verify(activitiesHost1).recordUploaded(DIGEST, DESTINATION);
+    verifyNoMoreInteractions(activitiesHost1);
+  }
+
   @Test
   public void testHostFailover() {
     StoreActivities activities = mock(StoreActivities.class);
@@ -138,7 +202,7 @@ public class FileProcessingTest {
         .thenReturn(new TaskQueueFileNamePair(HOST_NAME_1, FILE_NAME_UNPROCESSED))
         .thenReturn(new TaskQueueFileNamePair(HOST_NAME_2, FILE_NAME_UNPROCESSED));
 
-    worker.registerActivitiesImplementations(activities);
+    downloadWorker.registerActivitiesImplementations(activities);
 
     StoreActivities activitiesHost1 = mock(StoreActivities.class);
     when(activitiesHost1.process(FILE_NAME_UNPROCESSED))
@@ -171,4 +235,186 @@ public class FileProcessingTest {
 
     verifyNoMoreInteractions(activities, activitiesHost1, activitiesHost2);
   }
+
+  @Test
+  public void testRangeProcessing() {
+    Worker rangeWorker = testEnv.newWorker("Ranges");
+    rangeWorker.addWorkflowImplementationFactory(
+        FileProcessingWorkflow.class, () -> new FileProcessingWorkflowImpl(100));
+
+    StoreActivities activities = mock(StoreActivities.class);
+    when(activities.download(anyObject()))
+        .thenReturn(new TaskQueueFileNamePair(HOST_NAME_1, FILE_NAME_UNPROCESSED, 250));
+    downloadWorker.registerActivitiesImplementations(activities);
+
+    StoreActivities activitiesHost1 = mock(StoreActivities.class);
+    when(activitiesHost1.processRange(FILE_NAME_UNPROCESSED, 0, 100)).thenReturn("range0");
+    when(activitiesHost1.processRange(FILE_NAME_UNPROCESSED, 100, 100)).thenReturn("range1");
+    when(activitiesHost1.processRange(FILE_NAME_UNPROCESSED, 200, 50)).thenReturn("range2");
+    when(activitiesHost1.merge(Arrays.asList("range0", "range1", "range2")))
+        .thenReturn(FILE_NAME_PROCESSED);
+    workerHost1.registerActivitiesImplementations(activitiesHost1);
+
+    StoreActivities activitiesHost2 = mock(StoreActivities.class);
+    workerHost2.registerActivitiesImplementations(activitiesHost2);
+
+    testEnv.start();
+    FileProcessingWorkflow workflow =
+        client.newWorkflowStub(
+            FileProcessingWorkflow.class,
+            WorkflowOptions.newBuilder().setTaskQueue("Ranges").build());
+
+    workflow.processFile(SOURCE, DESTINATION);
+
+    verify(activities).download(SOURCE);
+    verify(activitiesHost1).processRange(FILE_NAME_UNPROCESSED, 0, 100);
+    verify(activitiesHost1).processRange(FILE_NAME_UNPROCESSED, 100, 100);
+    verify(activitiesHost1).processRange(FILE_NAME_UNPROCESSED, 200, 50);
+    verify(activitiesHost1).merge(Arrays.asList("range0", "range1", "range2"));
+    verify(activitiesHost1).upload(FILE_NAME_PROCESSED, DESTINATION);
+
+    verifyNoMoreInteractions(activities, activitiesHost1);
+
+    verifyZeroInteractions(activitiesHost2);
+  }
+
+  @Test
+  public void testDownloadOnSelectedHost() {
+    when(cacheDirectory.selectDownloadHost(SOURCE)).thenReturn(HOST_NAME_2);
+
+    StoreActivities activities = mock(StoreActivities.class);
+    downloadWorker.registerActivitiesImplementations(activities);
+
+    StoreActivities activitiesHost1 = mock(StoreActivities.class);
+    workerHost1.registerActivitiesImplementations(activitiesHost1);
+
+    StoreActivities activitiesHost2 = mock(StoreActivities.class);
+    when(activitiesHost2.download(SOURCE))
+        .thenReturn(new TaskQueueFileNamePair(HOST_NAME_2, FILE_NAME_UNPROCESSED));
+    when(activitiesHost2.process(FILE_NAME_UNPROCESSED)).thenReturn(FILE_NAME_PROCESSED);
+    workerHost2.registerActivitiesImplementations(activitiesHost2);
+
+    testEnv.start();
+    FileProcessingWorkflow workflow =
+        client.newWorkflowStub(
+            FileProcessingWorkflow.class,
+            WorkflowOptions.newBuilder().setTaskQueue(TASK_QUEUE).build());
+
+    workflow.processFile(SOURCE, DESTINATION);
+
+    verify(activitiesHost2).download(SOURCE);
+    verify(activitiesHost2).process(FILE_NAME_UNPROCESSED);
+    verify(activitiesHost2).upload(FILE_NAME_PROCESSED, DESTINATION);
+
+    verifyNoMoreInteractions(activitiesHost2);
+
+    verifyZeroInteractions(activities, activitiesHost1);
+  }
+
+  @Test
+  public void testSelectedHostUnavailable() {
+    // Nobody polls the task queue of host3.
+    when(cacheDirectory.selectDownloadHost(SOURCE)).thenReturn("host3");
+
+    StoreActivities activities = mock(StoreActivities.class);
+    when(activities.download(SOURCE))
+        .thenReturn(new TaskQueueFileNamePair(HOST_NAME_1, FILE_NAME_UNPROCESSED));
+    downloadWorker.registerActivitiesImplementations(activities);
+
+    StoreActivities activitiesHost1 = mock(StoreActivities.class);
+    when(activitiesHost1.process(FILE_NAME_UNPROCESSED)).thenReturn(FILE_NAME_PROCESSED);
+    workerHost1.registerActivitiesImplementations(activitiesHost1);
+
+    StoreActivities activitiesHost2 = mock(StoreActivities.class);
+    workerHost2.registerActivitiesImplementations(activitiesHost2);
+
+    testEnv.start();
+    FileProcessingWorkflow workflow =
+        client.newWorkflowStub(
+            FileProcessingWorkflow.class,
+            WorkflowOptions.newBuilder().setTaskQueue(TASK_QUEUE).build());
+
+    workflow.processFile(SOURCE, DESTINATION);
+
+    verify(cacheDirectory).removeHost("host3");
+    verify(activities).download(SOURCE);
+    verify(activitiesHost1).process(FILE_NAME_UNPROCESSED);
+    verify(activitiesHost1).upload(FILE_NAME_PROCESSED, DESTINATION);
+
+    verifyNoMoreInteractions(activities, activitiesHost1);
+
+    verifyZeroInteractions(activitiesHost2);
+  }
+
+  @Test
+  public void testSelectedHostDiskLow() {
+    when(cacheDirectory.selectDownloadHost(SOURCE)).thenReturn(HOST_NAME_2);
+
+    StoreActivities activities = mock(StoreActivities.class);
+    when(activities.download(SOURCE))
+        .thenReturn(new TaskQueueFileNamePair(HOST_NAME_1, FILE_NAME_UNPROCESSED));
+    downloadWorker.registerActivitiesImplementations(activities);
+
+    StoreActivities activitiesHost1 = mock(StoreActivities.class);
+    when(activitiesHost1.process(FILE_NAME_UNPROCESSED)).thenReturn(FILE_NAME_PROCESSED);
+    workerHost1.registerActivitiesImplementations(activitiesHost1);
+
+    StoreActivities activitiesHost2 = mock(StoreActivities.class);
+    when(activitiesHost2.download(SOURCE))
+        .thenThrow(
+            ApplicationFailure.newFailure(
+                "Not enough disk space", FileProcessingWorkflowImpl.DISK_LOW_FAILURE));
+    workerHost2.registerActivitiesImplementations(activitiesHost2);
+
+    testEnv.start();
+    FileProcessingWorkflow workflow =
+        client.newWorkflowStub(
+            FileProcessingWorkflow.class,
+            WorkflowOptions.newBuilder().setTaskQueue(TASK_QUEUE).build());
+
+    workflow.processFile(SOURCE, DESTINATION);
+
+    // The host isn't asked again, and it still polls its task queue.
+    verify(activitiesHost2, times(1)).download(SOURCE);
+    verify(cacheDirectory, never()).removeHost(HOST_NAME_2);
+    verify(activities).download(SOURCE);
+    verify(activitiesHost1).process(FILE_NAME_UNPROCESSED);
+    verify(activitiesHost1).upload(FILE_NAME_PROCESSED, DESTINATION);
+
+    verifyNoMoreInteractions(activitiesHost2);
+  }
+
+  @Test
+  public void testSelectedHostFails() {
+    when(cacheDirectory.selectDownloadHost(SOURCE)).thenReturn(HOST_NAME_2);
+
+    StoreActivities activities = mock(StoreActivities.class);
+    when(activities.download(SOURCE))
+        .thenReturn(new TaskQueueFileNamePair(HOST_NAME_1, FILE_NAME_UNPROCESSED));
+    downloadWorker.registerActivitiesImplementations(activities);
+
+    StoreActivities activitiesHost1 = mock(StoreActivities.class);
+    when(activitiesHost1.process(FILE_NAME_UNPROCESSED)).thenReturn(FILE_NAME_PROCESSED);
+    workerHost1.registerActivitiesImplementations(activitiesHost1);
+
+    StoreActivities activitiesHost2 = mock(StoreActivities.class);
+    when(activitiesHost2.download(SOURCE)).thenThrow(new RuntimeException("connection reset"));
+    workerHost2.registerActivitiesImplementations(activitiesHost2);
+
+    testEnv.start();
+    FileProcessingWorkflow workflow =
+        client.newWorkflowStub(
+            FileProcessingWorkflow.class,
+            WorkflowOptions.newBuilder().setTaskQueue(TASK_QUEUE).build());
+
+    workflow.processFile(SOURCE, DESTINATION);
+
+    verify(activitiesHost2, times(FileProcessingWorkflowImpl.SELECTED_HOST_MAXIMUM_ATTEMPTS))
+        .download(SOURCE);
+    verify(activities).download(SOURCE);
+    verify(activitiesHost1).process(FILE_NAME_UNPROCESSED);
+    verify(activitiesHost1).upload(FILE_NAME_PROCESSED, DESTINATION);
+
+    verifyNoMoreInteractions(activitiesHost2);
+  }
 }
@@ -0,0 +1,116 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.io.Files;
+import io.temporal.failure.ApplicationFailure;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ManifestActivitiesImplTest {
+
+  private final ManifestActivitiesImpl activities = new ManifestActivitiesImpl();
+  private File manifest;
+
+  @Before
+  public void setUp() throws IOException {
+    manifest = File.createTempFile("manifest", null);
+  }
+
+  @After
+  public void tearDown() {
+    manifest.delete();
+  }
+
+  @Test
+  public void testReadsPages() throws IOException {
+    String[] lines = {
+      "# source \u2192 destination",
+      "http://source/a http://destination/a",
+      "",
+      "  http://source/b\thttp://destination/b  ",
+      "http://source/c http://destination/c"
+    };
+    URL url = write(lines);
+
+    ManifestPage first = activities.readManifest(url, 0, 0, 2);
+    assertEquals(2, first.getTransfers().size());
+    assertEquals(new URL("http://source/a"), first.getTransfers().get(0).getSource());
+    assertEquals(new URL("http://destination/b"), first.getTransfers().get(1).getDestination());
+    assertEquals(4, first.getNextLine());
+    // Counts the bytes of the multi-byte character in the comment.
+    assertEquals(
+        (String.join("\n", Arrays.copyOf(lines, 4)) + "\n").getBytes(StandardCharsets.UTF_8).length,
+        first.getNextOffset());
+    assertFalse(first.isLast());
+
+    ManifestPage second =
+        activities.readManifest(url, first.getNextOffset(), first.getNextLine(), 2);
+    assertEquals(1, second.getTransfers().size());
+    assertEquals(new URL("http://source/c"), second.getTransfers().get(0).getSource());
+    assertEquals(5, second.getNextLine());
+    assertEquals(manifest.length(), second.getNextOffset());
+    assertTrue(second.isLast());
+
+    ManifestPage after =
+        activities.readManifest(url, second.getNextOffset(), second.getNextLine(), 2);
+    assertTrue(after.getTransfers().isEmpty());
+    assertTrue(after.isLast());
+  }
+
+  @Test
+  public void testReportsLineFromOffset() throws IOException {
+    URL url = write("http://source/a http://destination/a", "http://source/b");
+    ManifestPage first = activities.readManifest(url, 0, 10, 1);
+    try {
+      activities.readManifest(url, first.getNextOffset(), first.getNextLine(), 1);
+      fail("invalid line accepted");
+    } catch (ApplicationFailure e) {
+      assertTrue(e.getOriginalMessage(), e.getOriginalMessage().startsWith("Line 12 of"));
+    }
+  }
+
+  @Test
+  public void testRejectsInvalidLine() throws IOException {
+    URL url = write("http://source/a http://destination/a", "http://source/b");
+    try {
+      activities.readManifest(url, 0, 0, 10);
+      fail("invalid line accepted");
+    } catch (ApplicationFailure e) {
+      assertEquals("InvalidManifest", e.getType());
+    }
+  }
+
+  private URL write(String... lines) throws IOException {
+    Files.write(String.join("\n", lines), manifest, StandardCharsets.UTF_8);
+    return manifest.toURI().toURL();
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Random;
+
+/**
+ * Measures the throughput of {@link MultipartUploader} in MB/s to a local {@link UploadServer}, for
+ * 1 to 16 parallel parts. The arguments are the file size in MiB and the latency in milliseconds
+ * the server adds to each part, standing in for the round trips to a remote store.
+ *
+ * <pre>
+ * ./gradlew -q benchmark \
+ *     -PmainClass=io.temporal.samples.fileprocessing.MultipartUploadBenchmark --args="256 20"
+ * </pre>
+ */
+public class MultipartUploadBenchmark {
+
+  public static void main(String[] args) throws IOException {
+    int mib = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+    long latencyMillis = args.length > 1 ? Long.parseLong(args[1]) : 20;
+    File input = File.createTempFile("benchmark", null);
+    File uploads = Files.createTempDir();
+    UploadServer receiver = new UploadServer(uploads.toPath());
+    HttpServer server =
+        UploadServer.start(
+            new InetSocketAddress("127.0.0.1", 0),
+            exchange -> {
+              try {
+                Thread.sleep(latencyMillis);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              receiver.handle(exchange);
+            });
+    try {
+      writeInput(input, mib);
+      URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/benchmark");
+      // Warms up the JIT and the page cache before measuring.
+      upload(input, url, 4);
+      for (int parts = 1; parts <= 16; parts *= 2) {
+        System.out.printf(
+            "size=%dMiB latency=%dms parallelParts=%d: %.1f MB/s%n",
+            mib, latencyMillis, parts, upload(input, url, parts));
+      }
+    } finally {
+      server.stop(0);
+      input.delete();
+      for (File file : uploads.listFiles()) {
+        file.delete();
+      }
+      uploads.delete();
+    }
+  }
+
+  private static void writeInput(File input, int mib) throws IOException {
+    Random random = new Random(mib);
+    byte[] block = new byte[1 << 20];
+    try (OutputStream out = new FileOutputStream(input)) {
+      for (int i = 0; i < mib; i++) {
+        random.nextBytes(block);
+        out.write(block);
+      }
+    }
+  }
+
+  private static double upload(File input, URL url, int parallelParts) throws IOException {
+    MultipartUploader uploader =
+        new MultipartUploader(parallelParts, MultipartUploader.DEFAULT_PART_BYTES);
+    long start = System.nanoTime();
+    uploader.upload(input.toPath(), url, sent -> {});
+    return input.length() * 1000.0 / (System.nanoTime() - start);
+  }
+}
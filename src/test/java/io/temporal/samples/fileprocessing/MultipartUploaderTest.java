@@ -0,0 +1,159 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MultipartUploaderTest {
+
+  private static final int PART_BYTES = 1024;
+
+  private File source;
+  private File uploads;
+  private UploadServer receiver;
+  private HttpServer server;
+
+  /** Status to fail the requests of each part with, and how many of them to fail. */
+  private final Map<String, Integer> failureCodes = new ConcurrentHashMap<>();
+
+  private final Map<String, AtomicInteger> failuresLeft = new ConcurrentHashMap<>();
+  private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+
+  @Before
+  public void setUp() throws IOException {
+    source = File.createTempFile("upload", null);
+    uploads = Files.createTempDir();
+    receiver = new UploadServer(uploads.toPath());
+    server =
+        UploadServer.start(
+            new InetSocketAddress("127.0.0.1", 0),
+            exchange -> {
+              String query = String.valueOf(exchange.getRequestURI().getQuery());
+              requests.computeIfAbsent(query, q -> new AtomicInteger()).incrementAndGet();
+              AtomicInteger left = failuresLeft.get(query);
+              if (left != null && left.getAndDecrement() > 0) {
+                exchange.getRequestBody().close();
+                exchange.sendResponseHeaders(failureCodes.get(query), -1);
+                exchange.close();
+                return;
+              }
+              receiver.handle(exchange);
+            });
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+    source.delete();
+    for (File file : uploads.listFiles()) {
+      file.delete();
+    }
+    uploads.delete();
+  }
+
+  @Test
+  public void testUploadsInParts() throws IOException {
+    byte[] content = write(5 * PART_BYTES + 3);
+    AtomicLong progress = new AtomicLong();
+    upload(new MultipartUploader(3, PART_BYTES), progress);
+    assertArrayEquals(content, Files.toByteArray(receiver.getFile("/out").toFile()));
+    assertEquals(content.length, progress.get());
+    assertEquals(1, requests.get("complete=6").get());
+    // Only the assembled file is left.
+    assertEquals(1, uploads.listFiles().length);
+  }
+
+  @Test
+  public void testUploadsEmptyFile() throws IOException {
+    upload(new MultipartUploader(3, PART_BYTES), new AtomicLong());
+    assertEquals(0, receiver.getFile("/out").toFile().length());
+  }
+
+  @Test
+  public void testRetriesFailedPart() throws IOException {
+    byte[] content = write(4 * PART_BYTES);
+    failRequests("part=1", 503, 2);
+    upload(new MultipartUploader(2, PART_BYTES), new AtomicLong());
+    assertArrayEquals(content, Files.toByteArray(receiver.getFile("/out").toFile()));
+    assertEquals(3, requests.get("part=1").get());
+    assertEquals(1, requests.get("part=2").get());
+  }
+
+  @Test
+  public void testFailsAfterMaxAttempts() throws IOException {
+    write(4 * PART_BYTES);
+    failRequests("part=3", 503, Integer.MAX_VALUE);
+    try {
+      upload(new MultipartUploader(2, PART_BYTES), new AtomicLong());
+      fail("upload didn't fail");
+    } catch (IOException e) {
+      assertEquals(MultipartUploader.MAX_PART_ATTEMPTS, requests.get("part=3").get());
+    }
+    assertFalse(requests.containsKey("complete=4"));
+    assertFalse(receiver.getFile("/out").toFile().exists());
+  }
+
+  @Test
+  public void testDoesNotRetryRejectedPart() throws IOException {
+    write(2 * PART_BYTES);
+    failRequests("part=0", 403, Integer.MAX_VALUE);
+    try {
+      upload(new MultipartUploader(2, PART_BYTES), new AtomicLong());
+      fail("upload didn't fail");
+    } catch (IOException e) {
+      assertEquals(1, requests.get("part=0").get());
+    }
+  }
+
+  private byte[] write(int size) throws IOException {
+    byte[] content = new byte[size];
+    new Random().nextBytes(content);
+    Files.write(content, source);
+    return content;
+  }
+
+  private void failRequests(String query, int code, int times) {
+    failureCodes.put(query, code);
+    failuresLeft.put(query, new AtomicInteger(times));
+  }
+
+  private void upload(MultipartUploader uploader, AtomicLong progress) throws IOException {
+    URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/out");
+    uploader.upload(source.toPath(), url, progress::set);
+  }
+}
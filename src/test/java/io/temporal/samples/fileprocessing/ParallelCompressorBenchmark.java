@@ -0,0 +1,97 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Measures the throughput of {@link ParallelCompressor} in MB/s of input for a few file sizes,
+ * from a single thread up to all the cores, next to a plain {@link GZIPOutputStream} which is what
+ * a single core compression does. The argument is the largest file size in MiB.
+ *
+ * <pre>
+ * ./gradlew -q benchmark \
+ *     -PmainClass=io.temporal.samples.fileprocessing.ParallelCompressorBenchmark --args="1024"
+ * </pre>
+ */
+public class ParallelCompressorBenchmark {
+
+  public static void main(String[] args) throws IOException {
+    int maxMiB = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+    int cores = Runtime.getRuntime().availableProcessors();
+    File input = File.createTempFile("benchmark", null);
+    File output = File.createTempFile("benchmark", ".gz");
+    try {
+      for (int mib = 16; mib <= maxMiB; mib *= 4) {
+        writeInput(input, mib);
+        // Warms up the JIT and the page cache before measuring.
+        compress(input, output, cores);
+        System.out.printf("size=%dMiB gzip: %.1f MB/s%n", mib, gzip(input, output));
+        for (int threads = 1; threads <= cores; threads *= 2) {
+          System.out.printf(
+              "size=%dMiB threads=%d: %.1f MB/s, ratio %.2f%n",
+              mib,
+              threads,
+              compress(input, output, threads),
+              (double) input.length() / output.length());
+        }
+      }
+    } finally {
+      input.delete();
+      output.delete();
+    }
+  }
+
+  private static void writeInput(File input, int mib) throws IOException {
+    Random random = new Random(mib);
+    try (OutputStream out = new FileOutputStream(input)) {
+      for (int i = 0; i < mib; i++) {
+        out.write(ParallelCompressorTest.compressible(1 << 20, random));
+      }
+    }
+  }
+
+  private static double compress(File input, File output, int threads) throws IOException {
+    long start = System.nanoTime();
+    new ParallelCompressor(
+            threads, ParallelCompressor.DEFAULT_BLOCK_BYTES, Deflater.DEFAULT_COMPRESSION)
+        .compress(input.toPath(), output.toPath());
+    return megabytesPerSecond(input.length(), System.nanoTime() - start);
+  }
+
+  private static double gzip(File input, File output) throws IOException {
+    long start = System.nanoTime();
+    try (OutputStream out = new GZIPOutputStream(new FileOutputStream(output), 64 * 1024)) {
+      Files.copy(input.toPath(), out);
+    }
+    return megabytesPerSecond(input.length(), System.nanoTime() - start);
+  }
+
+  private static double megabytesPerSecond(long bytes, long nanos) {
+    return bytes * 1000.0 / nanos;
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.ByteStreams;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelCompressorTest {
+
+  private static final int BLOCK_BYTES = 64 * 1024;
+
+  private File input;
+  private File output;
+
+  @Before
+  public void setUp() throws IOException {
+    input = File.createTempFile("input", null);
+    output = File.createTempFile("output", ".gz");
+  }
+
+  @After
+  public void tearDown() {
+    input.delete();
+    output.delete();
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    int[] sizes = {0, 1, BLOCK_BYTES - 1, BLOCK_BYTES, 10 * BLOCK_BYTES + 12345};
+    for (int size : sizes) {
+      for (int threads : new int[] {1, 4}) {
+        byte[] content = compressible(size, new Random(size));
+        Files.write(input.toPath(), content);
+        new ParallelCompressor(threads, BLOCK_BYTES, Deflater.DEFAULT_COMPRESSION)
+            .compress(input.toPath(), output.toPath());
+        assertArrayEquals("size=" + size + " threads=" + threads, content, gunzip(output));
+      }
+    }
+  }
+
+  @Test
+  public void testCompressesAcrossBlocks() throws IOException {
+    // A random pattern shorter than the deflate window, repeated. Without the dictionary every
+    // block would start by storing the pattern again.
+    byte[] pattern = new byte[16 * 1024];
+    new Random(1).nextBytes(pattern);
+    byte[] content = new byte[8 * BLOCK_BYTES];
+    for (int i = 0; i < content.length; i += pattern.length) {
+      System.arraycopy(pattern, 0, content, i, pattern.length);
+    }
+    Files.write(input.toPath(), content);
+    new ParallelCompressor(4, BLOCK_BYTES, Deflater.DEFAULT_COMPRESSION)
+        .compress(input.toPath(), output.toPath());
+    assertArrayEquals(content, gunzip(output));
+    assertTrue(String.valueOf(output.length()), output.length() < 2 * pattern.length);
+  }
+
+  @Test
+  public void testRangesConcatenate() throws IOException {
+    byte[] content = compressible(5 * BLOCK_BYTES + 7, new Random(2));
+    Files.write(input.toPath(), content);
+    ParallelCompressor compressor =
+        new ParallelCompressor(2, BLOCK_BYTES, Deflater.DEFAULT_COMPRESSION);
+    int rangeBytes = 2 * BLOCK_BYTES + 3;
+    File range = File.createTempFile("range", ".gz");
+    try (OutputStream out = new FileOutputStream(output)) {
+      for (int offset = 0; offset < content.length; offset += rangeBytes) {
+        int length = Math.min(rangeBytes, content.length - offset);
+        compressor.compress(input.toPath(), offset, length, range.toPath());
+        Files.copy(range.toPath(), out);
+      }
+    } finally {
+      range.delete();
+    }
+    assertArrayEquals(content, gunzip(output));
+  }
+
+  @Test
+  public void testStoresIncompressibleInput() throws IOException {
+    byte[] content = new byte[3 * 65535 + 17];
+    new Random(3).nextBytes(content);
+    Files.write(input.toPath(), content);
+    new ParallelCompressor(4, BLOCK_BYTES, Deflater.DEFAULT_COMPRESSION)
+        .compress(input.toPath(), output.toPath());
+    assertArrayEquals(content, gunzip(output));
+    // The gzip header and trailer plus a 5 byte header per stored block of 64 KiB.
+    assertEquals(content.length + 18 + 4 * 5, output.length());
+  }
+
+  @Test
+  public void testStoredRangesConcatenate() throws IOException {
+    byte[] content = compressible(5 * BLOCK_BYTES + 7, new Random(4));
+    Files.write(input.toPath(), content);
+    ParallelCompressor compressor = new ParallelCompressor(2, BLOCK_BYTES, Deflater.NO_COMPRESSION);
+    int[] rangeBytes = {0, 65535, 2 * BLOCK_BYTES + 3};
+    File range = File.createTempFile("range", ".gz");
+    try (OutputStream out = new FileOutputStream(output)) {
+      int offset = 0;
+      for (int i = 0; offset < content.length; i++) {
+        int length = Math.min(rangeBytes[i % rangeBytes.length], content.length - offset);
+        compressor.compress(input.toPath(), offset, length, range.toPath());
+        Files.copy(range.toPath(), out);
+        offset += length;
+      }
+    } finally {
+      range.delete();
+    }
+    assertArrayEquals(content, gunzip(output));
+  }
+
+  /** Random words, which compress about as well as text or logs. */
+  static byte[] compressible(int size, Random random) {
+    byte[] content = new byte[size];
+    for (int i = 0; i < size; i++) {
+      content[i] = random.nextInt(8) == 0 ? (byte) ' ' : (byte) ('a' + random.nextInt(16));
+    }
+    return content;
+  }
+
+  private static byte[] gunzip(File file) throws IOException {
+    try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+      return ByteStreams.toByteArray(in);
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Compares the ways the process step can move a file through, in MB/s of input: a stream copy
+ * through a heap buffer, a channel transferTo, writes of memory-mapped windows, and the process
+ * step itself on input it stores and on input it compresses. The argument is the file size in
+ * MiB.
+ *
+ * <pre>
+ * ./gradlew -q benchmark \
+ *     -PmainClass=io.temporal.samples.fileprocessing.ProcessThroughputBenchmark --args="1024"
+ * </pre>
+ */
+public class ProcessThroughputBenchmark {
+
+  private interface Copy {
+    void run(File input, File output) throws IOException;
+  }
+
+  public static void main(String[] args) throws IOException {
+    int mib = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+    File incompressible = File.createTempFile("benchmark", null);
+    File compressible = File.createTempFile("benchmark", null);
+    File output = File.createTempFile("benchmark", ".gz");
+    try {
+      writeInput(incompressible, mib, false);
+      writeInput(compressible, mib, true);
+      ParallelCompressor compressor = new ParallelCompressor();
+      measure("stream copy", incompressible, output, ProcessThroughputBenchmark::streamCopy);
+      measure("transferTo", incompressible, output, ProcessThroughputBenchmark::transferTo);
+      measure("mmap windows", incompressible, output, ProcessThroughputBenchmark::mappedWrite);
+      measure(
+          "process, stored",
+          incompressible,
+          output,
+          (in, out) -> compressor.compress(in.toPath(), out.toPath()));
+      measure(
+          "process, deflated",
+          compressible,
+          output,
+          (in, out) -> compressor.compress(in.toPath(), out.toPath()));
+    } finally {
+      incompressible.delete();
+      compressible.delete();
+      output.delete();
+    }
+  }
+
+  private static void measure(String name, File input, File output, Copy copy)
+      throws IOException {
+    // Warms up the JIT and the page cache before measuring.
+    copy.run(input, output);
+    long start = System.nanoTime();
+    copy.run(input, output);
+    double megabytesPerSecond = input.length() * 1000.0 / (System.nanoTime() - start);
+    System.out.printf(
+        "%s: %.1f MB/s, output %.1f%% of input%n",
+        name, megabytesPerSecond, 100.0 * output.length() / input.length());
+  }
+
+  private static void streamCopy(File input, File output) throws IOException {
+    try (InputStream in = new FileInputStream(input);
+        OutputStream out = new FileOutputStream(output)) {
+      byte[] buffer = new byte[64 * 1024];
+      for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+        out.write(buffer, 0, read);
+      }
+    }
+  }
+
+  private static void transferTo(File input, File output) throws IOException {
+    try (FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+        FileChannel out = open(output)) {
+      for (long position = 0; position < in.size(); ) {
+        position += in.transferTo(position, in.size() - position, out);
+      }
+    }
+  }
+
+  private static void mappedWrite(File input, File output) throws IOException {
+    try (FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+        FileChannel out = open(output)) {
+      for (long position = 0; position < in.size(); ) {
+        long length = Math.min(ParallelCompressor.MAP_WINDOW_BYTES, in.size() - position);
+        ByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+        while (window.hasRemaining()) {
+          out.write(window);
+        }
+        position += length;
+      }
+    }
+  }
+
+  private static FileChannel open(File output) throws IOException {
+    return FileChannel.open(
+        output.toPath(),
+        StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE);
+  }
+
+  private static void writeInput(File input, int mib, boolean compressible) throws IOException {
+    Random random = new Random(mib);
+    byte[] block = new byte[1 << 20];
+    try (OutputStream out = new FileOutputStream(input)) {
+      for (int i = 0; i < mib; i++) {
+        if (compressible) {
+          block = ParallelCompressorTest.compressible(block.length, random);
+        } else {
+          random.nextBytes(block);
+        }
+        out.write(block);
+      }
+    }
+  }
+}
@@ -0,0 +1,397 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.fileprocessing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import io.temporal.failure.ApplicationFailure;
+import io.temporal.samples.fileprocessing.StoreActivities.TaskQueueFileNamePair;
+import io.temporal.samples.fileprocessing.StoreActivitiesImpl.DownloadProgress;
+import io.temporal.testing.TestActivityEnvironment;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StoreActivitiesImplTest {
+
+  private static final String HOST_TASK_QUEUE = "host1";
+  private static final String WORKFLOW_ID = "workflow1";
+
+  private TestActivityEnvironment testEnv;
+  private StoreActivities activities;
+  private File source;
+
+  @Before
+  public void setUp() throws IOException {
+    testEnv = TestActivityEnvironment.newInstance();
+    testEnv.registerActivitiesImplementations(new StoreActivitiesImpl(HOST_TASK_QUEUE));
+    activities = testEnv.newActivityStub(StoreActivities.class);
+    source = File.createTempFile("source", null);
+  }
+
+  @After
+  public void tearDown() {
+    testEnv.close();
+    source.delete();
+  }
+
+  @Test
+  public void testDownloadLargeFile() throws IOException {
+    // A sparse file, larger than the heap would comfortably hold as a byte array.
+    long size = 512L << 20;
+    try (RandomAccessFile file = new RandomAccessFile(source, "rw")) {
+      file.setLength(size);
+      for (long position = 0; position < size; position += 64L << 20) {
+        file.seek(position + 7);
+        file.writeLong(position);
+      }
+    }
+    AtomicReference<DownloadProgress> heartbeat = new AtomicReference<>();
+    testEnv.setActivityHeartbeatListener(DownloadProgress.class, heartbeat::set);
+
+    TaskQueueFileNamePair downloaded = activities.download(source.toURI().toURL());
+
+    File destination = new File(downloaded.getFileName());
+    try {
+      assertEquals(HOST_TASK_QUEUE, downloaded.getHostTaskQueue());
+      assertEquals(size, destination.length());
+      assertTrue(Files.asByteSource(source).contentEquals(Files.asByteSource(destination)));
+      assertEquals(size, heartbeat.get().getOffset());
+    } finally {
+      destination.delete();
+      destination.getParentFile().delete();
+    }
+  }
+
+  /** A retry after the ranges were deleted returns the merged file. */
+  @Test
+  public void testMergeRetry() throws IOException {
+    File directory = Files.createTempDir();
+    File range0 = new File(directory, "processed-0.gz");
+    File range1 = new File(directory, "processed-1.gz");
+    Files.write(new byte[] {1, 2}, range0);
+    Files.write(new byte[] {3}, range1);
+    // Left by an attempt that died part way.
+    Files.write(new byte[] {9}, new File(directory, "processed.gz.tmp"));
+    StoreActivitiesImpl store = new StoreActivitiesImpl(HOST_TASK_QUEUE);
+    List<String> ranges = Arrays.asList(range0.getAbsolutePath(), range1.getAbsolutePath());
+    try {
+      File merged = new File(store.merge(ranges));
+      assertArrayEquals(new byte[] {1, 2, 3}, Files.toByteArray(merged));
+      assertFalse(range0.exists() || range1.exists());
+
+      assertEquals(merged.getAbsolutePath(), store.merge(ranges));
+      assertArrayEquals(new byte[] {1, 2, 3}, Files.toByteArray(merged));
+    } finally {
+      for (File file : directory.listFiles()) {
+        file.delete();
+      }
+      directory.delete();
+    }
+  }
+
+  @Test
+  public void testResumeFromRecordedOffset() throws IOException {
+    byte[] content = new byte[3 * StoreActivitiesImpl.DOWNLOAD_BUFFER_BYTES + 123];
+    new Random().nextBytes(content);
+    Files.write(content, source);
+    long failAt = StoreActivitiesImpl.DOWNLOAD_BUFFER_BYTES + 17;
+    FailingUrlHandler handler = new FailingUrlHandler(source, failAt);
+    URL url = new URL(null, "failing:" + source.getName(), handler);
+    StoreActivitiesImpl store = new StoreActivitiesImpl(HOST_TASK_QUEUE);
+    List<DownloadProgress> heartbeats = new ArrayList<>();
+
+    try {
+      store.download(url, WORKFLOW_ID, null, heartbeats::add);
+      fail("download should fail");
+    } catch (IOException e) {
+      // The failed attempt recorded how far it got.
+    }
+    DownloadProgress progress = heartbeats.get(heartbeats.size() - 1);
+    assertTrue(progress.getOffset() > 0 && progress.getOffset() <= failAt);
+
+    // A retry on the same host receives the last heartbeat.
+    String fileName = store.download(url, WORKFLOW_ID, progress, heartbeats::add).getFileName();
+    File destination = new File(fileName);
+    try {
+      assertEquals(progress.getFileName(), fileName);
+      assertArrayEquals(content, Files.toByteArray(destination));
+      assertEquals(content.length - progress.getOffset(), handler.bytesRead.get());
+      // A retry on another host starts over.
+      StoreActivitiesImpl otherHost = new StoreActivitiesImpl("host2");
+      File other =
+          new File(otherHost.download(url, WORKFLOW_ID, progress, heartbeats::add).getFileName());
+      assertNotEquals(fileName, other.getAbsolutePath());
+      assertArrayEquals(content, Files.toByteArray(other));
+      other.delete();
+      other.getParentFile().delete();
+    } finally {
+      destination.delete();
+      destination.getParentFile().delete();
+    }
+  }
+
+  @Test
+  public void testDownloadFromCache() throws IOException {
+    byte[] content = new byte[StoreActivitiesImpl.DOWNLOAD_BUFFER_BYTES + 5];
+    new Random().nextBytes(content);
+    Files.write(content, source);
+    File cacheDirectory = Files.createTempDir();
+    ContentCache cache = new ContentCache(cacheDirectory.toPath(), 1L << 20);
+    StoreActivitiesImpl store =
+        new StoreActivitiesImpl(
+            HOST_TASK_QUEUE,
+            new ParallelCompressor(),
+            cache,
+            null,
+            null,
+            new MultipartUploader());
+    URL url = source.toURI().toURL();
+    List<File> downloaded = new ArrayList<>();
+    try {
+      downloaded.add(download(store, url));
+      downloaded.add(download(store, url));
+      assertEquals(1, cache.getMisses());
+      assertEquals(1, cache.getHits());
+      assertNotEquals(downloaded.get(0), downloaded.get(1));
+      assertArrayEquals(content, Files.toByteArray(downloaded.get(1)));
+
+      // A source that changed is downloaded again.
+      content[0]++;
+      Files.write(content, source);
+      source.setLastModified(source.lastModified() + 2000);
+      downloaded.add(download(store, url));
+      assertEquals(2, cache.getMisses());
+      assertArrayEquals(content, Files.toByteArray(downloaded.get(2)));
+      assertEquals(1, cache.getEntries());
+    } finally {
+      for (File file : downloaded) {
+        file.delete();
+        file.getParentFile().delete();
+      }
+      for (File file : cacheDirectory.listFiles()) {
+        file.delete();
+      }
+      cacheDirectory.delete();
+    }
+  }
+
+  @Test
+  public void testRefusesDownloadWhenDiskIsLow() throws IOException {
+    Files.write(new byte[10], source);
+    File staging = Files.createTempDir();
+    // No disk has that much space.
+    DiskQuota quota =
+        new DiskQuota(staging.toPath(), Long.MAX_VALUE, Long.MAX_VALUE, Duration.ZERO);
+    StoreActivitiesImpl store =
+        new StoreActivitiesImpl(
+            HOST_TASK_QUEUE,
+            new ParallelCompressor(),
+            null,
+            quota,
+            null,
+            new MultipartUploader());
+    try {
+      store.download(source.toURI().toURL(), WORKFLOW_ID, null, progress -> {});
+      fail("download should be refused");
+    } catch (ApplicationFailure e) {
+      assertEquals("DiskLow", e.getType());
+    } finally {
+      quota.release(WORKFLOW_ID);
+      staging.delete();
+    }
+  }
+
+  @Test
+  public void testDigestOfResumedAndCachedDownloads() throws IOException {
+    byte[] content = new byte[3 * StoreActivitiesImpl.DOWNLOAD_BUFFER_BYTES + 123];
+    new Random().nextBytes(content);
+    Files.write(content, source);
+    String expected = DigestIndex.toHex(DigestIndex.newDigest().digest(content));
+    File cacheDirectory = Files.createTempDir();
+    File index = File.createTempFile("digests", null);
+    DigestIndex digests = new DigestIndex(index.toPath());
+    StoreActivitiesImpl store =
+        new StoreActivitiesImpl(
+            HOST_TASK_QUEUE,
+            new ParallelCompressor(),
+            null,
+            null,
+            digests,
+            new MultipartUploader(),
+            Duration.ZERO);
+    // The cache opens its own connections to the source, which the failing handler would count.
+    ContentCache cache = new ContentCache(cacheDirectory.toPath(), 1L << 20);
+    StoreActivitiesImpl cachingStore =
+        new StoreActivitiesImpl(
+            HOST_TASK_QUEUE,
+            new ParallelCompressor(),
+            cache,
+            null,
+            digests,
+            new MultipartUploader(),
+            Duration.ZERO);
+    FailingUrlHandler handler =
+        new FailingUrlHandler(source, StoreActivitiesImpl.DOWNLOAD_BUFFER_BYTES + 17);
+    URL failing = new URL(null, "failing:" + source.getName(), handler);
+    List<DownloadProgress> heartbeats = new ArrayList<>();
+    List<File> downloaded = new ArrayList<>();
+    try {
+      try {
+        store.download(failing, WORKFLOW_ID, null, heartbeats::add);
+        fail("download should fail");
+      } catch (IOException e) {
+        // The retry hashes the part downloaded so far from the disk.
+      }
+      DownloadProgress progress = heartbeats.get(heartbeats.size() - 1);
+      heartbeats.clear();
+      TaskQueueFileNamePair resumed =
+          store.download(failing, WORKFLOW_ID, progress, heartbeats::add);
+      downloaded.add(new File(resumed.getFileName()));
+      assertEquals(expected, resumed.getDigest());
+      // Rehashing the part already downloaded keeps the attempt alive without losing the offset.
+      assertEquals(progress.getOffset(), heartbeats.get(0).getOffset());
+
+      URL url = source.toURI().toURL();
+      TaskQueueFileNamePair fresh = cachingStore.download(url, WORKFLOW_ID, null, p -> {});
+      downloaded.add(new File(fresh.getFileName()));
+      assertEquals(expected, fresh.getDigest());
+      heartbeats.clear();
+      TaskQueueFileNamePair cached = cachingStore.download(url, WORKFLOW_ID, null, heartbeats::add);
+      downloaded.add(new File(cached.getFileName()));
+      assertEquals(1, cache.getHits());
+      assertEquals(expected, cached.getDigest());
+      // Hashing the cached file heartbeats, without progress to resume from.
+      assertFalse(heartbeats.isEmpty());
+      for (DownloadProgress heartbeat : heartbeats) {
+        assertNull(heartbeat);
+      }
+    } finally {
+      for (File file : downloaded) {
+        file.delete();
+        file.getParentFile().delete();
+      }
+      for (File file : cacheDirectory.listFiles()) {
+        file.delete();
+      }
+      cacheDirectory.delete();
+      index.delete();
+    }
+  }
+
+  @Test
+  public void testSkipsContentAlreadyUploaded() throws IOException {
+    File index = File.createTempFile("digests", null);
+    DigestIndex digests = new DigestIndex(index.toPath());
+    TestActivityEnvironment env = TestActivityEnvironment.newInstance();
+    try {
+      env.registerActivitiesImplementations(
+          new StoreActivitiesImpl(
+              HOST_TASK_QUEUE,
+              new ParallelCompressor(),
+              null,
+              null,
+              digests,
+              new MultipartUploader()));
+      StoreActivities store = env.newActivityStub(StoreActivities.class);
+      String digest = DigestIndex.toHex(DigestIndex.newDigest().digest(new byte[10]));
+      URL destination = new URL("http://destination/processed.gz");
+
+      assertFalse(store.skipIfUploaded(digest, destination));
+      store.recordUploaded(digest, destination);
+      assertTrue(store.skipIfUploaded(digest, destination));
+      assertFalse(store.skipIfUploaded(digest, new URL("http://elsewhere/processed.gz")));
+    } finally {
+      env.close();
+      index.delete();
+    }
+  }
+
+  private static File download(StoreActivitiesImpl store, URL url) throws IOException {
+    return new File(store.download(url, WORKFLOW_ID, null, progress -> {}).getFileName());
+  }
+
+  /** Serves a file, failing the first connection after a number of bytes. */
+  private static class FailingUrlHandler extends URLStreamHandler {
+    private final File file;
+    private final long failAt;
+    private final AtomicLong bytesRead = new AtomicLong();
+    private boolean failed;
+
+    FailingUrlHandler(File file, long failAt) {
+      this.file = file;
+      this.failAt = failAt;
+    }
+
+    @Override
+    protected URLConnection openConnection(URL url) {
+      boolean fail = !failed;
+      failed = true;
+      bytesRead.set(0);
+      return new URLConnection(url) {
+        @Override
+        public void connect() {}
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+          InputStream limited =
+              fail
+                  ? ByteStreams.limit(new FileInputStream(file), failAt)
+                  : new FileInputStream(file);
+          return new FilterInputStream(limited) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+              int read = super.read(b, off, len);
+              if (read == -1 && fail) {
+                throw new IOException("simulated connection reset");
+              }
+              bytesRead.addAndGet(Math.max(read, 0));
+              return read;
+            }
+          };
+        }
+      };
+    }
+  }
+}
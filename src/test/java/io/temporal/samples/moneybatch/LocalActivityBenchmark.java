@@ -0,0 +1,116 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneybatch;
+
+import static io.temporal.samples.common.Benchmarks.countHistoryEvents;
+import static io.temporal.samples.moneybatch.AccountActivityWorker.TASK_QUEUE;
+
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.testing.TestWorkflowEnvironment;
+import io.temporal.worker.Worker;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Compares the batch latency and the history events per transfer with the account calls executed
+ * as activities and as local activities. Each batch is measured from its first withdraw signal to
+ * its deposit, and the next batch is sent once the previous one is deposited. Runs against the
+ * in-process test service, where an activity task doesn't cross the network, so the latency
+ * difference is smaller than against a real service. The arguments are the number of transfers per
+ * mode and the number of withdrawals per deposit.
+ *
+ * <pre>
+ * ./gradlew -q benchmark -PmainClass=io.temporal.samples.moneybatch.LocalActivityBenchmark \
+ *     --args="1000 1"
+ * </pre>
+ */
+public class LocalActivityBenchmark {
+
+  private static final int WARM_UP_BATCHES = 100;
+
+  public static void main(String[] args) throws InterruptedException {
+    int transfers = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+    int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+    System.out.println("activities:       " + run(transfers, batchSize, false));
+    System.out.println("local activities: " + run(transfers, batchSize, true));
+    System.exit(0);
+  }
+
+  private static String run(int transfers, int batchSize, boolean localActivities)
+      throws InterruptedException {
+    TestWorkflowEnvironment testEnv = TestWorkflowEnvironment.newInstance();
+    Worker worker = testEnv.newWorker(TASK_QUEUE);
+    // Never continues as new, so that a single history contains all the events.
+    worker.addWorkflowImplementationFactory(
+        AccountTransferWorkflow.class,
+        () ->
+            new AccountTransferWorkflowImpl(Integer.MAX_VALUE, Integer.MAX_VALUE, localActivities));
+    DepositCountingAccount account = new DepositCountingAccount();
+    worker.registerActivitiesImplementations(account);
+    testEnv.start();
+
+    WorkflowClient client = testEnv.getWorkflowClient();
+    int batches = transfers / batchSize;
+    long[] latencies = new long[batches];
+    long events = 0;
+    for (int warmUp = 1; warmUp >= 0; warmUp--) {
+      String to = warmUp == 1 ? "warmup" : "account2";
+      WorkflowOptions options =
+          WorkflowOptions.newBuilder().setTaskQueue(TASK_QUEUE).setWorkflowId(to).build();
+      AccountTransferWorkflow workflow =
+          client.newWorkflowStub(AccountTransferWorkflow.class, options);
+      WorkflowClient.start(
+          workflow::deposit, to, new FlushPolicy(batchSize, 0, Duration.ZERO), null);
+      for (int i = 0; i < (warmUp == 1 ? WARM_UP_BATCHES : batches); i++) {
+        long start = System.nanoTime();
+        for (int j = 0; j < batchSize; j++) {
+          workflow.withdraw("account1", UUID.randomUUID().toString(), 100);
+        }
+        account.deposits.acquire();
+        if (warmUp == 0) {
+          latencies[i] = System.nanoTime() - start;
+        }
+      }
+      if (warmUp == 0) {
+        events = countHistoryEvents(testEnv, to);
+      }
+    }
+    testEnv.close();
+    Arrays.sort(latencies);
+    return String.format(
+        "%d transfers, %.1f history events per transfer, batch latency p50=%.2fms p99=%.2fms",
+        batches * batchSize,
+        (double) events / (batches * batchSize),
+        latencies[batches / 2] / 1e6,
+        latencies[(int) Math.ceil(batches * 0.99) - 1] / 1e6);
+  }
+
+  private static class DepositCountingAccount extends NoopAccount {
+    private final Semaphore deposits = new Semaphore(0);
+
+    @Override
+    public void deposit(String accountId, String referenceId, int amountCents) {
+      deposits.release();
+    }
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneybatch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Account of the benchmarks. Every withdrawal succeeds and nothing is stored. Override {@link
+ * #deposit} to observe the deposits.
+ */
+class NoopAccount implements Account {
+
+  @Override
+  public void deposit(String accountId, String referenceId, int amountCents) {}
+
+  @Override
+  public void withdraw(String accountId, String referenceId, int amountCents) {}
+
+  @Override
+  public List<WithdrawalResult> withdrawBatch(List<Withdrawal> withdrawals) {
+    List<WithdrawalResult> results = new ArrayList<>(withdrawals.size());
+    for (Withdrawal withdrawal : withdrawals) {
+      results.add(new WithdrawalResult(withdrawal.getReferenceId(), true, null));
+    }
+    return results;
+  }
+}
@@ -0,0 +1,228 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneybatch;
+
+import static io.temporal.samples.moneybatch.AccountActivityWorker.TASK_QUEUE;
+
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.client.WorkflowStub;
+import io.temporal.testing.TestWorkflowEnvironment;
+import io.temporal.worker.Worker;
+import io.temporal.workflow.Workflow;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures the retained heap of {@link ReferenceWindow} against the {@code HashSet<String>} it
+ * replaced, and the time a worker needs to replay an {@link AccountTransferWorkflow} that received
+ * a given number of withdraw signals with either of them. Replay time is the latency of a query
+ * against the terminated workflow, which the worker can only answer by replaying its whole
+ * history. Neither variant continues as new, so the history holds every signal. The sample itself
+ * continues as new every {@link AccountTransferWorkflowImpl#MAX_SIGNALS_PER_RUN} signals, which
+ * bounds its replay time whatever the number of signals.
+ *
+ * <p>To run with the default 10k, 100k and 1M signals:
+ *
+ * <pre>
+ * ./gradlew -q benchmark -PmainClass=io.temporal.samples.moneybatch.ReferenceWindowBenchmark
+ * </pre>
+ */
+public class ReferenceWindowBenchmark {
+
+  public static void main(String[] args) {
+    int[] sizes = {10_000, 100_000, 1_000_000};
+    if (args.length > 0) {
+      sizes = new int[args.length];
+      for (int i = 0; i < args.length; i++) {
+        sizes[i] = Integer.parseInt(args[i]);
+      }
+    }
+    System.out.printf(
+        "%10s %14s %18s %18s %18s%n",
+        "signals",
+        "HashSet bytes",
+        "ReferenceWindow b",
+        "HashSet replay ms",
+        "Window replay ms");
+    for (int size : sizes) {
+      long hashSetBytes = hashSetHeap(size);
+      long windowBytes = windowHeap(size);
+      long hashSetReplayMillis = replayMillis(size, false);
+      long windowReplayMillis = replayMillis(size, true);
+      System.out.printf(
+          "%10d %14d %18d %18d %18d%n",
+          size, hashSetBytes, windowBytes, hashSetReplayMillis, windowReplayMillis);
+    }
+    System.exit(0);
+  }
+
+  private static long hashSetHeap(int size) {
+    long before = usedHeap();
+    Set<String> references = new HashSet<>();
+    for (int i = 0; i < size; i++) {
+      references.add(UUID.randomUUID().toString());
+    }
+    long after = usedHeap();
+    // Keeps the set reachable until the measurement is taken.
+    if (references.size() != size) {
+      throw new IllegalStateException();
+    }
+    return after - before;
+  }
+
+  private static long windowHeap(int size) {
+    long before = usedHeap();
+    // Sized to hold every reference so that the comparison with HashSet is like for like.
+    ReferenceWindow references = new ReferenceWindow(size, Duration.ofDays(1));
+    for (int i = 0; i < size; i++) {
+      references.add(UUID.randomUUID().toString(), 0);
+    }
+    long after = usedHeap();
+    if (references.size() != size) {
+      throw new IllegalStateException();
+    }
+    return after - before;
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /** @param window deduplicate with {@link ReferenceWindow} instead of a HashSet */
+  private static long replayMillis(int signals, boolean window) {
+    TestWorkflowEnvironment testEnv = TestWorkflowEnvironment.newInstance();
+    try {
+      Worker worker = testEnv.newWorker(TASK_QUEUE);
+      if (window) {
+        worker.addWorkflowImplementationFactory(
+            AccountTransferWorkflow.class,
+            () -> new AccountTransferWorkflowImpl(Integer.MAX_VALUE, Integer.MAX_VALUE));
+      } else {
+        worker.addWorkflowImplementationFactory(
+            AccountTransferWorkflow.class, HashSetTransferWorkflowImpl::new);
+      }
+      CountingAccount account = new CountingAccount();
+      worker.registerActivitiesImplementations(account);
+      testEnv.start();
+
+      String to = "benchmark-" + signals;
+      WorkflowOptions options =
+          WorkflowOptions.newBuilder().setTaskQueue(TASK_QUEUE).setWorkflowId(to).build();
+      WorkflowClient client = testEnv.getWorkflowClient();
+      AccountTransferWorkflow starter =
+          client.newWorkflowStub(AccountTransferWorkflow.class, options);
+      WorkflowClient.start(starter::deposit, to, new FlushPolicy(signals, 0, Duration.ZERO), null);
+      AccountTransferWorkflow workflow = client.newWorkflowStub(AccountTransferWorkflow.class, to);
+      for (int i = 0; i < signals; i++) {
+        workflow.withdraw("account1", UUID.randomUUID().toString(), 1);
+      }
+      account.deposited.await();
+      // The workflow never completes on its own. A closed workflow is no longer cached by the
+      // worker, so the query below replays its history.
+      WorkflowStub.fromTyped(workflow).terminate("benchmark");
+
+      long start = System.nanoTime();
+      workflow.getCount();
+      return (System.nanoTime() - start) / 1_000_000;
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    } finally {
+      testEnv.close();
+    }
+  }
+
+  /**
+   * Batches like {@link WithdrawalBatcher} in a single run, but deduplicates with the unbounded
+   * HashSet that {@link ReferenceWindow} replaced.
+   */
+  public static class HashSetTransferWorkflowImpl implements AccountTransferWorkflow {
+
+    private final Account account = AccountTransferWorkflowImpl.newAccountStub(false);
+    private final Set<String> references = new HashSet<>();
+    private final List<Withdrawal> pending = new ArrayList<>();
+    private int balance;
+    private int count;
+
+    @Override
+    public void deposit(String toAccountId, FlushPolicy policy, BatchState state) {
+      while (true) {
+        Workflow.await(() -> !pending.isEmpty());
+        List<Withdrawal> drained =
+            pending.subList(
+                0, Math.min(pending.size(), WithdrawalBatcher.MAX_WITHDRAWALS_PER_ACTIVITY));
+        List<Withdrawal> withdrawals = new ArrayList<>(drained);
+        drained.clear();
+        List<WithdrawalResult> results = account.withdrawBatch(withdrawals);
+        for (int i = 0; i < withdrawals.size(); i++) {
+          if (results.get(i).isSucceeded()) {
+            balance += withdrawals.get(i).getAmountCents();
+            count++;
+          }
+        }
+        if (policy.isFull(count, balance)) {
+          account.deposit(toAccountId, Workflow.randomUUID().toString(), balance);
+          balance = 0;
+          count = 0;
+        }
+      }
+    }
+
+    @Override
+    public void withdraw(String fromAccountId, String referenceId, int amountCents) {
+      if (references.add(referenceId)) {
+        pending.add(new Withdrawal(fromAccountId, referenceId, amountCents));
+      }
+    }
+
+    @Override
+    public int getBalance() {
+      return balance;
+    }
+
+    @Override
+    public int getCount() {
+      return count;
+    }
+
+    @Override
+    public List<WithdrawalResult> getFailedWithdrawals() {
+      return new ArrayList<>();
+    }
+  }
+
+  private static class CountingAccount extends NoopAccount {
+    final CountDownLatch deposited = new CountDownLatch(1);
+
+    @Override
+    public void deposit(String accountId, String referenceId, int amountCents) {
+      deposited.countDown();
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneybatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.UUID;
+import org.junit.Test;
+
+public class ReferenceWindowTest {
+
+  @Test
+  public void testDuplicates() {
+    ReferenceWindow window = new ReferenceWindow(1000, Duration.ofHours(1));
+    String uuid = UUID.randomUUID().toString();
+    assertTrue(window.add(uuid, 0));
+    assertFalse(window.add(uuid, 1));
+    // Not canonical UUIDs are hashed and must not collide with the parsed form.
+    assertTrue(window.add(uuid.toUpperCase(), 2));
+    assertFalse(window.add(uuid.toUpperCase(), 3));
+    assertTrue(window.add("reference1", 4));
+    assertFalse(window.add("reference1", 5));
+    assertEquals(3, window.size());
+  }
+
+  @Test
+  public void testEvictsOldestWhenFull() {
+    ReferenceWindow window = new ReferenceWindow(100, Duration.ofHours(1));
+    for (int i = 0; i < 150; i++) {
+      assertTrue(window.add("reference" + i, i));
+    }
+    assertEquals(100, window.size());
+    for (int i = 50; i < 150; i++) {
+      assertFalse(window.add("reference" + i, 200));
+    }
+    // Evicted references are accepted again.
+    assertTrue(window.add("reference0", 200));
+  }
+
+  @Test
+  public void testEvictsExpired() {
+    ReferenceWindow window = new ReferenceWindow(100, Duration.ofMillis(10));
+    assertTrue(window.add("reference1", 0));
+    assertTrue(window.add("reference2", 5));
+    assertFalse(window.add("reference1", 9));
+    assertTrue(window.add("reference1", 10));
+    assertEquals(2, window.size());
+    assertTrue(window.add("reference3", 100));
+    assertEquals(1, window.size());
+  }
+
+  @Test
+  public void testRemove() {
+    ReferenceWindow window = new ReferenceWindow(2, Duration.ofHours(1));
+    assertTrue(window.add("reference1", 0));
+    assertTrue(window.add("reference2", 1));
+    assertTrue(window.remove("reference1"));
+    assertFalse(window.remove("reference1"));
+    assertEquals(1, window.size());
+    assertTrue(window.add("reference1", 2));
+    assertFalse(window.add("reference2", 3));
+    assertFalse(window.add("reference1", 4));
+    assertEquals(2, window.size());
+  }
+
+  @Test
+  public void testSnapshot() {
+    ReferenceWindow window = new ReferenceWindow(100, Duration.ofMillis(1000));
+    for (int i = 0; i < 100; i++) {
+      window.add("reference" + i, i);
+    }
+    // Keeps only the newest references that fit.
+    ReferenceWindow restored =
+        ReferenceWindow.restore(10, Duration.ofMillis(1000), window.snapshot());
+    assertEquals(10, restored.size());
+    assertFalse(restored.add("reference99", 100));
+    assertTrue(restored.add("reference0", 100));
+    // Timestamps are preserved.
+    assertTrue(restored.add("reference95", 1095));
+  }
+}
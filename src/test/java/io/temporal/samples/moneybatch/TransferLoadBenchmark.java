@@ -0,0 +1,74 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneybatch;
+
+import static io.temporal.samples.moneybatch.AccountActivityWorker.TASK_QUEUE;
+
+import io.temporal.testing.TestWorkflowEnvironment;
+import io.temporal.worker.Worker;
+import java.time.Duration;
+
+/**
+ * Runs {@link TransferLoadDriver} against the in-process test service to size batching workers.
+ * The arguments are the number of requests, the target rate per second, the maximum number of
+ * requests in flight, the number of source accounts, the number of destination accounts and the
+ * number of shards per destination account.
+ *
+ * <pre>
+ * ./gradlew -q benchmark -PmainClass=io.temporal.samples.moneybatch.TransferLoadBenchmark \
+ *     --args="20000 1000 64 1000 10 4"
+ * </pre>
+ */
+public class TransferLoadBenchmark {
+
+  public static void main(String[] args) throws InterruptedException {
+    int requests = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+    double requestsPerSecond = args.length > 1 ? Double.parseDouble(args[1]) : 1_000;
+    int maxInFlight = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+    int sourceAccounts = args.length > 3 ? Integer.parseInt(args[3]) : 1_000;
+    int destinationAccounts = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+    int shards = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+
+    TestWorkflowEnvironment testEnv = TestWorkflowEnvironment.newInstance();
+    Worker worker = testEnv.newWorker(TASK_QUEUE);
+    worker.registerWorkflowImplementationTypes(
+        AccountTransferWorkflowImpl.class,
+        AccountShardWorkflowImpl.class,
+        AccountAggregatorWorkflowImpl.class);
+    worker.registerActivitiesImplementations(
+        new NoopAccount(), new BatchAggregationImpl(testEnv.getWorkflowClient()));
+    testEnv.start();
+
+    TransferLoadDriver driver =
+        new TransferLoadDriver(
+            testEnv.getWorkflowClient(),
+            new FlushPolicy(100, 0, Duration.ofSeconds(10)),
+            sourceAccounts,
+            destinationAccounts,
+            maxInFlight,
+            requestsPerSecond,
+            shards);
+    // Warms up the JIT and the workflow cache before measuring.
+    driver.run(Math.min(requests, 1_000));
+    System.out.println(driver.run(requests));
+    testEnv.close();
+    System.exit(0);
+  }
+}
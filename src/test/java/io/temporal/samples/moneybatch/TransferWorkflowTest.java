@@ -20,16 +20,27 @@
 package io.temporal.samples.moneybatch;
 
 import static io.temporal.samples.moneybatch.AccountActivityWorker.TASK_QUEUE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import io.temporal.client.WorkflowClient;
 import io.temporal.client.WorkflowOptions;
-import io.temporal.client.WorkflowStub;
 import io.temporal.testing.TestWorkflowEnvironment;
 import io.temporal.worker.Worker;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.UUID;
 import org.junit.After;
@@ -74,18 +85,15 @@ public class TransferWorkflowTest {
 
   @Test
   public void testTransfer() {
-    Account activities = mock(Account.class);
+    Account activities = mockAccount();
     worker.registerActivitiesImplementations(activities);
     testEnv.start();
 
     String from = "account1";
     String to = "account2";
     int batchSize = 5;
-    WorkflowOptions options =
-        WorkflowOptions.newBuilder().setTaskQueue(TASK_QUEUE).setWorkflowId(to).build();
     AccountTransferWorkflow transferWorkflow =
-        workflowClient.newWorkflowStub(AccountTransferWorkflow.class, options);
-    WorkflowClient.start(transferWorkflow::deposit, to, batchSize);
+        start(to, new FlushPolicy(batchSize, 0, Duration.ZERO));
     Random random = new Random();
     int total = 0;
     for (int i = 0; i < batchSize; i++) {
@@ -93,8 +101,234 @@ public class TransferWorkflowTest {
       transferWorkflow.withdraw(from, UUID.randomUUID().toString(), amountCents);
       total += amountCents;
     }
-    // Wait for workflow to finish
-    WorkflowStub.fromTyped(transferWorkflow).getResult(Void.class);
-    verify(activities).deposit(eq("account2"), any(), eq(total));
+    verify(activities, timeout(5000)).deposit(eq("account2"), any(), eq(total));
+  }
+
+  @Test
+  public void testFlushOnAmount() {
+    Account activities = mockAccount();
+    worker.registerActivitiesImplementations(activities);
+    testEnv.start();
+
+    String from = "account1";
+    String to = "account2";
+    AccountTransferWorkflow transferWorkflow = start(to, new FlushPolicy(0, 250, Duration.ZERO));
+    for (int i = 0; i < 3; i++) {
+      transferWorkflow.withdraw(from, UUID.randomUUID().toString(), 100);
+    }
+    verify(activities, timeout(5000)).deposit(eq(to), any(), eq(300));
+    // The workflow keeps running and deposits the next batch.
+    for (int i = 0; i < 3; i++) {
+      transferWorkflow.withdraw(from, UUID.randomUUID().toString(), 100);
+    }
+    verify(activities, timeout(5000).times(2)).deposit(eq(to), any(), eq(300));
+  }
+
+  @Test
+  public void testFlushOnMaxWait() throws InterruptedException {
+    Account activities = mockAccount();
+    worker.registerActivitiesImplementations(activities);
+    testEnv.start();
+
+    String from = "account1";
+    String to = "account2";
+    AccountTransferWorkflow transferWorkflow =
+        start(to, new FlushPolicy(100, 0, Duration.ofMinutes(1)));
+    transferWorkflow.withdraw(from, UUID.randomUUID().toString(), 100);
+    transferWorkflow.withdraw(from, UUID.randomUUID().toString(), 50);
+    while (transferWorkflow.getCount() < 2) {
+      Thread.sleep(10);
+    }
+    verify(activities, never()).deposit(any(), any(), anyInt());
+    testEnv.sleep(Duration.ofMinutes(2));
+    verify(activities, timeout(5000)).deposit(eq(to), any(), eq(150));
+  }
+
+  @Test
+  public void testContinueAsNew() {
+    Account activities = mockAccount();
+    // Continues as new after every second signal.
+    String taskQueue = "Rollover";
+    Worker rolloverWorker = testEnv.newWorker(taskQueue);
+    rolloverWorker.addWorkflowImplementationFactory(
+        AccountTransferWorkflow.class, () -> new AccountTransferWorkflowImpl(2, 1000));
+    rolloverWorker.registerActivitiesImplementations(activities);
+    testEnv.start();
+
+    String from = "account1";
+    String to = "account2";
+    int batchSize = 5;
+    WorkflowOptions options =
+        WorkflowOptions.newBuilder().setTaskQueue(taskQueue).setWorkflowId(to).build();
+    AccountTransferWorkflow starter =
+        workflowClient.newWorkflowStub(AccountTransferWorkflow.class, options);
+    WorkflowClient.start(starter::deposit, to, new FlushPolicy(batchSize, 0, Duration.ZERO), null);
+    // Not bound to a run, so signals are delivered to the run that continued as new.
+    AccountTransferWorkflow transferWorkflow =
+        workflowClient.newWorkflowStub(AccountTransferWorkflow.class, to);
+    String duplicate = UUID.randomUUID().toString();
+    transferWorkflow.withdraw(from, duplicate, 100);
+    for (int i = 1; i < batchSize; i++) {
+      transferWorkflow.withdraw(from, UUID.randomUUID().toString(), 100);
+      // Must be detected by a later run.
+      transferWorkflow.withdraw(from, duplicate, 100);
+    }
+    verify(activities, timeout(5000)).deposit(eq(to), any(), eq(batchSize * 100));
+    verify(activities, times(batchSize)).withdraw(eq(from), any(), eq(100));
+  }
+
+  @Test
+  public void testLocalActivities() {
+    Account activities = mockAccount();
+    // Local activities run on the worker of the workflow.
+    String taskQueue = "Local";
+    Worker localWorker = testEnv.newWorker(taskQueue);
+    localWorker.addWorkflowImplementationFactory(
+        AccountTransferWorkflow.class, () -> new AccountTransferWorkflowImpl(true));
+    localWorker.registerActivitiesImplementations(activities);
+    testEnv.start();
+
+    String from = "account1";
+    String to = "account2";
+    WorkflowOptions options =
+        WorkflowOptions.newBuilder().setTaskQueue(taskQueue).setWorkflowId(to).build();
+    AccountTransferWorkflow transferWorkflow =
+        workflowClient.newWorkflowStub(AccountTransferWorkflow.class, options);
+    WorkflowClient.start(transferWorkflow::deposit, to, new FlushPolicy(3, 0, Duration.ZERO), null);
+    for (int i = 0; i < 3; i++) {
+      transferWorkflow.withdraw(from, UUID.randomUUID().toString(), 100);
+    }
+    verify(activities, timeout(5000)).deposit(eq(to), any(), eq(300));
+  }
+
+  @Test
+  public void testWithdrawalFailure() throws InterruptedException {
+    Account activities = mockAccount();
+    String failing = UUID.randomUUID().toString();
+    doThrow(new RuntimeException("simulated"))
+        .when(activities)
+        .withdraw(any(), eq(failing), anyInt());
+    worker.registerActivitiesImplementations(activities);
+    testEnv.start();
+
+    String from = "account1";
+    String to = "account2";
+    AccountTransferWorkflow transferWorkflow = start(to, new FlushPolicy(3, 0, Duration.ZERO));
+    transferWorkflow.withdraw(from, UUID.randomUUID().toString(), 100);
+    transferWorkflow.withdraw(from, failing, 100);
+    transferWorkflow.withdraw(from, UUID.randomUUID().toString(), 100);
+    while (transferWorkflow.getCount() < 2) {
+      Thread.sleep(10);
+    }
+    assertFailed(transferWorkflow, failing);
+    // The reference of a failed withdrawal is not treated as a duplicate.
+    transferWorkflow.withdraw(from, failing, 100);
+    transferWorkflow.withdraw(from, UUID.randomUUID().toString(), 100);
+    verify(activities, timeout(5000)).deposit(eq(to), any(), eq(300));
+    verify(activities, times(2)).withdraw(any(), eq(failing), anyInt());
+    // Reported once although it failed twice.
+    assertFailed(transferWorkflow, failing);
+  }
+
+  @Test
+  public void testFailedWithdrawalRetried() throws InterruptedException {
+    Account activities = mockAccount();
+    String retried = UUID.randomUUID().toString();
+    doThrow(new RuntimeException("simulated"))
+        .doNothing()
+        .when(activities)
+        .withdraw(any(), eq(retried), anyInt());
+    worker.registerActivitiesImplementations(activities);
+    testEnv.start();
+
+    String from = "account1";
+    String to = "account2";
+    AccountTransferWorkflow transferWorkflow = start(to, new FlushPolicy(2, 0, Duration.ZERO));
+    transferWorkflow.withdraw(from, retried, 100);
+    while (transferWorkflow.getFailedWithdrawals().isEmpty()) {
+      Thread.sleep(10);
+    }
+    transferWorkflow.withdraw(from, retried, 100);
+    transferWorkflow.withdraw(from, UUID.randomUUID().toString(), 100);
+    verify(activities, timeout(5000)).deposit(eq(to), any(), eq(200));
+    assertTrue(transferWorkflow.getFailedWithdrawals().isEmpty());
+  }
+
+  @Test
+  public void testSharded() {
+    Account activities = mockAccount();
+    worker.registerWorkflowImplementationTypes(
+        AccountShardWorkflowImpl.class, AccountAggregatorWorkflowImpl.class);
+    worker.registerActivitiesImplementations(activities, new BatchAggregationImpl(workflowClient));
+    testEnv.start();
+
+    String to = "account2";
+    // Both modes can run against the same account.
+    start(to, new FlushPolicy(1, 0, Duration.ZERO));
+    int shards = 2;
+    int batchSize = 8;
+    // Each shard deposits to the aggregator once per batchSize / shards withdrawals.
+    FlushPolicy policy = new FlushPolicy(batchSize, 0, Duration.ZERO);
+    int[] perShard = new int[shards];
+    String retried = null;
+    for (int i = 0; perShard[0] + perShard[1] < batchSize; i++) {
+      String from = "source" + i;
+      int shard = ShardedTransfers.shardOf(from, shards);
+      if (perShard[shard] == batchSize / shards) {
+        continue;
+      }
+      perShard[shard]++;
+      String reference = UUID.randomUUID().toString();
+      ShardedTransfers.requestTransfer(workflowClient, policy, shards, from, to, reference, 100);
+      if (retried == null) {
+        retried = from;
+        // Goes to the same shard as the original request, so it is detected as a duplicate.
+        ShardedTransfers.requestTransfer(workflowClient, policy, shards, from, to, reference, 100);
+      }
+    }
+    verify(activities, timeout(5000)).deposit(eq(to), any(), eq(batchSize * 100));
+    verify(activities, times(batchSize)).withdraw(any(), any(), eq(100));
+    verify(activities, times(1)).withdraw(eq(retried), any(), anyInt());
+  }
+
+  private static void assertFailed(AccountTransferWorkflow transferWorkflow, String referenceId) {
+    List<WithdrawalResult> failed = transferWorkflow.getFailedWithdrawals();
+    assertEquals(1, failed.size());
+    assertEquals(referenceId, failed.get(0).getReferenceId());
+    assertFalse(failed.get(0).isSucceeded());
+    assertEquals("simulated", failed.get(0).getFailure());
+  }
+
+  /** Starts the workflow and returns a stub that follows it when it continues as new. */
+  private AccountTransferWorkflow start(String to, FlushPolicy policy) {
+    WorkflowOptions options =
+        WorkflowOptions.newBuilder().setTaskQueue(TASK_QUEUE).setWorkflowId(to).build();
+    AccountTransferWorkflow starter =
+        workflowClient.newWorkflowStub(AccountTransferWorkflow.class, options);
+    WorkflowClient.start(starter::deposit, to, policy, null);
+    return workflowClient.newWorkflowStub(AccountTransferWorkflow.class, to);
+  }
+
+  /** Returns a mock whose withdrawBatch executes each withdrawal through its withdraw method. */
+  private static Account mockAccount() {
+    Account account = mock(Account.class);
+    when(account.withdrawBatch(any()))
+        .thenAnswer(
+            invocation -> {
+              List<WithdrawalResult> results = new ArrayList<>();
+              for (Object argument : (List<?>) invocation.getArguments()[0]) {
+                Withdrawal withdrawal = (Withdrawal) argument;
+                String referenceId = withdrawal.getReferenceId();
+                try {
+                  account.withdraw(
+                      withdrawal.getFromAccountId(), referenceId, withdrawal.getAmountCents());
+                  results.add(new WithdrawalResult(referenceId, true, null));
+                } catch (RuntimeException e) {
+                  results.add(new WithdrawalResult(referenceId, false, e.getMessage()));
+                }
+              }
+              return results;
+            });
+    return account;
   }
 }
@@ -0,0 +1,107 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneytransfer;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures {@link Ledger} transfers under contention. Each thread performs transfers between
+ * random accounts, each one a withdrawal followed by a deposit with a fresh reference id, as the
+ * activities of {@link AccountTransferWorkflowImpl} do. A ledger with a single stripe, which
+ * serializes all the operations like a global lock, is measured next to the striped one for a
+ * few account and thread counts. The arguments are the number of transfers per thread and the
+ * number of stripes.
+ *
+ * <pre>
+ * ./gradlew -q benchmark -PmainClass=io.temporal.samples.moneytransfer.LedgerBenchmark \
+ *     --args="20000 256"
+ * </pre>
+ */
+public class LedgerBenchmark {
+
+  private static final int[] THREADS = {1, 8, 64, 256};
+
+  /** Few accounts make the threads collide on the same accounts, many accounts spread them. */
+  private static final int[] ACCOUNTS = {16, 100_000};
+
+  public static void main(String[] args) throws InterruptedException {
+    int transfersPerThread = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+    int stripes = args.length > 1 ? Integer.parseInt(args[1]) : Ledger.DEFAULT_STRIPES;
+    // Warms up the JIT before measuring.
+    run(new Ledger(Long.MAX_VALUE / 2, stripes), 8, 1_000, transfersPerThread);
+    for (int accounts : ACCOUNTS) {
+      for (int threads : THREADS) {
+        for (int ledgerStripes : new int[] {1, stripes}) {
+          Ledger ledger = new Ledger(Long.MAX_VALUE / 2, ledgerStripes);
+          System.out.printf(
+              "accounts=%d threads=%d stripes=%d: %s%n",
+              accounts,
+              threads,
+              ledgerStripes,
+              run(ledger, threads, accounts, transfersPerThread));
+        }
+      }
+    }
+  }
+
+  private static String run(Ledger ledger, int threads, int accounts, int transfersPerThread)
+      throws InterruptedException {
+    long[] latencies = new long[threads * transfersPerThread];
+    CountDownLatch start = new CountDownLatch(1);
+    Thread[] workers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      int thread = t;
+      workers[t] =
+          new Thread(
+              () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                  start.await();
+                } catch (InterruptedException e) {
+                  return;
+                }
+                for (int i = 0; i < transfersPerThread; i++) {
+                  String from = "account" + random.nextInt(accounts);
+                  String to = "account" + random.nextInt(accounts);
+                  String reference = thread + "-" + i;
+                  long begin = System.nanoTime();
+                  ledger.withdraw(from, reference, 100);
+                  ledger.deposit(to, reference, 100);
+                  latencies[thread * transfersPerThread + i] = System.nanoTime() - begin;
+                }
+              });
+      workers[t].start();
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    long elapsed = System.nanoTime() - begin;
+    Arrays.sort(latencies);
+    return String.format(
+        "%.0f transfers/s, latency p50=%.1fus p99=%.1fus",
+        latencies.length * 1e9 / elapsed,
+        latencies[latencies.length / 2] / 1e3,
+        latencies[(int) Math.ceil(latencies.length * 0.99) - 1] / 1e3);
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneytransfer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Measures a durable {@link Ledger} at several group commit windows. Each thread acts as an
+ * activity executor that withdraws or deposits with a fresh reference id and waits for the commit.
+ * Reports activities per second, latency percentiles and the number of activities that shared a
+ * journal force. The arguments are the number of threads, the number of activities per thread and
+ * the directory to put the journal in, which should be on the disk under test.
+ *
+ * <pre>
+ * ./gradlew -q benchmark -PmainClass=io.temporal.samples.moneytransfer.LedgerJournalBenchmark \
+ *     --args="200 500 /tmp"
+ * </pre>
+ */
+public class LedgerJournalBenchmark {
+
+  private static final Duration[] COMMIT_WINDOWS = {
+    Duration.ZERO,
+    Duration.ofNanos(100_000),
+    Duration.ofMillis(1),
+    Duration.ofMillis(5),
+    Duration.ofMillis(20)
+  };
+
+  public static void main(String[] args) throws Exception {
+    int threads = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    int activitiesPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+    Path parent =
+        Files.createDirectories(
+            args.length > 2 ? Paths.get(args[2]) : Files.createTempDirectory("bench"));
+    for (Duration window : COMMIT_WINDOWS) {
+      Path directory = Files.createTempDirectory(parent, "ledger");
+      try (Ledger ledger = Ledger.open(directory, Long.MAX_VALUE / 2, window)) {
+        System.out.printf(
+            "window=%dus: %s%n",
+            window.toNanos() / 1_000, run(ledger, threads, activitiesPerThread));
+      } finally {
+        delete(directory);
+      }
+    }
+  }
+
+  private static String run(Ledger ledger, int threads, int activitiesPerThread)
+      throws InterruptedException {
+    long[] latencies = new long[threads * activitiesPerThread];
+    CountDownLatch start = new CountDownLatch(1);
+    Thread[] workers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      int thread = t;
+      workers[t] =
+          new Thread(
+              () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                  start.await();
+                } catch (InterruptedException e) {
+                  return;
+                }
+                for (int i = 0; i < activitiesPerThread; i++) {
+                  String account = "account" + random.nextInt(10_000);
+                  String reference = thread + "-" + i;
+                  long begin = System.nanoTime();
+                  if (i % 2 == 0) {
+                    ledger.withdraw(account, reference, 100);
+                  } else {
+                    ledger.deposit(account, reference, 100);
+                  }
+                  latencies[thread * activitiesPerThread + i] = System.nanoTime() - begin;
+                }
+              });
+      workers[t].start();
+    }
+    long forces = ledger.getJournalForces();
+    long begin = System.nanoTime();
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    long elapsed = System.nanoTime() - begin;
+    forces = ledger.getJournalForces() - forces;
+    Arrays.sort(latencies);
+    return String.format(
+        "%.0f activities/s, latency p50=%.2fms p99=%.2fms, %.1f activities per force",
+        latencies.length * 1e9 / elapsed,
+        latencies[latencies.length / 2] / 1e6,
+        latencies[(int) Math.ceil(latencies.length * 0.99) - 1] / 1e6,
+        (double) latencies.length / Math.max(1, forces));
+  }
+
+  private static void delete(Path directory) throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+    }
+  }
+}
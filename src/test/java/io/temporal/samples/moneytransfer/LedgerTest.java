@@ -0,0 +1,317 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneytransfer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LedgerTest {
+
+  private static final long SEGMENT_BYTES = 1 << 16;
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("ledger");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+    }
+  }
+
+  @Test
+  public void testTransfer() {
+    Ledger ledger = new Ledger(1000);
+    assertEquals(900, ledger.withdraw("account1", "reference1", 100));
+    assertEquals(1100, ledger.deposit("account2", "reference1", 100));
+    assertEquals(900, ledger.getBalance("account1"));
+    assertEquals(1000, ledger.getBalance("account3"));
+  }
+
+  @Test
+  public void testRetryIsAppliedOnce() {
+    Ledger ledger = new Ledger(1000);
+    ledger.withdraw("account1", "reference1", 100);
+    assertEquals(900, ledger.withdraw("account1", "reference1", 100));
+    ledger.deposit("account2", "reference1", 100);
+    assertEquals(1100, ledger.deposit("account2", "reference1", 100));
+    try {
+      ledger.withdraw("account1", "reference1", 200);
+      fail("reused reference");
+    } catch (IllegalStateException e) {
+      assertEquals(900, ledger.getBalance("account1"));
+    }
+  }
+
+  @Test
+  public void testInsufficientFunds() {
+    Ledger ledger = new Ledger(100);
+    try {
+      ledger.withdraw("account1", "reference1", 101);
+      fail("overdraft");
+    } catch (Ledger.InsufficientFundsException e) {
+      assertEquals(100, ledger.getBalance("account1"));
+    }
+    // The failed withdrawal is not recorded, so it can be retried once funds are available.
+    ledger.deposit("account1", "reference2", 1);
+    assertEquals(0, ledger.withdraw("account1", "reference1", 101));
+  }
+
+  @Test
+  public void testForgetsExpiredOperations() {
+    AtomicLong clock = new AtomicLong();
+    Ledger ledger = new Ledger(1000, 4, Duration.ofMillis(100), clock::get);
+    ledger.withdraw("account1", "reference1", 100);
+    clock.set(100);
+    ledger.withdraw("account1", "reference2", 100);
+    assertEquals(800, ledger.withdraw("account1", "reference2", 100));
+    // Past the retention, a retry is a new withdrawal.
+    assertEquals(700, ledger.withdraw("account1", "reference1", 100));
+  }
+
+  @Test
+  public void testConcurrentTransfersConserveMoney() throws Exception {
+    int accounts = 10;
+    Ledger ledger = new Ledger(1_000_000, 4);
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < 16; t++) {
+      int thread = t;
+      futures.add(
+          executor.submit(
+              () -> {
+                Random random = new Random(thread);
+                for (int i = 0; i < 10_000; i++) {
+                  String reference = thread + "-" + i;
+                  int amount = random.nextInt(100);
+                  String from = "account" + random.nextInt(accounts);
+                  String to = "account" + random.nextInt(accounts);
+                  ledger.withdraw(from, reference, amount);
+                  ledger.deposit(to, reference, amount);
+                  // Retries must not move money again.
+                  ledger.withdraw(from, reference, amount);
+                  ledger.deposit(to, reference, amount);
+                }
+              }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+    long total = 0;
+    for (int i = 0; i < accounts; i++) {
+      total += ledger.getBalance("account" + i);
+    }
+    assertEquals(accounts * 1_000_000L, total);
+  }
+
+  @Test
+  public void testReplayAfterRestart() throws IOException {
+    Ledger ledger = open();
+    ledger.withdraw("account1", "reference1", 100);
+    ledger.deposit("account2", "reference1", 100);
+    // Simulates a crash: nothing but the journal is written after the operations.
+    Ledger restarted = open();
+    assertEquals(900, restarted.getBalance("account1"));
+    assertEquals(1100, restarted.getBalance("account2"));
+    // Retries of journaled operations are still recognized.
+    assertEquals(900, restarted.withdraw("account1", "reference1", 100));
+    restarted.close();
+    ledger.close();
+  }
+
+  @Test
+  public void testSnapshot() throws IOException {
+    Ledger ledger = open();
+    // Spans several segments.
+    for (int i = 0; i < 2_000; i++) {
+      ledger.withdraw("account1", "before" + i, 0);
+    }
+    ledger.withdraw("account1", "reference1", 100);
+    ledger.snapshot();
+    ledger.deposit("account1", "reference2", 50);
+    ledger.close();
+    try (Stream<Path> files = Files.list(directory)) {
+      // The snapshot replaced the older segments.
+      assertEquals(2, files.count());
+    }
+    Ledger restarted = open();
+    assertEquals(950, restarted.getBalance("account1"));
+    assertEquals(950, restarted.withdraw("account1", "before1", 0));
+    restarted.close();
+  }
+
+  @Test
+  public void testSnapshotDropsExpiredOperations() throws IOException {
+    AtomicLong clock = new AtomicLong();
+    Ledger ledger = open(clock);
+    for (int i = 0; i < 2_000; i++) {
+      ledger.withdraw("account1", "before" + i, 0);
+    }
+    ledger.snapshot();
+    long retainedBytes = snapshotBytes();
+    clock.set(Duration.ofDays(1).toMillis());
+    ledger.withdraw("account1", "reference1", 100);
+    ledger.snapshot();
+    ledger.close();
+    assertTrue(snapshotBytes() < retainedBytes / 100);
+    Ledger restarted = open(clock);
+    assertEquals(900, restarted.getBalance("account1"));
+    assertEquals(900, restarted.withdraw("account1", "reference1", 100));
+    restarted.close();
+  }
+
+  @Test
+  public void testIgnoresTornRecord() throws IOException {
+    Path segment = journalWithTwoRecords();
+    // An unacknowledged record that only partially reached the disk: its length and the start of
+    // its content, but not the rest.
+    try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+      int second = file.readInt();
+      file.seek(second);
+      int length = file.readInt();
+      file.seek(second + length / 2);
+      file.write(new byte[length - length / 2]);
+    }
+    assertSecondRecordIgnored();
+  }
+
+  @Test
+  public void testIgnoresCorruptedRecord() throws IOException {
+    Path segment = journalWithTwoRecords();
+    // A complete record whose checksum doesn't match its content.
+    try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+      int second = file.readInt();
+      file.seek(second);
+      int length = file.readInt();
+      file.seek(second + length - 1);
+      int crcByte = file.read();
+      file.seek(second + length - 1);
+      file.write(crcByte ^ 1);
+    }
+    assertSecondRecordIgnored();
+  }
+
+  /** An interrupt doesn't acknowledge an operation before its commit, and is kept. */
+  @Test
+  public void testInterruptedOperationIsDurable() throws IOException {
+    Ledger ledger =
+        Ledger.open(directory, 1000, Duration.ofMillis(50), 16, Ledger.DEFAULT_SEGMENT_BYTES);
+    long forcesBefore = ledger.getJournalForces();
+    Thread.currentThread().interrupt();
+    try {
+      assertEquals(1100, ledger.deposit("account1", "reference1", 100));
+    } finally {
+      assertTrue(Thread.interrupted());
+    }
+    assertEquals(forcesBefore + 1, ledger.getJournalForces());
+    ledger.close();
+  }
+
+  @Test
+  public void testGroupCommit() throws Exception {
+    Ledger ledger =
+        Ledger.open(directory, 1000, Duration.ofMillis(5), 16, Ledger.DEFAULT_SEGMENT_BYTES);
+    long forcesBefore = ledger.getJournalForces();
+    ExecutorService executor = Executors.newFixedThreadPool(32);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < 32; t++) {
+      int thread = t;
+      futures.add(
+          executor.submit(
+              () -> {
+                for (int i = 0; i < 20; i++) {
+                  ledger.deposit("account" + thread, thread + "-" + i, 1);
+                }
+              }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+    // Concurrent operations share forces.
+    assertTrue(ledger.getJournalForces() - forcesBefore < 32 * 20);
+    ledger.close();
+    Ledger restarted = open();
+    assertEquals(1020, restarted.getBalance("account7"));
+    restarted.close();
+  }
+
+  /** @return the journal segment holding two withdrawals from account1 */
+  private Path journalWithTwoRecords() throws IOException {
+    Ledger ledger = open();
+    ledger.withdraw("account1", "reference1", 100);
+    ledger.withdraw("account1", "reference2", 100);
+    ledger.close();
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(file -> file.toString().contains("journal-")).findFirst().get();
+    }
+  }
+
+  private void assertSecondRecordIgnored() throws IOException {
+    Ledger restarted = open();
+    assertEquals(900, restarted.getBalance("account1"));
+    // Operations after the restart go to a new segment, so the next restart replays them.
+    restarted.withdraw("account1", "reference3", 100);
+    restarted.close();
+    Ledger again = open();
+    assertEquals(800, again.getBalance("account1"));
+    again.close();
+  }
+
+  private Ledger open() throws IOException {
+    return Ledger.open(directory, 1000, Duration.ZERO, 16, SEGMENT_BYTES);
+  }
+
+  private Ledger open(AtomicLong clock) throws IOException {
+    return Ledger.open(
+        directory, 1000, Duration.ZERO, 16, SEGMENT_BYTES, Duration.ofHours(1), clock::get);
+  }
+
+  private long snapshotBytes() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      Path snapshot = files.filter(file -> file.toString().contains("snapshot-")).findFirst().get();
+      return Files.size(snapshot);
+    }
+  }
+}
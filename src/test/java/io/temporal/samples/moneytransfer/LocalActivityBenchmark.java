@@ -0,0 +1,94 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package io.temporal.samples.moneytransfer;
+
+import static io.temporal.samples.common.Benchmarks.countHistoryEvents;
+import static io.temporal.samples.moneytransfer.AccountActivityWorker.TASK_QUEUE;
+
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.testing.TestWorkflowEnvironment;
+import io.temporal.worker.Worker;
+import java.util.Arrays;
+
+/**
+ * Compares the transfer latency and the history events per transfer with the account calls
+ * executed as activities and as local activities. Runs against the in-process test service, where
+ * an activity task doesn't cross the network, so the latency difference is smaller than against a
+ * real service. The argument is the number of transfers per mode.
+ *
+ * <pre>
+ * ./gradlew -q benchmark -PmainClass=io.temporal.samples.moneytransfer.LocalActivityBenchmark \
+ *     --args="1000"
+ * </pre>
+ */
+public class LocalActivityBenchmark {
+
+  private static final int WARM_UP_TRANSFERS = 100;
+
+  public static void main(String[] args) {
+    int transfers = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+    System.out.println("activities:       " + run(transfers, false));
+    System.out.println("local activities: " + run(transfers, true));
+    System.exit(0);
+  }
+
+  private static String run(int transfers, boolean localActivities) {
+    TestWorkflowEnvironment testEnv = TestWorkflowEnvironment.newInstance();
+    Worker worker = testEnv.newWorker(TASK_QUEUE);
+    worker.addWorkflowImplementationFactory(
+        AccountTransferWorkflow.class, () -> new AccountTransferWorkflowImpl(localActivities));
+    worker.registerActivitiesImplementations(new NoopAccount());
+    testEnv.start();
+
+    WorkflowClient client = testEnv.getWorkflowClient();
+    long[] latencies = new long[transfers];
+    long events = 0;
+    for (int i = -WARM_UP_TRANSFERS; i < transfers; i++) {
+      String workflowId = "transfer" + i;
+      WorkflowOptions options =
+          WorkflowOptions.newBuilder().setTaskQueue(TASK_QUEUE).setWorkflowId(workflowId).build();
+      AccountTransferWorkflow workflow =
+          client.newWorkflowStub(AccountTransferWorkflow.class, options);
+      long start = System.nanoTime();
+      workflow.transfer("account1", "account2", "reference" + i, 100);
+      if (i >= 0) {
+        latencies[i] = System.nanoTime() - start;
+        events += countHistoryEvents(testEnv, workflowId);
+      }
+    }
+    testEnv.close();
+    Arrays.sort(latencies);
+    return String.format(
+        "%d transfers, %.1f history events per transfer, latency p50=%.2fms p99=%.2fms",
+        transfers,
+        (double) events / transfers,
+        latencies[transfers / 2] / 1e6,
+        latencies[(int) Math.ceil(transfers * 0.99) - 1] / 1e6);
+  }
+
+  private static class NoopAccount implements Account {
+    @Override
+    public void withdraw(String accountId, String referenceId, int amountCents) {}
+
+    @Override
+    public void deposit(String accountId, String referenceId, int amountCents) {}
+  }
+}
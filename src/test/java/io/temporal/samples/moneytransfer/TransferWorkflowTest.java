@@ -20,12 +20,21 @@
 package io.temporal.samples.moneytransfer;
 
 import static io.temporal.samples.moneytransfer.AccountActivityWorker.TASK_QUEUE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowException;
 import io.temporal.client.WorkflowOptions;
+import io.temporal.failure.ApplicationFailure;
 import io.temporal.testing.TestWorkflowEnvironment;
 import io.temporal.worker.Worker;
 import org.junit.After;
@@ -67,4 +76,46 @@ public class TransferWorkflowTest {
     long duration = testEnv.currentTimeMillis() - starty;
     System.out.println("Duration: " + duration);
   }
+
+  @Test
+  public void testLocalActivities() {
+    // Local activities run on the worker of the workflow.
+    String taskQueue = "Local";
+    Worker localWorker = testEnv.newWorker(taskQueue);
+    localWorker.addWorkflowImplementationFactory(
+        AccountTransferWorkflow.class, () -> new AccountTransferWorkflowImpl(true));
+    Account activities = mock(Account.class);
+    localWorker.registerActivitiesImplementations(activities);
+    testEnv.start();
+    WorkflowOptions options = WorkflowOptions.newBuilder().setTaskQueue(taskQueue).build();
+    AccountTransferWorkflow workflow =
+        workflowClient.newWorkflowStub(AccountTransferWorkflow.class, options);
+    workflow.transfer("account1", "account2", "reference1", 123);
+    verify(activities).withdraw(eq("account1"), eq("reference1"), eq(123));
+    verify(activities).deposit(eq("account2"), eq("reference1"), eq(123));
+  }
+
+  /** An overdraft fails the transfer on the first attempt instead of retrying it. */
+  @Test
+  public void testInsufficientFunds() {
+    Ledger ledger = new Ledger(AccountImpl.OPENING_BALANCE_CENTS);
+    Account activities = spy(new AccountImpl(ledger));
+    worker.registerActivitiesImplementations(activities);
+    testEnv.start();
+    WorkflowOptions options = WorkflowOptions.newBuilder().setTaskQueue(TASK_QUEUE).build();
+    AccountTransferWorkflow workflow =
+        workflowClient.newWorkflowStub(AccountTransferWorkflow.class, options);
+    int amountCents = (int) AccountImpl.OPENING_BALANCE_CENTS + 1;
+    try {
+      workflow.transfer("account1", "account2", "reference1", amountCents);
+      fail("unreachable");
+    } catch (WorkflowException e) {
+      assertEquals(
+          AccountImpl.INSUFFICIENT_FUNDS_FAILURE,
+          ((ApplicationFailure) e.getCause().getCause()).getType());
+    }
+    verify(activities, times(1)).withdraw("account1", "reference1", amountCents);
+    verify(activities, never()).deposit(anyString(), anyString(), anyInt());
+    assertEquals(AccountImpl.OPENING_BALANCE_CENTS, ledger.getBalance("account1"));
+  }
 }